@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.metrics;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.models.ErrorCodes;
+
+import java.util.List;
+
+public class RequestMetricsAggregatorTests extends AndroidTestCase {
+
+    public void testErrorRatesPerEndpointAndResultType() {
+        RequestMetricsAggregator aggregator = new RequestMetricsAggregator(null);
+        aggregator.onRequestMetrics(record("/questions", String.class, null));
+        aggregator.onRequestMetrics(record("/questions", String.class, ErrorCodes.NETWORK_ERROR));
+        aggregator.onRequestMetrics(record("/answers", null, null));
+
+        List<RequestMetricsAggregator.EndpointSnapshot> snapshots = aggregator.snapshotAndReset();
+        assertEquals(2, snapshots.size());
+        for (RequestMetricsAggregator.EndpointSnapshot snapshot : snapshots) {
+            if ("/questions".equals(snapshot.getName())) {
+                assertEquals(String.class, snapshot.getResultType());
+                assertEquals(2, snapshot.getRequestCount());
+                assertEquals(0.5, snapshot.getErrorRate(ErrorCodes.NETWORK_ERROR), 0.001);
+                assertEquals(2, snapshot.getHistogram(RequestMetricsAggregator.Stage.TOTAL).getCount());
+            } else {
+                assertNull(snapshot.getResultType());
+                assertEquals(0, snapshot.getErrorRate(), 0.001);
+            }
+        }
+
+        for (RequestMetricsAggregator.EndpointSnapshot snapshot : aggregator.snapshot()) {
+            assertEquals(0, snapshot.getRequestCount());
+        }
+    }
+
+    private static RequestMetrics record(String name, Class<?> resultType, String errorCode) {
+        RequestMetrics metrics = RequestMetrics.obtain(name);
+        metrics.setResultType(resultType);
+        metrics.setErrorCode(errorCode);
+        metrics.markDelivery();
+        return metrics;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.metrics;
+
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+import com.android.sdk.core.models.DataListener;
+import com.android.sdk.core.models.DataRequest;
+import com.android.sdk.core.models.DataTransaction;
+import com.android.sdk.core.models.DataTransceiver;
+import com.android.sdk.core.models.SimpleDataRequestMethod;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RequestMetricsTests extends AndroidTestCase {
+
+    private static final String PATH = "http://www.mocky.io/v2/570a1fef0f0000f71781aa35";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://www.mocky.io");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Core.getInstance().setRequestMetricsListener(null);
+        super.tearDown();
+    }
+
+    public void testRecordsAreRecycled() {
+        Core.getInstance().setRequestMetricsListener(null);
+        RequestMetrics metrics = RequestMetrics.obtain("first");
+        metrics.markDelivery();
+        metrics.publish();
+
+        RequestMetrics reused = RequestMetrics.obtain("second");
+        assertSame(metrics, reused);
+        assertEquals("second", reused.getName());
+        assertEquals(0, reused.getDeliveryNanos());
+    }
+
+    public void testStagesAfterPublishAreIgnored() {
+        Core.getInstance().setRequestMetricsListener(null);
+        RequestMetrics metrics = RequestMetrics.obtain("published");
+        metrics.publish();
+
+        metrics.markDispatch();
+        metrics.markResponse();
+        metrics.setStatusCode(200);
+
+        RequestMetrics reused = RequestMetrics.obtain("second");
+        assertSame(metrics, reused);
+        assertEquals(0, reused.getDispatchNanos());
+        assertEquals(0, reused.getResponseNanos());
+        assertEquals(0, reused.getStatusCode());
+        reused.markDispatch();
+        assertTrue(reused.getDispatchNanos() > 0);
+    }
+
+    public void testRecordIsPooledOnceWhenPublishedTwice() {
+        Core.getInstance().setRequestMetricsListener(null);
+        RequestMetrics metrics = RequestMetrics.obtain("first");
+        metrics.publish();
+        metrics.publish();
+
+        RequestMetrics reused = RequestMetrics.obtain("second");
+        RequestMetrics other = RequestMetrics.obtain("third");
+        assertSame(metrics, reused);
+        assertNotSame(reused, other);
+    }
+
+    public void testRequestStagesAreRecorded() throws Exception {
+        final CountDownLatch published = new CountDownLatch(1);
+        final AtomicReference<String> record = new AtomicReference<>();
+        final long[] deliveryNanos = new long[1];
+        Core.getInstance().setRequestMetricsListener(new RequestMetricsListener() {
+            @Override
+            public void onRequestMetrics(@NonNull RequestMetrics metrics) {
+                record.set(metrics.getName());
+                deliveryNanos[0] = metrics.getDeliveryNanos();
+                published.countDown();
+            }
+        });
+
+        DataRequest dataRequest = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), PATH,
+                new HashMap<String, String>(), new HashMap<String, String>());
+        DataTransceiver.getsInstance().queueJsonRequest(dataRequest, new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+            }
+        });
+
+        assertTrue(published.await(30, TimeUnit.SECONDS));
+        assertEquals(PATH, record.get());
+        assertTrue(deliveryNanos[0] > 0);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+
+public class DataRequestBodyTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/questions";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+    }
+
+    public void testObjectIsEncodedOnceAsUtf8() throws Exception {
+        Question question = new Question();
+        question.setQuestion("Café?");
+        DataRequest dataRequest = DataRequest.createJsonDataRequest(JsonDataRequestMethod.Post(), PATH,
+                new HashMap<String, String>(), null, DataRequestBody.fromObject(question));
+
+        byte[] body = dataRequest.getBody();
+        assertSame(body, dataRequest.getBody());
+        assertEquals("Café?", new JSONObject(new String(body, "UTF-8")).getString("question"));
+        assertEquals(DataRequestBody.CONTENT_TYPE_JSON, dataRequest.getRequestBody().getContentType());
+    }
+
+    public void testJsonObjectBodyStaysCompatible() throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("question", "über");
+        DataRequest dataRequest = DataRequest.createJsonDataRequest(JsonDataRequestMethod.Post(), PATH,
+                new HashMap<String, String>(), null, json);
+
+        assertEquals(json.toString(), new String(dataRequest.getBody(), "UTF-8"));
+    }
+
+    public void testRetriesShareTheEncodedBody() throws Exception {
+        byte[] bytes = "text".getBytes("UTF-8");
+        DataRequest dataRequest = DataRequest.createJsonDataRequest(JsonDataRequestMethod.Post(), PATH,
+                new HashMap<String, String>(), null, DataRequestBody.fromBytes(bytes, "text/plain; charset=utf-8"));
+
+        JsonRequest first = new JsonRequest(new DataTransaction(dataRequest), null);
+        JsonRequest retry = new JsonRequest(new DataTransaction(dataRequest), null);
+        assertSame(first.getBody(), retry.getBody());
+        assertEquals("text/plain; charset=utf-8", retry.getHeaders().get("Content-Type"));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+
+import java.util.Collections;
+import java.util.Random;
+
+public class DataRetryPolicyTests extends AndroidTestCase {
+
+    public void testBackoffIsJitteredBelowTheExponentialCap() {
+        DataRetryPolicy policy = new DataRetryPolicy.Builder()
+                .setInitialBackoffMs(100)
+                .setMaxBackoffMs(1000)
+                .build();
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getBackoffMs(0, random) < 100);
+            assertTrue(policy.getBackoffMs(2, random) < 400);
+            assertTrue(policy.getBackoffMs(10, random) < 1000);
+        }
+    }
+
+    public void testOnlyIdempotentMethodsAreRetried() {
+        DataRetryPolicy policy = new DataRetryPolicy.Builder().setMaxRetries(2).build();
+        assertTrue(policy.shouldRetry(Request.Method.GET, new TimeoutError(), 0, 0, 0));
+        assertFalse(policy.shouldRetry(Request.Method.POST, new TimeoutError(), 0, 0, 0));
+        assertFalse(policy.shouldRetry(Request.Method.GET, new TimeoutError(), 2, 0, 0));
+
+        DataRetryPolicy postPolicy = new DataRetryPolicy.Builder().setRetryNonIdempotent(true).build();
+        assertTrue(postPolicy.shouldRetry(Request.Method.POST, new TimeoutError(), 0, 0, 0));
+    }
+
+    public void testDeadlineStopsRetries() {
+        DataRetryPolicy policy = new DataRetryPolicy.Builder().setMaxRetries(5).setDeadlineMs(1000).build();
+        assertTrue(policy.shouldRetry(Request.Method.GET, new TimeoutError(), 1, 500, 200));
+        assertFalse(policy.shouldRetry(Request.Method.GET, new TimeoutError(), 1, 900, 200));
+        assertEquals(100, policy.getAttemptTimeoutMs(900));
+    }
+
+    public void testRetryableErrors() {
+        assertTrue(DataRetryPolicy.isRetryable(new NoConnectionError()));
+        assertTrue(DataRetryPolicy.isRetryable(new ServerError(response(503))));
+        assertTrue(DataRetryPolicy.isRetryable(new ServerError(response(429))));
+        assertFalse(DataRetryPolicy.isRetryable(new ServerError(response(404))));
+        assertFalse(DataRetryPolicy.isRetryable(new ParseError()));
+    }
+
+    public void testThrottleStopsRetriesWhenMostRequestsFail() {
+        RetryThrottle throttle = new RetryThrottle(10, 0.5f);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.isRetryAllowed());
+            throttle.onFailure();
+        }
+        assertFalse(throttle.isRetryAllowed());
+
+        throttle.onSuccess();
+        assertTrue(throttle.isRetryAllowed());
+    }
+
+    private static NetworkResponse response(int statusCode) {
+        return new NetworkResponse(statusCode, new byte[0], Collections.<String, String>emptyMap(), false);
+    }
+}
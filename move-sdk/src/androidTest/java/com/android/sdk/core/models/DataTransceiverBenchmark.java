@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.android.sdk.core.Core;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures enqueue throughput of {@link DataTransceiver} with 1 to 64 concurrent producer threads.
+ * <p/>
+ * Requests are created before the measurement, only {@code queueJsonRequest} is timed. The queue is backed by a
+ * network that answers immediately, so no real connection is made.
+ */
+public class DataTransceiverBenchmark extends AndroidTestCase {
+    private static final String TAG = DataTransceiverBenchmark.class.getSimpleName();
+
+    private static final int[] PRODUCERS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int REQUESTS_PER_PRODUCER = 500;
+
+    private RequestQueue queue;
+    private DataTransceiver transceiver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+        queue = new RequestQueue(new NoCache(), new Network() {
+            @Override
+            public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+                return new NetworkResponse(200, "{}".getBytes(), Collections.<String, String>emptyMap(), false);
+            }
+        }, 4);
+        queue.start();
+        transceiver = new DataTransceiver(queue, new DataTransceiverConfig.Builder().build());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.stop();
+        super.tearDown();
+    }
+
+    public void testEnqueueThroughput() throws Exception {
+        for (int producers : PRODUCERS) {
+            double requestsPerSecond = measure(producers);
+            Log.i(TAG, "producers: " + producers + " enqueue/s: " + (long) requestsPerSecond);
+            assertTrue(requestsPerSecond > 0);
+        }
+    }
+
+    private double measure(int producers) throws InterruptedException {
+        final DataListener listener = new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+            }
+        };
+
+        final DataRequest[][] requests = new DataRequest[producers][REQUESTS_PER_PRODUCER];
+        for (int p = 0; p < producers; p++) {
+            for (int r = 0; r < REQUESTS_PER_PRODUCER; r++) {
+                requests[p][r] = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(),
+                        "http://localhost/benchmark/" + p + "/" + r, new HashMap<String, String>(), null);
+            }
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            final DataRequest[] producerRequests = requests[p];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (DataRequest request : producerRequests) {
+                        transceiver.queueJsonRequest(request, listener);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        for (DataRequest[] producerRequests : requests) {
+            for (DataRequest request : producerRequests) {
+                request.cancel();
+            }
+        }
+
+        return (producers * REQUESTS_PER_PRODUCER) / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+import com.android.sdk.core.utils.ConnectivityMonitors;
+import com.android.volley.Cache;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class DeferredRequestsTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/questions";
+    private static final String SYNC_PATH = "http://localhost/sync";
+
+    private final BlockingQueue<String> sentPaths = new LinkedBlockingQueue<>();
+    private final Map<String, Cache.Entry> cacheEntries = new ConcurrentHashMap<>();
+    private RequestQueue queue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+        queue = new RequestQueue(new MemoryCache(), new Network() {
+            @Override
+            public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+                sentPaths.add(request.getUrl());
+                return new NetworkResponse(200, "{}".getBytes(), Collections.<String, String>emptyMap(), false);
+            }
+        }, 2);
+        queue.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.stop();
+        ConnectivityMonitors.reset(getContext());
+        super.tearDown();
+    }
+
+    public void testOfflinePostFailsFast() throws Exception {
+        ConnectivityMonitors.simulate(getContext(), false, false, false);
+        RecordingListener listener = new RecordingListener();
+
+        newTransceiver(60000).queueJsonRequest(DataRequest.createJsonDataRequest(JsonDataRequestMethod.Post(), SYNC_PATH,
+                null, null, new JSONObject()), listener);
+
+        assertEquals(Error.Code.NETWORK_ERROR.toString(), listener.awaitFailureCode());
+        assertNull(sentPaths.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    public void testOfflineGetWithoutCacheEntryFailsFast() throws Exception {
+        ConnectivityMonitors.simulate(getContext(), false, false, false);
+        RecordingListener listener = new RecordingListener();
+
+        newTransceiver(60000).queueJsonRequest(createGet(PATH), listener);
+
+        assertEquals(Error.Code.NETWORK_ERROR.toString(), listener.awaitFailureCode());
+        assertNull(sentPaths.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    public void testOfflineGetIsServedFromFreshCacheEntry() throws Exception {
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = "{\"question\":\"cached\"}".getBytes();
+        entry.ttl = System.currentTimeMillis() + 60000;
+        entry.softTtl = entry.ttl;
+        cacheEntries.put(cacheKeyOf(PATH), entry);
+        ConnectivityMonitors.simulate(getContext(), false, false, false);
+        RecordingListener listener = new RecordingListener();
+
+        newTransceiver(60000).queueJsonRequest(createGet(PATH), listener);
+
+        assertTrue(listener.awaitSuccess());
+        assertNull(sentPaths.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    public void testOfflineGetWithExpiredCacheEntryFailsFast() throws Exception {
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = "{\"question\":\"cached\"}".getBytes();
+        entry.ttl = System.currentTimeMillis() - 1000;
+        entry.softTtl = entry.ttl;
+        cacheEntries.put(cacheKeyOf(PATH), entry);
+        ConnectivityMonitors.simulate(getContext(), false, false, false);
+        RecordingListener listener = new RecordingListener();
+
+        newTransceiver(60000).queueJsonRequest(createGet(PATH), listener);
+
+        assertEquals(Error.Code.NETWORK_ERROR.toString(), listener.awaitFailureCode());
+        assertNull(sentPaths.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    public void testDeferrableRequestTravelsWithNextRequestOnMeteredNetwork() throws Exception {
+        ConnectivityMonitors.simulate(getContext(), true, true, false);
+        DataTransceiver transceiver = newTransceiver(60000);
+        RecordingListener deferred = new RecordingListener();
+
+        transceiver.queueJsonRequest(createDeferrable(SYNC_PATH), deferred);
+        assertNull(sentPaths.poll(300, TimeUnit.MILLISECONDS));
+
+        transceiver.queueJsonRequest(createGet(PATH), new RecordingListener());
+
+        assertSent(PATH, SYNC_PATH);
+        assertTrue(deferred.awaitSuccess());
+    }
+
+    public void testHeldRequestsAreReleasedOnUnmeteredNetwork() throws Exception {
+        ConnectivityMonitors.simulate(getContext(), true, true, false);
+        DataTransceiver transceiver = newTransceiver(60000);
+        RecordingListener deferred = new RecordingListener();
+
+        transceiver.queueJsonRequest(createDeferrable(SYNC_PATH), deferred);
+        assertNull(sentPaths.poll(300, TimeUnit.MILLISECONDS));
+
+        ConnectivityMonitors.simulate(getContext(), true, false, false);
+
+        assertSent(SYNC_PATH);
+        assertTrue(deferred.awaitSuccess());
+    }
+
+    public void testHeldWhilePowerSaving() throws Exception {
+        ConnectivityMonitors.simulate(getContext(), true, false, true);
+        DataTransceiver transceiver = newTransceiver(60000);
+
+        transceiver.queueJsonRequest(createDeferrable(SYNC_PATH), new RecordingListener());
+        assertNull(sentPaths.poll(300, TimeUnit.MILLISECONDS));
+
+        ConnectivityMonitors.simulate(getContext(), true, false, false);
+
+        assertSent(SYNC_PATH);
+    }
+
+    public void testHeldRequestIsSentAtDeadline() throws Exception {
+        ConnectivityMonitors.simulate(getContext(), true, true, false);
+        DataTransceiver transceiver = newTransceiver(200);
+
+        transceiver.queueJsonRequest(createDeferrable(SYNC_PATH), new RecordingListener());
+
+        assertEquals(SYNC_PATH, sentPaths.poll(5, TimeUnit.SECONDS));
+    }
+
+    private DataTransceiver newTransceiver(long maxDeferralMs) {
+        return new DataTransceiver(queue, new DataTransceiverConfig.Builder()
+                .setConnectivityAwareScheduling(true, maxDeferralMs)
+                .build());
+    }
+
+    private void assertSent(String... paths) throws InterruptedException {
+        Map<String, Boolean> expected = new HashMap<>();
+        for (String path : paths) {
+            expected.put(path, Boolean.TRUE);
+        }
+        for (int i = 0; i < paths.length; i++) {
+            String sent = sentPaths.poll(5, TimeUnit.SECONDS);
+            assertNotNull("not sent: " + expected.keySet(), sent);
+            assertNotNull("unexpected: " + sent, expected.remove(sent));
+        }
+    }
+
+    /**
+     * Volley keys cache entries by method and url.
+     */
+    private static String cacheKeyOf(String path) {
+        return new JsonRequest(new DataTransaction(createGet(path)), null).getCacheKey();
+    }
+
+    private static DataRequest createGet(String path) {
+        return DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), path, null, null);
+    }
+
+    private static DataRequest createDeferrable(String path) {
+        DataRequest dataRequest = createGet(path);
+        dataRequest.setDeferrable(true);
+        return dataRequest;
+    }
+
+    private static final class RecordingListener implements DataListener {
+        private final BlockingQueue<DataTransaction> successes = new LinkedBlockingQueue<>();
+        private final BlockingQueue<DataTransaction> failures = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onSuccess(DataTransaction dataTransaction) {
+            successes.add(dataTransaction);
+        }
+
+        @Override
+        public void onFailure(DataTransaction dataTransaction) {
+            failures.add(dataTransaction);
+        }
+
+        boolean awaitSuccess() throws InterruptedException {
+            return successes.poll(5, TimeUnit.SECONDS) != null;
+        }
+
+        String awaitFailureCode() throws InterruptedException {
+            DataTransaction transaction = failures.poll(5, TimeUnit.SECONDS);
+            assertNotNull(transaction);
+            return transaction.getDataResponse().getFailureMessage().getCode();
+        }
+    }
+
+    private final class MemoryCache implements Cache {
+        @Override
+        public Entry get(String key) {
+            return cacheEntries.get(key);
+        }
+
+        @Override
+        public void put(String key, Entry entry) {
+            cacheEntries.put(key, entry);
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public void invalidate(String key, boolean fullExpire) {
+            cacheEntries.remove(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            cacheEntries.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            cacheEntries.clear();
+        }
+    }
+}
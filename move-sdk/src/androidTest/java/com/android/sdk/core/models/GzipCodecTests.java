@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class GzipCodecTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/questions";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+    }
+
+    public void testRoundTrip() throws Exception {
+        byte[] body = new byte[4096];
+        Arrays.fill(body, (byte) 'a');
+        byte[] encoded = GzipCodec.encode(body);
+        assertTrue(encoded.length < body.length);
+        assertTrue(Arrays.equals(body, GzipCodec.decode(encoded)));
+    }
+
+    public void testContentEncodingIsCaseInsensitive() {
+        Map<String, String> headers = new HashMap<>();
+        assertFalse(GzipCodec.isGzipEncoded(headers));
+        headers.put("content-encoding", "GZIP");
+        assertTrue(GzipCodec.isGzipEncoded(headers));
+        assertFalse(GzipCodec.isGzipEncoded(null));
+    }
+
+    public void testGzipResponseIsDecodedBeforeParsing() throws Exception {
+        byte[] json = "{\"id\":1}".getBytes("UTF-8");
+        Map<String, String> headers = new HashMap<>();
+        headers.put(GzipCodec.HEADER_CONTENT_ENCODING, GzipCodec.GZIP);
+        DataTransaction transaction = new DataTransaction(DataRequest.createSimpleDataRequest(
+                SimpleDataRequestMethod.Get(), PATH, new HashMap<String, String>(), null));
+        JsonRequest request = new JsonRequest(transaction, null);
+
+        Response<JSONObject> response = request.parseNetworkResponse(
+                new NetworkResponse(200, GzipCodec.encode(json), headers, false));
+
+        assertTrue(response.isSuccess());
+        assertEquals(1, response.result.getInt("id"));
+        assertEquals(json.length, transaction.getDataResponse().getContentLength());
+    }
+
+    public void testSmallBodiesAreNotCompressed() throws Exception {
+        JSONObject body = new JSONObject();
+        body.put("id", 1);
+        DataRequest dataRequest = DataRequest.createJsonDataRequest(JsonDataRequestMethod.Post(), PATH,
+                new HashMap<String, String>(), null, body);
+        dataRequest.setCompressBody(true);
+        JsonRequest request = new JsonRequest(new DataTransaction(dataRequest), null);
+        request.setCompression(true, DataTransceiverConfig.DEFAULT_REQUEST_COMPRESSION_THRESHOLD_BYTES);
+
+        assertFalse(request.getHeaders().containsKey(GzipCodec.HEADER_CONTENT_ENCODING));
+        assertEquals(GzipCodec.GZIP, request.getHeaders().get(GzipCodec.HEADER_ACCEPT_ENCODING));
+
+        JsonRequest compressed = new JsonRequest(new DataTransaction(dataRequest), null);
+        compressed.setCompression(true, 0);
+        assertEquals(GzipCodec.GZIP, compressed.getHeaders().get(GzipCodec.HEADER_CONTENT_ENCODING));
+        assertTrue(Arrays.equals(dataRequest.getBody(), GzipCodec.decode(compressed.getBody())));
+    }
+}
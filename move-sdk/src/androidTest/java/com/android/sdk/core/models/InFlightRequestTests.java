@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InFlightRequestTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/questions";
+
+    private final AtomicInteger networkCalls = new AtomicInteger();
+    private final CountDownLatch networkGate = new CountDownLatch(1);
+    private RequestQueue queue;
+    private DataTransceiver transceiver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+        queue = new RequestQueue(new NoCache(), new Network() {
+            @Override
+            public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+                networkCalls.incrementAndGet();
+                try {
+                    networkGate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new VolleyError(e);
+                }
+                return new NetworkResponse(200, "{\"question\":\"q\"}".getBytes(), Collections.<String, String>emptyMap(), false);
+            }
+        }, 2);
+        queue.start();
+        transceiver = new DataTransceiver(queue, new DataTransceiverConfig.Builder().build());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.stop();
+        super.tearDown();
+    }
+
+    public void testIdenticalRequestsShareOneCall() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(2);
+        DataListener listener = new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+                assertNotNull(dataTransaction.getDataResponse().getJson());
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+                fail();
+            }
+        };
+
+        transceiver.queueJsonRequest(createRequest(), listener);
+        transceiver.queueJsonRequest(createRequest(), listener);
+        networkGate.countDown();
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(1, networkCalls.get());
+    }
+
+    public void testCancelDetachesOnlyOneSubscriber() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        DataRequest cancelled = createRequest();
+        transceiver.queueJsonRequest(cancelled, new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+                fail();
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+                fail();
+            }
+        });
+        transceiver.queueJsonRequest(createRequest(), new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+                fail();
+            }
+        });
+
+        cancelled.cancel();
+        networkGate.countDown();
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(1, networkCalls.get());
+    }
+
+    public void testSeparatorsInParamsDoNotCollide() {
+        Map<String, String> joined = new HashMap<>();
+        joined.put("a", "1&b=2");
+        Map<String, String> split = new HashMap<>();
+        split.put("a", "1");
+        split.put("b", "2");
+
+        assertFalse(createRequest(joined).getCacheKey().equals(createRequest(split).getCacheKey()));
+    }
+
+    public void testNullParamKeyIsAccepted() {
+        Map<String, String> params = new HashMap<>();
+        params.put(null, "value");
+        params.put("key", null);
+
+        assertNotNull(createRequest(params).getCacheKey());
+    }
+
+    public void testTransientHeaderKeepsIdentity() {
+        DataRequest traced = createRequest();
+        traced.setTransientHeader("X-Trace-Id", "1");
+        DataRequest other = createRequest();
+        other.setTransientHeader("X-Trace-Id", "2");
+        DataRequest authorized = createRequest();
+        authorized.setHeader("Authorization", "token");
+
+        assertEquals(createRequest().getCacheKey(), traced.getCacheKey());
+        assertEquals(traced.getCacheKey(), other.getCacheKey());
+        assertFalse(createRequest().getCacheKey().equals(authorized.getCacheKey()));
+    }
+
+    private static DataRequest createRequest(Map<String, String> params) {
+        return DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), PATH, new HashMap<String, String>(), params);
+    }
+
+    private static DataRequest createRequest() {
+        Map<String, String> params = new HashMap<>();
+        params.put("key", "value");
+        return DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), PATH, new HashMap<String, String>(), params);
+    }
+}
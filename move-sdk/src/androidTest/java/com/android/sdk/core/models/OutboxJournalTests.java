@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OutboxJournalTests extends AndroidTestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = new File(getContext().getFilesDir(), "outbox_journal_tests.journal");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testEntriesSurviveReload() throws Exception {
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.load();
+        journal.append(entry("a"));
+        journal.append(entry("b"));
+        journal.ack("a");
+        journal.sync();
+        journal.close();
+
+        OutboxJournal reloaded = new OutboxJournal(file);
+        reloaded.load();
+
+        List<OutboxJournal.Entry> entries = reloaded.entries();
+        assertEquals(1, entries.size());
+        OutboxJournal.Entry entry = entries.get(0);
+        assertEquals("b", entry.key);
+        assertEquals(DataRequestMethod.Method.POST, entry.method);
+        assertEquals("http://localhost/answers", entry.path);
+        assertEquals("b", entry.headers.get(Outbox.HEADER_IDEMPOTENCY_KEY));
+        assertNull(entry.params);
+        assertEquals("{\"id\":\"b\"}", new String(entry.body, "UTF-8"));
+        assertEquals(DataRequestBody.CONTENT_TYPE_JSON, entry.contentType);
+        assertTrue(entry.compressBody);
+
+        DataRequest dataRequest = entry.toDataRequest();
+        assertTrue(dataRequest.hasBody());
+        assertTrue(dataRequest.isCompressBody());
+        assertEquals("{\"id\":\"b\"}", new String(dataRequest.getBody(), "UTF-8"));
+    }
+
+    public void testUnsyncedEntriesAreNotWritten() throws Exception {
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.load();
+        journal.append(entry("a"));
+
+        OutboxJournal reloaded = new OutboxJournal(file);
+        reloaded.load();
+
+        assertEquals(0, reloaded.size());
+    }
+
+    public void testTornRecordIsDropped() throws Exception {
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.load();
+        journal.append(entry("a"));
+        journal.append(entry("b"));
+        journal.sync();
+        journal.close();
+        long length = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(length - 3);
+        raf.close();
+
+        OutboxJournal reloaded = new OutboxJournal(file);
+        reloaded.load();
+
+        assertEquals(1, reloaded.size());
+        assertTrue(reloaded.contains("a"));
+        assertEquals(length / 2, file.length());
+
+        reloaded.append(entry("c"));
+        reloaded.sync();
+        reloaded.close();
+        OutboxJournal appended = new OutboxJournal(file);
+        appended.load();
+        assertEquals(2, appended.size());
+    }
+
+    public void testAcknowledgedEntriesAreCompacted() throws Exception {
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.load();
+        int count = OutboxJournal.COMPACTION_MIN_ACKS;
+        for (int i = 0; i <= count; i++) {
+            journal.append(entry(key(i)));
+        }
+        journal.sync();
+        long singleEntryLength = file.length() / (count + 1);
+        for (int i = 0; i < count; i++) {
+            journal.ack(key(i));
+        }
+        journal.sync();
+        journal.close();
+
+        assertEquals(singleEntryLength, file.length());
+        OutboxJournal reloaded = new OutboxJournal(file);
+        reloaded.load();
+        assertEquals(1, reloaded.size());
+        assertTrue(reloaded.contains(key(count)));
+    }
+
+    private static String key(int i) {
+        return String.format("key%03d", i);
+    }
+
+    private static OutboxJournal.Entry entry(String key) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(Outbox.HEADER_IDEMPOTENCY_KEY, key);
+        return new OutboxJournal.Entry(key, DataRequestMethod.Method.POST, "http://localhost/answers", headers, null,
+                ("{\"id\":\"" + key + "\"}").getBytes(DataRequestBody.UTF_8), DataRequestBody.CONTENT_TYPE_JSON, true);
+    }
+}
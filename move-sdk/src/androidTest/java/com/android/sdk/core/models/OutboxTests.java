@@ -0,0 +1,234 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+import com.android.sdk.core.utils.ConnectivityMonitors;
+import com.android.volley.AuthFailureError;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.ServerError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class OutboxTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/answers";
+
+    private final BlockingQueue<Integer> statusCodes = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Map<String, String>> sentHeaders = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> delivered = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> rejected = new LinkedBlockingQueue<>();
+    private RequestQueue queue;
+    private DataTransceiver transceiver;
+    private File journalFile;
+    private File blockedDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+        ConnectivityMonitors.simulate(getContext(), true, false, false);
+        journalFile = new File(getContext().getFilesDir(), "outbox_tests.journal");
+        journalFile.delete();
+        blockedDir = new File(getContext().getFilesDir(), "outbox_tests_blocked");
+        delete(blockedDir);
+        queue = new RequestQueue(new NoCache(), new Network() {
+            @Override
+            public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+                try {
+                    sentHeaders.add(new HashMap<>(request.getHeaders()));
+                } catch (AuthFailureError e) {
+                    throw new VolleyError(e);
+                }
+                Integer statusCode = statusCodes.poll();
+                NetworkResponse response = new NetworkResponse(statusCode != null ? statusCode : 200, new byte[0],
+                        Collections.<String, String>emptyMap(), false);
+                if (response.statusCode >= 400) {
+                    throw new ServerError(response);
+                }
+                return response;
+            }
+        }, 2);
+        queue.start();
+        transceiver = new DataTransceiver(queue, new DataTransceiverConfig.Builder()
+                .setRetryPolicy(DataRetryPolicy.NONE)
+                .build());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.stop();
+        journalFile.delete();
+        delete(blockedDir);
+        ConnectivityMonitors.reset(getContext());
+        super.tearDown();
+    }
+
+    public void testSuccessAcknowledgesEntry() throws Exception {
+        Outbox outbox = newOutbox(journalFile, null);
+
+        String key = outbox.enqueue(createRequest());
+
+        assertEquals(key, delivered.poll(5, TimeUnit.SECONDS));
+        assertEquals(key, sentHeaders.poll(5, TimeUnit.SECONDS).get(Outbox.HEADER_IDEMPOTENCY_KEY));
+        awaitPendingCount(outbox, 0);
+        OutboxJournal journal = new OutboxJournal(journalFile);
+        journal.load();
+        assertEquals(0, journal.size());
+    }
+
+    public void testRetryableFailureKeepsEntryWithItsKey() throws Exception {
+        Outbox outbox = newOutbox(journalFile, null);
+        statusCodes.add(503);
+
+        String key = outbox.enqueue(createRequest());
+
+        assertEquals(key, sentHeaders.poll(5, TimeUnit.SECONDS).get(Outbox.HEADER_IDEMPOTENCY_KEY));
+        assertNull(delivered.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, outbox.getPendingCount());
+
+        outbox.replay();
+
+        assertEquals(key, sentHeaders.poll(5, TimeUnit.SECONDS).get(Outbox.HEADER_IDEMPOTENCY_KEY));
+        assertEquals(key, delivered.poll(5, TimeUnit.SECONDS));
+        awaitPendingCount(outbox, 0);
+    }
+
+    public void testRejectedRequestLeavesOutbox() throws Exception {
+        Outbox outbox = newOutbox(journalFile, null);
+        statusCodes.add(400);
+
+        String key = outbox.enqueue(createRequest());
+
+        assertEquals(key, rejected.poll(5, TimeUnit.SECONDS));
+        awaitPendingCount(outbox, 0);
+    }
+
+    public void testNothingIsSentUntilTheJournalIsOnDisk() throws Exception {
+        assertTrue(blockedDir.createNewFile());
+        Outbox outbox = newOutbox(new File(blockedDir, "journal"), null);
+
+        String key = outbox.enqueue(createRequest());
+
+        assertNull(sentHeaders.poll(500, TimeUnit.MILLISECONDS));
+        assertTrue(blockedDir.delete());
+        assertTrue(blockedDir.mkdir());
+
+        Map<String, String> headers = sentHeaders.poll(Outbox.SYNC_RETRY_MIN_MS * 4, TimeUnit.MILLISECONDS);
+        assertNotNull(headers);
+        assertEquals(key, headers.get(Outbox.HEADER_IDEMPOTENCY_KEY));
+        assertEquals(key, delivered.poll(5, TimeUnit.SECONDS));
+    }
+
+    public void testHeaderPolicyKeepsCredentialsOutOfTheJournal() throws Exception {
+        ConnectivityMonitors.simulate(getContext(), false, false, false);
+        Outbox outbox = newOutbox(journalFile, new Outbox.HeaderPolicy() {
+            @Override
+            public boolean isJournaled(String name) {
+                return !"Authorization".equals(name);
+            }
+
+            @Override
+            public void onSend(String idempotencyKey, DataRequest dataRequest) {
+                dataRequest.setHeader("Authorization", "Bearer current");
+            }
+        });
+        DataRequest dataRequest = createRequest();
+        dataRequest.setHeader("Authorization", "Bearer stale");
+        dataRequest.setHeader("X-Client", "tests");
+
+        String key = outbox.enqueue(dataRequest);
+        awaitPendingCount(outbox, 1);
+
+        OutboxJournal journal = new OutboxJournal(journalFile);
+        journal.load();
+        OutboxJournal.Entry entry = journal.entries().get(0);
+        assertFalse(entry.headers.containsKey("Authorization"));
+        assertEquals("tests", entry.headers.get("X-Client"));
+        assertEquals(key, entry.headers.get(Outbox.HEADER_IDEMPOTENCY_KEY));
+
+        ConnectivityMonitors.simulate(getContext(), true, false, false);
+
+        Map<String, String> headers = sentHeaders.poll(5, TimeUnit.SECONDS);
+        assertNotNull(headers);
+        assertEquals("Bearer current", headers.get("Authorization"));
+        assertEquals(key, delivered.poll(5, TimeUnit.SECONDS));
+    }
+
+    private Outbox newOutbox(File file, Outbox.HeaderPolicy headerPolicy) {
+        Outbox outbox = new Outbox(getContext(), transceiver, file, 1, headerPolicy);
+        outbox.setListener(new Outbox.Listener() {
+            @Override
+            public void onDelivered(String idempotencyKey, DataTransaction dataTransaction) {
+                delivered.add(idempotencyKey);
+            }
+
+            @Override
+            public void onRejected(String idempotencyKey, DataTransaction dataTransaction) {
+                rejected.add(idempotencyKey);
+            }
+        });
+        return outbox;
+    }
+
+    private static void awaitPendingCount(Outbox outbox, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (outbox.getPendingCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, outbox.getPendingCount());
+    }
+
+    private static DataRequest createRequest() throws Exception {
+        return DataRequest.createJsonDataRequest(JsonDataRequestMethod.Post(), PATH, null, null,
+                new JSONObject().put("answer", 1));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PriorityLimiterTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/questions";
+
+    private final AtomicInteger networkCalls = new AtomicInteger();
+    private final Semaphore networkGate = new Semaphore(0);
+    private RequestQueue queue;
+    private DataTransceiver transceiver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+        queue = new RequestQueue(new NoCache(), new Network() {
+            @Override
+            public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+                networkCalls.incrementAndGet();
+                try {
+                    networkGate.tryAcquire(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new VolleyError(e);
+                }
+                return new NetworkResponse(200, "{\"question\":\"q\"}".getBytes(), Collections.<String, String>emptyMap(), false);
+            }
+        }, 4);
+        queue.start();
+        transceiver = new DataTransceiver(queue, new DataTransceiverConfig.Builder()
+                .setMaxConcurrentRequests(DataRequest.Priority.PREFETCH, 1)
+                .build());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.stop();
+        super.tearDown();
+    }
+
+    public void testPrefetchRequestsAreCapped() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(3);
+        DataListener listener = countingListener(delivered);
+        for (int i = 0; i < 3; i++) {
+            transceiver.queueJsonRequest(createRequest(i, DataRequest.Priority.PREFETCH), listener);
+        }
+
+        Thread.sleep(200);
+        assertEquals(1, networkCalls.get());
+
+        networkGate.release(3);
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(3, networkCalls.get());
+    }
+
+    public void testUncappedClassIsNotHeldBack() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(2);
+        DataListener listener = countingListener(delivered);
+        transceiver.queueJsonRequest(createRequest(0, DataRequest.Priority.PREFETCH), listener);
+        transceiver.queueJsonRequest(createRequest(1, DataRequest.Priority.HIGH), listener);
+
+        Thread.sleep(200);
+        assertEquals(2, networkCalls.get());
+
+        networkGate.release(2);
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+    }
+
+    private static DataListener countingListener(final CountDownLatch delivered) {
+        return new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+                fail();
+            }
+        };
+    }
+
+    private static DataRequest createRequest(int page, DataRequest.Priority priority) {
+        Map<String, String> params = new HashMap<>();
+        params.put("page", String.valueOf(page));
+        DataRequest dataRequest = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), PATH, new HashMap<String, String>(), params);
+        dataRequest.setPriority(priority);
+        return dataRequest;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ResponseTypeTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/export";
+    private static final byte[] BODY = {'e', 'x', 'p', 0, 'o', 'r', 't'};
+
+    private final AtomicReference<Request<?>> lastRequest = new AtomicReference<>();
+    private RequestQueue queue;
+    private DataTransceiver transceiver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+        queue = new RequestQueue(new NoCache(), new Network() {
+            @Override
+            public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+                lastRequest.set(request);
+                return new NetworkResponse(200, BODY, Collections.<String, String>emptyMap(), false);
+            }
+        }, 1);
+        queue.start();
+        transceiver = new DataTransceiver(queue, new DataTransceiverConfig.Builder().build());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        queue.stop();
+        super.tearDown();
+    }
+
+    public void testBodyMethodsSendTheirBody() throws Exception {
+        JSONObject body = new JSONObject();
+        body.put("id", 1);
+        DataRequest put = DataRequest.createJsonDataRequest(JsonDataRequestMethod.Put(), PATH, null, null, body);
+        DataRequest patch = DataRequest.createJsonDataRequest(JsonDataRequestMethod.Patch(), PATH, null, null, body);
+
+        assertEquals(Request.Method.PUT, put.getMethod());
+        assertEquals(Request.Method.PATCH, patch.getMethod());
+        assertTrue(put.hasBody());
+        assertTrue(Arrays.equals(put.getBody(), new JsonRequest(new DataTransaction(put), null).getBody()));
+        assertFalse(DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Delete(), PATH, null, null).hasBody());
+    }
+
+    public void testBytesResponse() throws Exception {
+        DataRequest head = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Head(), PATH, null, null);
+        DataResponse response = await(head, VolleyRequestFactory.BYTES, null);
+
+        assertEquals(Request.Method.HEAD, lastRequest.get().getMethod());
+        assertTrue(Arrays.equals(BODY, (byte[]) response.getResult()));
+    }
+
+    public void testStringResponse() throws Exception {
+        DataRequest get = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), PATH, null, null);
+
+        assertEquals(new String(BODY, "UTF-8"), await(get, VolleyRequestFactory.STRING, null).getResult());
+    }
+
+    public void testFileResponseReplacesTarget() throws Exception {
+        File target = new File(getContext().getFilesDir(), "export.bin");
+        DataRequest delete = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Delete(), PATH, null, null);
+        DataResponse response = await(delete, null, target);
+
+        assertEquals(target, response.getResult());
+        assertEquals(BODY.length, target.length());
+        assertFalse(new File(target.getPath() + ".part").exists());
+        assertTrue(target.delete());
+    }
+
+    public void testFileResponseReportsCompletion() throws Exception {
+        File target = new File(getContext().getFilesDir(), "export.bin");
+        final AtomicReference<long[]> progress = new AtomicReference<>();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        DataRequest get = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), PATH, null, null);
+        transceiver.queueFileRequest(get, target, true, new DownloadProgressListener() {
+            @Override
+            public void onProgress(long bytesDownloaded, long totalBytes) {
+                progress.set(new long[]{bytesDownloaded, totalBytes});
+            }
+        }, FileRequest.DEFAULT_PROGRESS_INTERVAL_MS, new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+                fail();
+            }
+        });
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(BODY.length, progress.get()[0]);
+        assertEquals(BODY.length, progress.get()[1]);
+        assertTrue(target.delete());
+    }
+
+    private DataResponse await(DataRequest dataRequest, VolleyRequestFactory factory, File target) throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicReference<DataResponse> result = new AtomicReference<>();
+        DataListener listener = new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+                result.set(dataTransaction.getDataResponse());
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+                delivered.countDown();
+            }
+        };
+        if (target != null) {
+            transceiver.queueFileRequest(dataRequest, target, listener);
+        } else if (factory == VolleyRequestFactory.BYTES) {
+            transceiver.queueBytesRequest(dataRequest, listener);
+        } else {
+            transceiver.queueStringRequest(dataRequest, listener);
+        }
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertNotNull(result.get());
+        return result.get();
+    }
+}
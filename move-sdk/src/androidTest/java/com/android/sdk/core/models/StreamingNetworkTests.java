@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.utils.TestHttpServer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public class StreamingNetworkTests extends AndroidTestCase {
+
+    private static final String ETAG = "\"v1\"";
+
+    private TestHttpServer server;
+    private File target;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new TestHttpServer();
+        target = new File(getContext().getCacheDir(), "download.txt");
+        delete(target);
+        delete(StreamingNetwork.partialFileOf(target));
+        delete(validatorFileOf(target));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+        super.tearDown();
+    }
+
+    public void testPartialDownloadIsResumed() throws Exception {
+        writePartial("hello ");
+        server.enqueue(206, headers("Content-Range", "bytes 6-10/11"), "world".getBytes("UTF-8"));
+
+        download();
+
+        TestHttpServer.Request request = server.takeRequest(1000);
+        assertEquals("bytes=6-", request.getHeader("Range"));
+        assertEquals(ETAG, request.getHeader("If-Range"));
+        assertEquals("hello world", read(target));
+    }
+
+    public void testChangedFileIsDownloadedAgain() throws Exception {
+        writePartial("hello ");
+        server.enqueue(200, headers("ETag", "\"v2\""), "HELLO WORLD".getBytes("UTF-8"));
+
+        download();
+
+        assertEquals("HELLO WORLD", read(target));
+        assertFalse(StreamingNetwork.partialFileOf(target).exists());
+    }
+
+    public void testUnsatisfiableRangeOfCompletePartialFinishes() throws Exception {
+        writePartial("hello world");
+        server.enqueue(416, headers("Content-Range", "bytes */11"), new byte[0]);
+
+        download();
+
+        assertEquals("hello world", read(target));
+        assertNotNull(server.takeRequest(1000));
+        assertNull(server.takeRequest(100));
+    }
+
+    public void testUnsatisfiableRangeRestartsTheDownload() throws Exception {
+        writePartial("hello world, again");
+        server.enqueue(416, headers("Content-Range", "bytes */11"), new byte[0]);
+        server.enqueue(200, headers("ETag", ETAG), "hello world".getBytes("UTF-8"));
+
+        download();
+
+        assertEquals("hello world", read(target));
+        assertNotNull(server.takeRequest(1000).getHeader("Range"));
+        assertNull(server.takeRequest(1000).getHeader("Range"));
+    }
+
+    public void testDownloadsOfATargetAreQueued() {
+        DownloadTargets targets = new DownloadTargets();
+        FileRequest first = newRequest();
+        FileRequest second = newRequest();
+        FileRequest cancelled = newRequest();
+        cancelled.cancel();
+
+        assertTrue(targets.acquireOrPark(first));
+        assertFalse(targets.acquireOrPark(cancelled));
+        assertFalse(targets.acquireOrPark(second));
+        assertSame(second, targets.release(first));
+        assertNull(targets.release(second));
+        assertTrue(targets.acquireOrPark(first));
+    }
+
+    private void download() throws Exception {
+        new StreamingNetwork(null).performRequest(newRequest());
+    }
+
+    private FileRequest newRequest() {
+        DataRequest dataRequest = DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(),
+                server.getUrl("/download.txt"), null, null);
+        return new FileRequest(new DataTransaction(dataRequest), target, true, null,
+                FileRequest.DEFAULT_PROGRESS_INTERVAL_MS, null);
+    }
+
+    private void writePartial(String content) throws IOException {
+        write(StreamingNetwork.partialFileOf(target), content);
+        write(validatorFileOf(target), ETAG);
+    }
+
+    private static File validatorFileOf(File target) {
+        return new File(target.getPath() + ".part.validator");
+    }
+
+    private static Map<String, String> headers(String name, String value) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(name, value);
+        return headers;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int length = 0;
+            int read;
+            while (length < content.length && (read = in.read(content, length, content.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            in.close();
+        }
+        return new String(content, "UTF-8");
+    }
+
+    private static void delete(File file) {
+        if (file.exists()) {
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.StringReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TypeAdapterRegistryTests extends AndroidTestCase {
+
+    private static final String JSON = "{question: 'Favourite language?', 'published_at': '2016-04-10',"
+            + " choices: [{choice: 'Java', votes: 3}, {choice: 'Kotlin', votes: 2}]}";
+
+    public void testAdapterIsCachedPerType() {
+        TypeAdapterRegistry registry = new TypeAdapterRegistry(new Gson());
+
+        TypeAdapter<Question> adapter = registry.getAdapter(Question.class);
+
+        assertSame(adapter, registry.getAdapter(Question.class));
+        assertNotSame(adapter, registry.getAdapter(Choice.class));
+    }
+
+    public void testRegisteredAdapterReplacesCachedOne() {
+        TypeAdapterRegistry registry = new TypeAdapterRegistry(new Gson());
+        registry.getAdapter(Question.class);
+        TypeAdapter<Question> custom = new Gson().getAdapter(Question.class);
+
+        registry.registerAdapter(Question.class, custom);
+
+        assertSame(custom, registry.getAdapter(Question.class));
+    }
+
+    public void testStringAndReaderParseAlike() {
+        TypeAdapterRegistry registry = new TypeAdapterRegistry(new Gson());
+
+        Question fromString = registry.fromJson(JSON, Question.class);
+        Question fromReader = registry.fromJson(new StringReader(JSON), Question.class);
+
+        assertEquals("Favourite language?", fromString.getQuestion());
+        assertEquals(fromString.getQuestion(), fromReader.getQuestion());
+        assertEquals(fromString.getPublishedAt(), fromReader.getPublishedAt());
+        assertEquals(2, fromReader.getChoices().size());
+        for (int i = 0; i < fromString.getChoices().size(); i++) {
+            assertEquals(fromString.getChoices().get(i).getChoice(), fromReader.getChoices().get(i).getChoice());
+            assertEquals(fromString.getChoices().get(i).getVotes(), fromReader.getChoices().get(i).getVotes());
+        }
+    }
+
+    public void testMalformedJsonFailsAlike() {
+        TypeAdapterRegistry registry = new TypeAdapterRegistry(new Gson());
+        String malformed = "{question: ['not', 'a', 'string']}";
+
+        try {
+            registry.fromJson(malformed, Question.class);
+            fail();
+        } catch (JsonSyntaxException expected) {
+        }
+        try {
+            registry.fromJson(new StringReader(malformed), Question.class);
+            fail();
+        } catch (JsonSyntaxException expected) {
+        }
+    }
+
+    public void testWarmUpBuildsAdaptersInTheBackground() throws Exception {
+        final CountDownLatch built = new CountDownLatch(1);
+        final AtomicReference<Thread> builder = new AtomicReference<>();
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(new TypeAdapterFactory() {
+            @Override
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                if (type.getRawType() == Question.class) {
+                    builder.set(Thread.currentThread());
+                    built.countDown();
+                }
+                return null;
+            }
+        }).create();
+
+        new TypeAdapterRegistry(gson).warmUp(Question.class);
+
+        assertTrue(built.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), builder.get());
+    }
+}
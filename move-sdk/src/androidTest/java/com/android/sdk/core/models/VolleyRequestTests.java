@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.test.AndroidTestCase;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+import com.google.gson.Gson;
+
+import java.util.Collections;
+
+public class VolleyRequestTests extends AndroidTestCase {
+
+    private static final String PATH = "http://localhost/questions";
+
+    public void testBodilessNotModifiedIsNotCached() {
+        JsonRequest jsonRequest = new JsonRequest(newTransaction(), null);
+        assertNotModifiedWithoutCacheEntry(jsonRequest, jsonRequest.parseNetworkResponse(bodilessNotModified()));
+        GsonRequest<Question> gsonRequest = new GsonRequest<>(newTransaction(), new Gson().getAdapter(Question.class), null);
+        assertNotModifiedWithoutCacheEntry(gsonRequest, gsonRequest.parseNetworkResponse(bodilessNotModified()));
+        BytesRequest bytesRequest = new BytesRequest(newTransaction(), null);
+        assertNotModifiedWithoutCacheEntry(bytesRequest, bytesRequest.parseNetworkResponse(bodilessNotModified()));
+        StringRequest stringRequest = new StringRequest(newTransaction(), null);
+        assertNotModifiedWithoutCacheEntry(stringRequest, stringRequest.parseNetworkResponse(bodilessNotModified()));
+    }
+
+    public void testNotModifiedWithCachedDataIsCached() {
+        NetworkResponse notModified = new NetworkResponse(304, new byte[]{'{', '}'}, Collections.<String, String>emptyMap(), true);
+        Response<?> response = new JsonRequest(newTransaction(), null).parseNetworkResponse(notModified);
+
+        assertTrue(response.isSuccess());
+        assertNotNull(response.cacheEntry);
+    }
+
+    public void testOnlyGetRequestsUseTheCache() {
+        assertTrue(new BytesRequest(newTransaction(), null).shouldCache());
+        assertFalse(new BytesRequest(new DataTransaction(DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Head(),
+                PATH, null, null)), null).shouldCache());
+        assertFalse(new BytesRequest(new DataTransaction(DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Delete(),
+                PATH, null, null)), null).shouldCache());
+    }
+
+    public void testHeadersAreRecordedForUncacheableResponses() {
+        DataTransaction transaction = new DataTransaction(DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Head(),
+                PATH, null, null));
+        NetworkResponse head = new NetworkResponse(200, new byte[0],
+                Collections.singletonMap("Cache-Control", "no-store"), false);
+
+        Response<byte[]> response = new BytesRequest(transaction, null).parseNetworkResponse(head);
+
+        assertTrue(response.isSuccess());
+        assertNull(transaction.getDataResponse().getCacheEntry());
+        assertEquals("no-store", transaction.getDataResponse().getHeaders().get("Cache-Control"));
+    }
+
+    /**
+     * BasicNetwork answers a 304 without data when volley has no cache entry for the request.
+     */
+    static NetworkResponse bodilessNotModified() {
+        return new NetworkResponse(304, null, Collections.<String, String>emptyMap(), true);
+    }
+
+    static void assertNotModifiedWithoutCacheEntry(VolleyRequest<?> request, Response<?> response) {
+        assertTrue(response.isSuccess());
+        assertNull(response.result);
+        assertNull(response.cacheEntry);
+        assertTrue(request.dataTransaction.getDataResponse().isNotModified());
+    }
+
+    static DataTransaction newTransaction() {
+        return new DataTransaction(DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), PATH, null, null));
+    }
+}
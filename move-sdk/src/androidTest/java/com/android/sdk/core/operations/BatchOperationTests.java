@@ -0,0 +1,263 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.operations;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.models.FailureMessage;
+import com.android.sdk.core.utils.Dispatchers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchOperationTests extends AndroidTestCase {
+
+    private final AtomicInteger inExecution = new AtomicInteger();
+    private final AtomicInteger maxInExecution = new AtomicInteger();
+    private final List<StubOperation> pending = new ArrayList<>();
+
+    public void testParallelismIsBounded() {
+        List<StubOperation> operations = createOperations(10, -1);
+        BatchOperation<String> batch = new BatchOperation<>(operations, 3, BatchOperation.Mode.COLLECT_ALL);
+        RecordingListener listener = new RecordingListener();
+
+        batch.execute(listener, Dispatchers.immediate());
+        while (!pending.isEmpty()) {
+            pending.remove(0).complete();
+        }
+
+        assertEquals(3, maxInExecution.get());
+        assertNotNull(listener.result);
+        assertEquals(10, listener.result.getResults().size());
+    }
+
+    public void testCollectAllReportsFailures() {
+        List<StubOperation> operations = createOperations(4, 2);
+        BatchOperation<String> batch = new BatchOperation<>(operations, 4, BatchOperation.Mode.COLLECT_ALL);
+        RecordingListener listener = new RecordingListener();
+
+        batch.execute(listener, Dispatchers.immediate());
+        while (!pending.isEmpty()) {
+            pending.remove(0).complete();
+        }
+
+        assertEquals(1, listener.result.getFailureCount());
+        assertFalse(listener.result.isSuccess(2));
+        assertEquals("result-3", listener.result.getResult(3));
+    }
+
+    public void testFailFastCancelsRemaining() {
+        List<StubOperation> operations = createOperations(6, 0);
+        BatchOperation<String> batch = new BatchOperation<>(operations, 2, BatchOperation.Mode.FAIL_FAST);
+        RecordingListener listener = new RecordingListener();
+
+        batch.execute(listener, Dispatchers.immediate());
+        pending.remove(0).complete();
+
+        assertNotNull(listener.failureMessage);
+        assertTrue(operations.get(1).cancelled);
+        assertFalse(operations.get(2).executed);
+    }
+
+    public void testCancelCancelsGroup() {
+        List<StubOperation> operations = createOperations(5, -1);
+        BatchOperation<String> batch = new BatchOperation<>(operations, 2, BatchOperation.Mode.COLLECT_ALL);
+        RecordingListener listener = new RecordingListener();
+
+        batch.execute(listener, Dispatchers.immediate());
+        assertTrue(batch.cancel());
+
+        assertTrue(operations.get(0).cancelled);
+        assertTrue(operations.get(1).cancelled);
+        assertFalse(operations.get(2).executed);
+        assertNull(listener.result);
+    }
+
+    public void testItemCompletingTwiceIsCountedOnce() {
+        List<StubOperation> operations = createOperations(3, -1);
+        BatchOperation<String> batch = new BatchOperation<>(operations, 1, BatchOperation.Mode.COLLECT_ALL);
+        RecordingListener listener = new RecordingListener();
+        final List<String> items = new ArrayList<>();
+        batch.setItemListener(new BatchOperation.ItemListener<String>() {
+            @Override
+            public void onItemSuccess(int index, String result) {
+                items.add(index + ":" + result);
+            }
+
+            @Override
+            public void onItemFailure(int index, FailureMessage failureMessage) {
+                fail();
+            }
+        });
+
+        batch.execute(listener, Dispatchers.immediate());
+        StubOperation first = pending.remove(0);
+        first.listener.onSuccess("cached-0");
+        first.listener.onSuccess("result-0");
+
+        assertEquals(1, pending.size());
+        assertFalse(operations.get(2).executed);
+        assertNull(listener.result);
+
+        while (!pending.isEmpty()) {
+            pending.remove(0).complete();
+        }
+
+        assertNotNull(listener.result);
+        assertEquals("cached-0", listener.result.getResult(0));
+        assertEquals(3, items.size());
+    }
+
+    public void testCancelDropsQueuedCallbacks() {
+        List<StubOperation> operations = createOperations(2, -1);
+        BatchOperation<String> batch = new BatchOperation<>(operations, 2, BatchOperation.Mode.COLLECT_ALL);
+        RecordingListener listener = new RecordingListener();
+        final List<Integer> items = new ArrayList<>();
+        batch.setItemListener(new BatchOperation.ItemListener<String>() {
+            @Override
+            public void onItemSuccess(int index, String result) {
+                items.add(index);
+            }
+
+            @Override
+            public void onItemFailure(int index, FailureMessage failureMessage) {
+                items.add(index);
+            }
+        });
+        final List<Runnable> queued = new ArrayList<>();
+
+        batch.execute(listener, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                queued.add(command);
+            }
+        });
+        pending.remove(0).complete();
+        assertEquals(1, queued.size());
+        assertTrue(batch.cancel());
+        for (Runnable runnable : queued) {
+            runnable.run();
+        }
+
+        assertTrue(items.isEmpty());
+        assertNull(listener.result);
+    }
+
+    private List<StubOperation> createOperations(int count, int failingIndex) {
+        List<StubOperation> operations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            operations.add(new StubOperation(i, i == failingIndex));
+        }
+        return operations;
+    }
+
+    private class StubOperation implements ExecutorOperation<String> {
+        private final int index;
+        private final boolean fails;
+        private OperationListener<String> listener;
+        private boolean executed;
+        private boolean cancelled;
+
+        StubOperation(int index, boolean fails) {
+            this.index = index;
+            this.fails = fails;
+        }
+
+        @Override
+        public void execute(OperationListener<String> operationListener) {
+            execute(operationListener, Dispatchers.main());
+        }
+
+        @Override
+        public void execute(OperationListener<String> operationListener, Executor deliveryExecutor) {
+            executed = true;
+            listener = operationListener;
+            int current = inExecution.incrementAndGet();
+            if (current > maxInExecution.get()) {
+                maxInExecution.set(current);
+            }
+            pending.add(this);
+        }
+
+        void complete() {
+            if (cancelled) {
+                return;
+            }
+            inExecution.decrementAndGet();
+            if (fails) {
+                listener.onFailure(new StubFailure());
+            } else {
+                listener.onSuccess("result-" + index);
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+            inExecution.decrementAndGet();
+            return true;
+        }
+    }
+
+    private static class RecordingListener implements OperationListener<BatchOperation.Result<String>> {
+        BatchOperation.Result<String> result;
+        FailureMessage failureMessage;
+
+        @Override
+        public void onSuccess(BatchOperation.Result<String> result) {
+            this.result = result;
+        }
+
+        @Override
+        public void onFailure(FailureMessage failureMessage) {
+            this.failureMessage = failureMessage;
+        }
+    }
+
+    private static class StubFailure implements FailureMessage {
+        @NonNull
+        @Override
+        public String getMessage() {
+            return "failed";
+        }
+
+        @NonNull
+        @Override
+        public String getCode() {
+            return "TEST";
+        }
+
+        @Nullable
+        @Override
+        public Exception getException() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.operations;
+
+import android.content.ComponentCallbacks2;
+import android.test.AndroidTestCase;
+
+import com.android.volley.Cache;
+
+public class ResultCacheTests extends AndroidTestCase {
+
+    private ResultCache resultCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        resultCache = new ResultCache(1024);
+    }
+
+    public void testFreshResultIsReturned() {
+        Cache.Entry entry = new Cache.Entry();
+        entry.ttl = System.currentTimeMillis() + 60000;
+
+        assertTrue(resultCache.put("key", "result", entry, 0, 10));
+        assertEquals("result", resultCache.get("key").getResult());
+    }
+
+    public void testNonCacheableResponseIsNotCached() {
+        assertFalse(resultCache.put("key", "result", null, 60000, 10));
+        assertNull(resultCache.get("key"));
+    }
+
+    public void testDefaultTtlIsUsedWithoutCacheHeaders() {
+        assertFalse(resultCache.put("key", "result", new Cache.Entry(), 0, 10));
+        assertTrue(resultCache.put("key", "result", new Cache.Entry(), 60000, 10));
+        assertNotNull(resultCache.get("key"));
+    }
+
+    public void testExpiredResultIsDropped() {
+        Cache.Entry entry = new Cache.Entry();
+        entry.ttl = System.currentTimeMillis() - 1;
+
+        assertFalse(resultCache.put("key", "result", entry, 60000, 10));
+        assertNull(resultCache.get("key"));
+    }
+
+    public void testStaleResultIsKeptForRevalidation() {
+        Cache.Entry entry = new Cache.Entry();
+        entry.etag = "\"v1\"";
+
+        assertTrue(resultCache.put("key", "result", entry, 0, 10, true));
+
+        ResultCache.CachedResult stale = resultCache.get("key", true);
+        assertNotNull(stale);
+        assertEquals("\"v1\"", stale.getEtag());
+        assertNull(resultCache.get("key"));
+    }
+
+    public void testSizeIsBoundedByWeight() {
+        resultCache.put("first", "result", new Cache.Entry(), 60000, 600);
+        resultCache.put("second", "result", new Cache.Entry(), 60000, 600);
+
+        assertNull(resultCache.get("first"));
+        assertNotNull(resultCache.get("second"));
+        assertTrue(resultCache.size() <= resultCache.maxSize());
+    }
+
+    public void testTrimMemoryEvicts() {
+        resultCache.put("key", "result", new Cache.Entry(), 60000, 10);
+        resultCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertNull(resultCache.get("key"));
+    }
+}
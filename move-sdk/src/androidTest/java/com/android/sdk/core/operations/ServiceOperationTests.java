@@ -1,18 +1,24 @@
 package com.android.sdk.core.operations;
 
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.test.AndroidTestCase;
 
 import com.android.sdk.core.Core;
+import com.android.sdk.core.models.Choice;
 import com.android.sdk.core.models.DataRequest;
+import com.android.sdk.core.models.ErrorCodes;
 import com.android.sdk.core.models.FailureMessage;
 import com.android.sdk.core.models.Question;
 import com.android.sdk.core.models.SimpleDataRequestMethod;
+import com.android.sdk.core.utils.Dispatchers;
 import com.android.sdk.core.utils.Logger;
+import com.android.sdk.core.utils.TestHttpServer;
 
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.android.sdk.core.utils.Logger.LogLevel.*;
 
@@ -24,7 +30,7 @@ public class ServiceOperationTests extends AndroidTestCase {
     @Override
     protected void setUp() throws Exception {
         super.setUp();
-        Core.init(getContext(), "http://private-8d0f8-androidmoveframeworkapi.apiary-mock.com");
+        Core.init(getContext(), "http://private-8d0f8-androidmoveframeworkapi.apiary-mock.com", Question.class, Choice.class);
         Logger.overrideLogLevel(DEBUG);
     }
 
@@ -54,6 +60,102 @@ public class ServiceOperationTests extends AndroidTestCase {
 
     }
 
+    public void testStreamingServiceOperation() {
+
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+
+        Operation<Question> operation = new StreamingTestServiceOperation();
+        operation.execute(new OperationListener<Question>() {
+            @Override
+            public void onSuccess(Question result) {
+                assertNotNull(result);
+                countDownLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(FailureMessage failureMessage) {
+                fail();
+            }
+        });
+
+        try {
+            countDownLatch.await(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            fail();
+        }
+
+    }
+
+    public void testServiceOperationWorkerDelivery() {
+
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+
+        final TestServiceOperation operation = new TestServiceOperation();
+        operation.execute(new OperationListener<Question>() {
+            @Override
+            public void onSuccess(Question result) {
+                assertNotNull(result);
+                assertNotSame(Looper.getMainLooper(), Looper.myLooper());
+                assertNotNull(operation.getTimings());
+                countDownLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(FailureMessage failureMessage) {
+                fail();
+            }
+        }, Dispatchers.worker());
+
+        try {
+            countDownLatch.await(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            fail();
+        }
+
+    }
+
+    public void testUnbindableResultFailsInBothParseModes() throws Exception {
+        TestHttpServer server = new TestHttpServer();
+        try {
+            Core.init(getContext(), server.getBaseUrl(), Question.class, Choice.class);
+            String unbindable = "{\"question\":{\"text\":\"not a string\"}}";
+            server.enqueue(200, unbindable);
+            server.enqueue(200, unbindable);
+
+            assertEquals(ErrorCodes.SERVICE_RESPONSE_ERROR, awaitFailureCode(new TestServiceOperation()));
+            assertEquals(ErrorCodes.SERVICE_RESPONSE_ERROR, awaitFailureCode(new StreamingTestServiceOperation()));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static String awaitFailureCode(Operation<Question> operation) throws InterruptedException {
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        final AtomicReference<String> code = new AtomicReference<>();
+        operation.execute(new OperationListener<Question>() {
+            @Override
+            public void onSuccess(Question result) {
+                countDownLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(FailureMessage failureMessage) {
+                code.set(failureMessage.getCode());
+                countDownLatch.countDown();
+            }
+        });
+        assertTrue(countDownLatch.await(30, TimeUnit.SECONDS));
+        return code.get();
+    }
+
+    class StreamingTestServiceOperation extends TestServiceOperation {
+
+        @Override
+        protected boolean isStreamingParseEnabled() {
+            return true;
+        }
+    }
+
     class TestServiceOperation extends ServiceOperation<Question> {
 
         protected TestServiceOperation() {
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.storage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+public class BasePreferencesTests extends AndroidTestCase {
+
+    private static final String NAME = "base_preferences_tests";
+
+    private TestPreferences preferences;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().getSharedPreferences(NAME, Context.MODE_PRIVATE).edit().clear().commit();
+        preferences = new TestPreferences(getContext());
+    }
+
+    public void testTransactionIsVisibleBeforeFlush() {
+        preferences.edit().putString("user", "deepu").putInt("visits", 3).putBoolean("premium", true).apply();
+
+        assertEquals("deepu", preferences.getString("user"));
+        assertEquals(3, preferences.getInt("visits"));
+        assertTrue(preferences.getBoolean("premium"));
+    }
+
+    public void testFlushBlockingWritesEveryChange() {
+        preferences.edit().putString("user", "deepu").putLong("since", 42L).apply();
+        preferences.edit().putFloat("ratio", 0.5f).remove("user").apply();
+        preferences.flushBlocking();
+
+        SharedPreferences stored = getContext().getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        assertFalse(stored.contains("user"));
+        assertEquals(42L, stored.getLong("since", 0));
+        assertEquals(0.5f, stored.getFloat("ratio", 0));
+        assertEquals(42L, new TestPreferences(getContext()).getLong("since"));
+    }
+
+    public void testNullStringRemovesKey() {
+        preferences.setString("user", "deepu");
+        preferences.setString("user", null);
+
+        assertFalse(preferences.contains("user"));
+        assertNull(preferences.getString("user"));
+    }
+
+    public void testLongAndFloatSetters() {
+        preferences.setLong("since", 42L);
+        preferences.setFloat("ratio", 0.5f);
+
+        assertEquals(42L, preferences.getLong("since"));
+        assertEquals(0.5f, preferences.getFloat("ratio"));
+    }
+
+    private static final class TestPreferences extends BasePreferences {
+        TestPreferences(Context context) {
+            super(NAME, context);
+        }
+    }
+}
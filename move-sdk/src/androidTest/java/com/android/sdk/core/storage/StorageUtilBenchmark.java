@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.storage;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.utils.Logger;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compares {@link StorageUtil} with the byte at a time implementation it replaced, on text files of 1 KB to 10 MB.
+ * The text mixes ASCII and multi-byte UTF-8 characters, the old reader corrupted the latter.
+ */
+public class StorageUtilBenchmark extends AndroidTestCase {
+
+    private static final String TAG = StorageUtilBenchmark.class.getSimpleName();
+    private static final String FILE_NAME = "storage_util_benchmark.txt";
+    private static final int[] SIZES = {1024, 64 * 1024, 1024 * 1024, 10 * 1024 * 1024};
+
+    @Override
+    protected void tearDown() throws Exception {
+        StorageUtil.getInternalStorageFile(getContext(), FILE_NAME).delete();
+        super.tearDown();
+    }
+
+    public void testReadWriteThroughput() throws Exception {
+        for (int size : SIZES) {
+            String content = createContent(size);
+            int iterations = Math.max(1, 256 * 1024 / size);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                legacyWrite(getContext(), FILE_NAME, content);
+            }
+            long legacyWriteNs = (System.nanoTime() - start) / iterations;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                legacyRead(getContext(), FILE_NAME);
+            }
+            long legacyReadNs = (System.nanoTime() - start) / iterations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                assertTrue(StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, content));
+            }
+            long writeNs = (System.nanoTime() - start) / iterations;
+            String read = null;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                read = StorageUtil.readFileFromInternalStorage(getContext(), FILE_NAME);
+            }
+            long readNs = (System.nanoTime() - start) / iterations;
+
+            assertEquals(content, read);
+            Logger.i(TAG, String.format("%d bytes: write %d us (legacy %d us), read %d us (legacy %d us)",
+                    size, writeNs / 1000, legacyWriteNs / 1000, readNs / 1000, legacyReadNs / 1000));
+        }
+    }
+
+    public void testBytesRoundTrip() {
+        byte[] content = new byte[3 * StorageUtil.BUFFER_SIZE + 1];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        assertTrue(StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, content));
+
+        assertTrue(Arrays.equals(content, StorageUtil.readBytesFromInternalStorage(getContext(), FILE_NAME)));
+        assertFalse(StorageUtil.getInternalStorageFile(getContext(), FILE_NAME + ".tmp").exists());
+        assertNull(StorageUtil.readBytesFromInternalStorage(getContext(), "missing_" + FILE_NAME));
+    }
+
+    private static String createContent(int size) {
+        StringBuilder content = new StringBuilder(size);
+        String line = "question: Café, naïve, 日本 ";
+        while (content.length() < size) {
+            content.append(line);
+        }
+        content.setLength(size);
+        return content.toString();
+    }
+
+    private static void legacyWrite(Context context, String fileName, String content) throws IOException {
+        FileOutputStream fos = context.openFileOutput(fileName, Context.MODE_PRIVATE);
+        try {
+            fos.write(content.getBytes());
+        } finally {
+            fos.close();
+        }
+    }
+
+    private static String legacyRead(Context context, String fileName) throws IOException {
+        FileInputStream fis = context.openFileInput(fileName);
+        try {
+            int c;
+            StringBuilder outputStrBuilder = new StringBuilder();
+            while ((c = fis.read()) != -1) {
+                outputStrBuilder.append((char) c);
+            }
+            return outputStrBuilder.toString();
+        } finally {
+            fis.close();
+        }
+    }
+}
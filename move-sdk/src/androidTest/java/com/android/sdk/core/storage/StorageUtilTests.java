@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.storage;
+
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.Core;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class StorageUtilTests extends AndroidTestCase {
+
+    private static final String FILE_NAME = "storage_util_tests.json";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Core.init(getContext(), "http://localhost");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        StorageUtil.getInternalStorageFile(getContext(), FILE_NAME).delete();
+        super.tearDown();
+    }
+
+    public void testMappedFileIsReadOnly() {
+        assertTrue(StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, "{\"name\":\"é\"}"));
+
+        MappedByteBuffer mapped = StorageUtil.mapInternalStorageFile(getContext(), FILE_NAME);
+        assertNotNull(mapped);
+        assertTrue(mapped.isReadOnly());
+        assertEquals(StorageUtil.getInternalStorageFile(getContext(), FILE_NAME).length(), mapped.remaining());
+    }
+
+    public void testLargeDocumentIsStreamedIntoModel() throws Exception {
+        StringBuilder json = new StringBuilder("{\"name\":\"Café\",\"tags\":[");
+        int tags = StorageUtil.MAP_THRESHOLD_BYTES / 8;
+        for (int i = 0; i < tags; i++) {
+            json.append(i == 0 ? "" : ",").append("\"tag").append(i).append('"');
+        }
+        json.append("]}");
+        assertTrue(StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, json.toString()));
+
+        Document document = StorageUtil.readJsonFromInternalStorage(getContext(), FILE_NAME, Document.class);
+
+        assertNotNull(document);
+        assertEquals("Café", document.name);
+        assertEquals(tags, document.tags.size());
+
+        Reader reader = StorageUtil.openInternalStorageReader(getContext(), FILE_NAME);
+        assertNotNull(reader);
+        char[] start = new char[9];
+        assertEquals(start.length, reader.read(start));
+        assertEquals("{\"name\":\"", new String(start));
+        reader.close();
+    }
+
+    public void testStringRoundTrip() {
+        String content = "question: Café, naïve, 日本";
+        assertTrue(StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, content));
+
+        assertEquals(content, StorageUtil.readFileFromInternalStorage(getContext(), FILE_NAME));
+        assertNull(StorageUtil.readFileFromInternalStorage(getContext(), "missing_" + FILE_NAME));
+    }
+
+    public void testStreamWriteReplacesFileWithoutLeavingTempFiles() throws Exception {
+        assertTrue(StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, "a much longer previous content"));
+        byte[] content = {'n', 'e', 'w'};
+
+        assertTrue(StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, new ByteArrayInputStream(content)));
+
+        assertTrue(Arrays.equals(content, StorageUtil.readBytesFromInternalStorage(getContext(), FILE_NAME)));
+        assertTrue(listTempFiles().isEmpty());
+    }
+
+    public void testConcurrentWritesPublishOneCompleteContent() throws Exception {
+        final int writers = 4;
+        final int size = 4 * StorageUtil.BUFFER_SIZE;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(writers);
+        for (int i = 0; i < writers; i++) {
+            final byte[] content = new byte[size];
+            Arrays.fill(content, (byte) ('a' + i));
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int round = 0; round < 20; round++) {
+                            StorageUtil.writeToInternalStorage(getContext(), FILE_NAME, content);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        byte[] read = StorageUtil.readBytesFromInternalStorage(getContext(), FILE_NAME);
+        assertNotNull(read);
+        assertEquals(size, read.length);
+        for (byte b : read) {
+            assertEquals(read[0], b);
+        }
+        assertTrue(listTempFiles().isEmpty());
+    }
+
+    public void testMissingFile() {
+        assertNull(StorageUtil.mapInternalStorageFile(getContext(), "missing_" + FILE_NAME));
+        assertNull(StorageUtil.openInternalStorageReader(getContext(), "missing_" + FILE_NAME));
+        assertNull(StorageUtil.readJsonFromInternalStorage(getContext(), "missing_" + FILE_NAME, Document.class));
+    }
+
+    private List<String> listTempFiles() {
+        List<String> temps = new ArrayList<>();
+        String[] names = getContext().getFilesDir().list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(FILE_NAME) && name.endsWith(".tmp")) {
+                    temps.add(name);
+                }
+            }
+        }
+        return temps;
+    }
+
+    static final class Document {
+        String name;
+        List<String> tags;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.utils;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import com.android.sdk.core.utils.DesignByContract.Mode;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static com.android.sdk.core.utils.DesignByContract.ensure;
+import static com.android.sdk.core.utils.DesignByContract.ensureNonNull;
+import static com.android.sdk.core.utils.DesignByContract.require;
+import static com.android.sdk.core.utils.DesignByContract.requireNonEmptyMap;
+import static com.android.sdk.core.utils.DesignByContract.requireNonEmptyString;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Measures the passing path of the contract checks, which runs a dozen times per request.
+ * Allocations are counted with {@link Debug#getThreadAllocCount()}, the passing path must not allocate in any mode.
+ */
+public class DesignByContractBenchmark extends AndroidTestCase {
+
+    private static final String TAG = DesignByContractBenchmark.class.getSimpleName();
+    private static final int ITERATIONS = 100000;
+    private static final int WARM_UP_ITERATIONS = 10000;
+
+    private final Object value = new Object();
+    private final String path = "/questions";
+    private final Map<String, String> params = Collections.singletonMap("key", "value");
+
+    @Override
+    protected void tearDown() throws Exception {
+        DesignByContract.setMode(Mode.FULL);
+        super.tearDown();
+    }
+
+    public void testPassingChecksDoNotAllocate() {
+        for (Mode mode : Mode.values()) {
+            DesignByContract.setMode(mode);
+            runChecks(WARM_UP_ITERATIONS);
+
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            long start = System.nanoTime();
+            runChecks(ITERATIONS);
+            long elapsed = System.nanoTime() - start;
+            int allocations = Debug.getThreadAllocCount();
+            Debug.stopAllocCounting();
+
+            Logger.i(TAG, String.format("%s: %d ns/op, %d allocations", mode, elapsed / ITERATIONS, allocations));
+            assertTrue(mode + " allocated " + allocations + " objects", allocations < 10);
+        }
+    }
+
+    public void testFailuresCarryMessagesOnlyInFullMode() {
+        DesignByContract.setMode(Mode.FULL);
+        try {
+            requireNonNull(null, "param");
+            fail();
+        } catch (DesignByContract.DesignByContractRequireException e) {
+            assertTrue(e.getMessage().contains("param"));
+        }
+
+        DesignByContract.setMode(Mode.FAST);
+        try {
+            ensureNonNull(null, "param");
+            fail();
+        } catch (DesignByContract.DesignByContractEnsureException e) {
+            assertNull(e.getMessage());
+        }
+
+        DesignByContract.setMode(Mode.OFF);
+        requireNonNull(null, "param");
+        ensure(false, "skipped");
+    }
+
+    private void runChecks(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            requireNonNull(value);
+            requireNonNull(value, "value");
+            ensureNonNull(value, "value");
+            requireNonEmptyString(path, "path");
+            requireNonEmptyMap(params, "params");
+            require(i >= 0, "i >= 0");
+            ensure(value != path, "expected %s got %s", value, path);
+        }
+    }
+}
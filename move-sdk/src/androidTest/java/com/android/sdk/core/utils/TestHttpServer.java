@@ -0,0 +1,202 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal http/1.1 server on the loopback interface for tests, answers every connection with the next enqueued
+ * response, or 404 when none is left, and closes it.
+ */
+public final class TestHttpServer {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final BlockingQueue<Response> responses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+
+    public TestHttpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        try {
+                            serve(socket);
+                        } finally {
+                            socket.close();
+                        }
+                    } catch (IOException e) {
+                        // closed by shutdown() or by the client
+                    }
+                }
+            }
+        }, "test-http-server");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    public String getUrl(String path) {
+        return getBaseUrl() + path;
+    }
+
+    public void enqueue(int statusCode, String body) {
+        enqueue(statusCode, Collections.<String, String>emptyMap(), body.getBytes(Charset.forName("UTF-8")));
+    }
+
+    public void enqueue(int statusCode, Map<String, String> headers, byte[] body) {
+        responses.add(new Response(statusCode, headers, body));
+    }
+
+    /**
+     * @return the next request received, null if none arrived within the timeout
+     */
+    public Request takeRequest(long timeoutMs) throws InterruptedException {
+        return requests.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() throws IOException {
+        serverSocket.close();
+    }
+
+    private void serve(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return;
+        }
+        String[] parts = requestLine.split(" ");
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+        byte[] body = new byte[0];
+        String contentLength = headers.get("content-length");
+        if (contentLength != null) {
+            body = new byte[Integer.parseInt(contentLength)];
+            int read = 0;
+            while (read < body.length) {
+                int count = in.read(body, read, body.length - read);
+                if (count == -1) {
+                    break;
+                }
+                read += count;
+            }
+        }
+        requests.add(new Request(parts[0], parts.length > 1 ? parts[1] : "", headers, body));
+
+        Response response = responses.poll();
+        if (response == null) {
+            response = new Response(404, Collections.<String, String>emptyMap(), new byte[0]);
+        }
+        Map<String, String> responseHeaders = new LinkedHashMap<>(response.headers);
+        responseHeaders.put("Content-Length", String.valueOf(response.body.length));
+        responseHeaders.put("Connection", "close");
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(response.statusCode).append(" Test\r\n");
+        for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n");
+        OutputStream out = socket.getOutputStream();
+        out.write(head.toString().getBytes(ASCII));
+        out.write(response.body);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        if (c == -1 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), ASCII);
+    }
+
+    public static final class Request {
+        public final String method;
+        public final String path;
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        Request(String method, String path, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * @param name case insensitive header name
+         */
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    private static final class Response {
+        final int statusCode;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Response(int statusCode, Map<String, String> headers, byte[] body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
@@ -24,7 +24,18 @@
 
 package com.android.sdk.core;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.metrics.RequestMetricsListener;
+import com.android.sdk.core.models.DataTransceiver;
+import com.android.sdk.core.models.DataTransceiverConfig;
+import com.android.sdk.core.models.TypeAdapterRegistry;
+import com.android.sdk.core.operations.ResultCache;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 
 import static com.android.sdk.core.utils.DesignByContract.require;
 import static com.android.sdk.core.utils.DesignByContract.requireAny;
@@ -37,19 +48,79 @@ public final class Core {
 
     private static Context sApplicationContext;
     private static Core sInstance;
+    private static boolean sMemoryCallbacksRegistered;
 
 
     private String baseUrl;
+    private final Gson gson;
+    private final TypeAdapterRegistry typeAdapterRegistry;
+    private final DataTransceiverConfig dataTransceiverConfig;
+    private volatile ResultCache resultCache = ResultCache.createDefault();
+    private volatile RequestMetricsListener requestMetricsListener;
 
     public static void init(final Context applicationContext, final String baseUrl) {
+        init(applicationContext, baseUrl, new DataTransceiverConfig.Builder().build());
+    }
+
+    /**
+     * Initializes Core with a custom network configuration.
+     *
+     * @param dataTransceiverConfig network thread pool size, disk cache and http stack used by the request queue.
+     *                              The request queue is created on the first request, changing the configuration
+     *                              after that has no effect.
+     * @param warmUpTypes           optional model classes whose json adapters are built on a background thread
+     */
+    public static void init(final Context applicationContext, final String baseUrl, final DataTransceiverConfig dataTransceiverConfig, final Class<?>... warmUpTypes) {
         requireNonNull(applicationContext);
         requireAny(baseUrl);
-        sInstance = new Core(applicationContext, baseUrl);
+        requireNonNull(dataTransceiverConfig, "dataTransceiverConfig");
+        requireNonNull(warmUpTypes, "warmUpTypes");
+        sInstance = new Core(applicationContext, baseUrl, dataTransceiverConfig);
+        sInstance.typeAdapterRegistry.warmUp(warmUpTypes);
+        registerMemoryCallbacks(applicationContext);
+        if (dataTransceiverConfig.isOutboxEnabled()) {
+            DataTransceiver.getsInstance().getOutbox();
+        }
+    }
+
+    private static synchronized void registerMemoryCallbacks(final Context context) {
+        if (sMemoryCallbacksRegistered) {
+            return;
+        }
+        sMemoryCallbacksRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                sInstance.resultCache.onTrimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                sInstance.resultCache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /**
+     * Initializes Core and builds the json adapters for the given model classes on a background thread,
+     * so that the first request for these types does not pay the reflection cost.
+     *
+     * @param warmUpTypes model classes that are expected as operation results, eg: {@code Question.class}
+     */
+    public static void init(final Context applicationContext, final String baseUrl, final Class<?>... warmUpTypes) {
+        init(applicationContext, baseUrl, new DataTransceiverConfig.Builder().build(), warmUpTypes);
     }
 
-    private Core(final Context applicationContext, final String baseUrl) {
+    private Core(final Context applicationContext, final String baseUrl, final DataTransceiverConfig dataTransceiverConfig) {
         sApplicationContext = applicationContext;
         this.baseUrl = baseUrl;
+        this.dataTransceiverConfig = dataTransceiverConfig;
+        this.gson = new GsonBuilder().create();
+        this.typeAdapterRegistry = new TypeAdapterRegistry(gson);
     }
 
     public static Core getInstance() {
@@ -64,4 +135,54 @@ public final class Core {
     public String getBaseUrl() {
         return baseUrl;
     }
+
+    public DataTransceiverConfig getDataTransceiverConfig() {
+        return dataTransceiverConfig;
+    }
+
+    /**
+     * @return in memory cache of parsed operation results
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Replaces the default result cache, eg: to change its size.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        requireNonNull(resultCache, "resultCache");
+        this.resultCache.evictAll();
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Registers a listener that receives timings, sizes and outcome of every request, metrics are only collected
+     * while a listener is registered.
+     *
+     * @param requestMetricsListener null to stop collecting metrics
+     */
+    public void setRequestMetricsListener(@Nullable RequestMetricsListener requestMetricsListener) {
+        requireAny(requestMetricsListener);
+        this.requestMetricsListener = requestMetricsListener;
+    }
+
+    @Nullable
+    public RequestMetricsListener getRequestMetricsListener() {
+        return requestMetricsListener;
+    }
+
+    /**
+     * @return the process wide Gson instance used for parsing responses
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * @return registry of the json adapters keyed by result type
+     */
+    public TypeAdapterRegistry getTypeAdapterRegistry() {
+        return typeAdapterRegistry;
+    }
 }
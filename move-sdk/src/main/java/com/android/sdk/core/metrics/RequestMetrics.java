@@ -0,0 +1,514 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.metrics;
+
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.Core;
+import com.android.sdk.core.models.VolleyRequest;
+import com.android.volley.Request;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Timings, sizes and outcome of one request, handed to the {@link RequestMetricsListener}.
+ * <p/>
+ * Stages, each timestamp is {@link System#nanoTime()} and 0 when the stage did not happen:
+ * <ul>
+ * <li>start: the record was created, eg: {@code ServiceOperation#execute}</li>
+ * <li>enqueue: the request was handed to the {@code DataTransceiver}</li>
+ * <li>dispatch: a network dispatcher took the request</li>
+ * <li>connect and first byte: only reported by http stacks that support it, see {@link #of(Request)}</li>
+ * <li>response: the response body was read</li>
+ * <li>parse: body to {@code JSONObject}</li>
+ * <li>bind: json to the result model</li>
+ * <li>delivery: the result was handed to the listener</li>
+ * </ul>
+ * Records are pooled so that collecting metrics does not allocate per request. The mark methods are called by
+ * the SDK, each stage is written by the thread that runs it and handed over through the request queues. Once a record
+ * is published the mark and network stage setters are ignored, a late marker of volley, eg: after an intermediate
+ * cached response, does not reach the record until it is handed out again.
+ */
+public final class RequestMetrics {
+
+    private static final int POOL_SIZE = 16;
+    private static final AtomicReferenceArray<RequestMetrics> POOL = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private String name;
+    private Class<?> resultType;
+    private long startNanos;
+    private long enqueueNanos;
+    private long dispatchNanos;
+    private long connectNanos;
+    private long firstByteNanos;
+    private long responseNanos;
+    private long parseStartNanos;
+    private long parseEndNanos;
+    private long bindStartNanos;
+    private long bindEndNanos;
+    private long deliveryNanos;
+    private long requestBytes;
+    private long requestBodyBytes;
+    private long responseBytes;
+    private long decodedResponseBytes;
+    private int statusCode;
+    private int retries;
+    private boolean cacheHit;
+    private boolean shared;
+    private String errorCode;
+    private volatile boolean published;
+
+    private RequestMetrics() {
+    }
+
+    /**
+     * @return a cleared record from the pool, its start is marked
+     */
+    public static RequestMetrics obtain(String name) {
+        RequestMetrics metrics = null;
+        for (int i = 0; i < POOL_SIZE && metrics == null; i++) {
+            metrics = POOL.getAndSet(i, null);
+        }
+        if (metrics == null) {
+            metrics = new RequestMetrics();
+        }
+        metrics.name = name;
+        metrics.startNanos = System.nanoTime();
+        metrics.published = false;
+        return metrics;
+    }
+
+    /**
+     * Metrics of a volley request created by the SDK, for custom {@code HttpStack} or {@code Network} implementations
+     * that can report connect and first byte times.
+     *
+     * @return the record or null if metrics are not collected for the request
+     */
+    @Nullable
+    public static RequestMetrics of(Request<?> request) {
+        if (request instanceof VolleyRequest) {
+            return ((VolleyRequest<?>) request).getMetrics();
+        }
+        return null;
+    }
+
+    /**
+     * @return true if a {@link RequestMetricsListener} is registered
+     */
+    public static boolean isEnabled() {
+        return Core.getInstance().getRequestMetricsListener() != null;
+    }
+
+    /**
+     * Hands the record to the {@link RequestMetricsListener} and returns it to the pool, the record must not be
+     * used after this call. Owners clear their reference to the record before publishing it, calls after the first
+     * are ignored.
+     */
+    public void publish() {
+        if (published) {
+            return;
+        }
+        published = true;
+        RequestMetricsListener listener = Core.getInstance().getRequestMetricsListener();
+        if (listener != null) {
+            listener.onRequestMetrics(this);
+        }
+        recycle();
+    }
+
+    private void recycle() {
+        clear();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (POOL.compareAndSet(i, null, this)) {
+                return;
+            }
+        }
+    }
+
+    private void clear() {
+        name = null;
+        resultType = null;
+        startNanos = 0;
+        enqueueNanos = 0;
+        dispatchNanos = 0;
+        connectNanos = 0;
+        firstByteNanos = 0;
+        responseNanos = 0;
+        parseStartNanos = 0;
+        parseEndNanos = 0;
+        bindStartNanos = 0;
+        bindEndNanos = 0;
+        deliveryNanos = 0;
+        requestBytes = 0;
+        requestBodyBytes = 0;
+        responseBytes = 0;
+        decodedResponseBytes = 0;
+        statusCode = 0;
+        retries = 0;
+        cacheHit = false;
+        shared = false;
+        errorCode = null;
+    }
+
+    /**
+     * Copies the network stages of the request that actually went to the network, for requests that shared its call.
+     */
+    public void copyNetworkFrom(RequestMetrics metrics) {
+        dispatchNanos = metrics.dispatchNanos;
+        connectNanos = metrics.connectNanos;
+        firstByteNanos = metrics.firstByteNanos;
+        responseNanos = metrics.responseNanos;
+        parseStartNanos = metrics.parseStartNanos;
+        parseEndNanos = metrics.parseEndNanos;
+        requestBytes = metrics.requestBytes;
+        requestBodyBytes = metrics.requestBodyBytes;
+        responseBytes = metrics.responseBytes;
+        decodedResponseBytes = metrics.decodedResponseBytes;
+        statusCode = metrics.statusCode;
+        retries = metrics.retries;
+        cacheHit = metrics.cacheHit;
+        shared = true;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setResultType(Class<?> resultType) {
+        this.resultType = resultType;
+    }
+
+    public void markEnqueue() {
+        if (published) {
+            return;
+        }
+        enqueueNanos = System.nanoTime();
+    }
+
+    public void markDispatch() {
+        if (published) {
+            return;
+        }
+        dispatchNanos = System.nanoTime();
+    }
+
+    public void markConnect() {
+        if (published) {
+            return;
+        }
+        connectNanos = System.nanoTime();
+    }
+
+    public void markFirstByte() {
+        if (published) {
+            return;
+        }
+        firstByteNanos = System.nanoTime();
+    }
+
+    public void markResponse() {
+        if (published) {
+            return;
+        }
+        responseNanos = System.nanoTime();
+    }
+
+    public void markParseStart() {
+        if (published) {
+            return;
+        }
+        parseStartNanos = System.nanoTime();
+    }
+
+    public void markParseEnd() {
+        if (published) {
+            return;
+        }
+        parseEndNanos = System.nanoTime();
+    }
+
+    public void markBindStart() {
+        if (published) {
+            return;
+        }
+        bindStartNanos = System.nanoTime();
+    }
+
+    public void markBindEnd() {
+        if (published) {
+            return;
+        }
+        bindEndNanos = System.nanoTime();
+    }
+
+    public void markDelivery() {
+        if (published) {
+            return;
+        }
+        deliveryNanos = System.nanoTime();
+    }
+
+    public void setRequestBytes(long requestBytes) {
+        if (published) {
+            return;
+        }
+        this.requestBytes = requestBytes;
+    }
+
+    public void setRequestBodyBytes(long requestBodyBytes) {
+        if (published) {
+            return;
+        }
+        this.requestBodyBytes = requestBodyBytes;
+    }
+
+    public void setResponseBytes(long responseBytes) {
+        if (published) {
+            return;
+        }
+        this.responseBytes = responseBytes;
+    }
+
+    public void setDecodedResponseBytes(long decodedResponseBytes) {
+        if (published) {
+            return;
+        }
+        this.decodedResponseBytes = decodedResponseBytes;
+    }
+
+    public void setStatusCode(int statusCode) {
+        if (published) {
+            return;
+        }
+        this.statusCode = statusCode;
+    }
+
+    public void incrementRetries() {
+        if (published) {
+            return;
+        }
+        retries++;
+    }
+
+    public void setCacheHit(boolean cacheHit) {
+        if (published) {
+            return;
+        }
+        this.cacheHit = cacheHit;
+    }
+
+    public void setErrorCode(@Nullable String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @return the endpoint of the operation or the url of the request without its query
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return result type of the operation or null for requests made without an operation
+     */
+    @Nullable
+    public Class<?> getResultType() {
+        return resultType;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getEnqueueNanos() {
+        return enqueueNanos;
+    }
+
+    public long getDispatchNanos() {
+        return dispatchNanos;
+    }
+
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    public long getFirstByteNanos() {
+        return firstByteNanos;
+    }
+
+    public long getResponseNanos() {
+        return responseNanos;
+    }
+
+    public long getParseStartNanos() {
+        return parseStartNanos;
+    }
+
+    public long getParseEndNanos() {
+        return parseEndNanos;
+    }
+
+    public long getBindStartNanos() {
+        return bindStartNanos;
+    }
+
+    public long getBindEndNanos() {
+        return bindEndNanos;
+    }
+
+    public long getDeliveryNanos() {
+        return deliveryNanos;
+    }
+
+    /**
+     * @return time waiting in the request queue, 0 if the request was not sent
+     */
+    public long getQueueTimeMs() {
+        return elapsedMs(enqueueNanos, dispatchNanos);
+    }
+
+    /**
+     * @return time from dispatch until the response body was read, including retries
+     */
+    public long getNetworkTimeMs() {
+        return elapsedMs(dispatchNanos, responseNanos);
+    }
+
+    /**
+     * @return time from dispatch until the first response byte, 0 if not reported by the http stack
+     */
+    public long getTimeToFirstByteMs() {
+        return elapsedMs(dispatchNanos, firstByteNanos);
+    }
+
+    public long getParseTimeMs() {
+        return elapsedMs(parseStartNanos, parseEndNanos);
+    }
+
+    public long getBindTimeMs() {
+        return elapsedMs(bindStartNanos, bindEndNanos);
+    }
+
+    /**
+     * @return time from the end of the last stage until the listener was called
+     */
+    public long getDeliveryTimeMs() {
+        long last = Math.max(Math.max(responseNanos, parseEndNanos), bindEndNanos);
+        return elapsedMs(last != 0 ? last : startNanos, deliveryNanos);
+    }
+
+    public long getTotalTimeMs() {
+        return elapsedMs(startNanos, deliveryNanos != 0 ? deliveryNanos : Math.max(responseNanos, bindEndNanos));
+    }
+
+    /**
+     * @return size of the request body as sent, after compression
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * @return size of the request body before compression
+     */
+    public long getRequestBodyBytes() {
+        return requestBodyBytes;
+    }
+
+    /**
+     * @return size of the response body as received, before decompression
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return size of the response body after decompression
+     */
+    public long getDecodedResponseBytes() {
+        return decodedResponseBytes;
+    }
+
+    /**
+     * @return http status code or 0 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return true if the result came from the disk or the in memory cache
+     */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * @return true if the request shared the network call of an identical request
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * @return code of the failure, see {@code ErrorCodes}, or null if the request succeeded
+     */
+    @Nullable
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isSuccess() {
+        return errorCode == null;
+    }
+
+    private static long elapsedMs(long startNanos, long endNanos) {
+        if (startNanos == 0 || endNanos == 0 || endNanos < startNanos) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder(name != null ? name : "")
+                .append(" queue: ").append(getQueueTimeMs())
+                .append("ms network: ").append(getNetworkTimeMs())
+                .append("ms parse: ").append(getParseTimeMs())
+                .append("ms bind: ").append(getBindTimeMs())
+                .append("ms delivery: ").append(getDeliveryTimeMs())
+                .append("ms total: ").append(getTotalTimeMs())
+                .append("ms bytes: ").append(requestBytes).append('/').append(responseBytes)
+                .append(" cacheHit: ").append(cacheHit)
+                .append(" error: ").append(errorCode);
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.android.sdk.core.utils.DesignByContract.requireAny;
+
+/**
+ * Aggregates {@link RequestMetrics} into latency histograms per endpoint and result type, with error counts by
+ * {@code ErrorCodes} value. Register it on Core and ship {@link #snapshotAndReset()} to your telemetry periodically:
+ * <pre>
+ * RequestMetricsAggregator aggregator = new RequestMetricsAggregator(null);
+ * Core.getInstance().setRequestMetricsListener(aggregator);
+ * ...
+ * for (RequestMetricsAggregator.EndpointSnapshot snapshot : aggregator.snapshotAndReset()) {
+ *     send(snapshot.getName(), snapshot.getHistogram(RequestMetricsAggregator.Stage.TOTAL).getP99Micros());
+ * }
+ * </pre>
+ * Recording only does atomic increments on the histograms of the endpoint, it never takes a lock.
+ */
+public final class RequestMetricsAggregator implements RequestMetricsListener {
+
+    /**
+     * Stages that are measured, a stage that did not happen for a request is not recorded.
+     */
+    public enum Stage {
+        TOTAL,
+        QUEUE,
+        NETWORK,
+        PARSE,
+        BIND,
+        DELIVERY
+    }
+
+    private static final Class<?> NO_RESULT_TYPE = Void.class;
+    private static final int BYTES_REQUEST_SENT = 0;
+    private static final int BYTES_REQUEST_BODY = 1;
+    private static final int BYTES_RESPONSE_RECEIVED = 2;
+    private static final int BYTES_RESPONSE_DECODED = 3;
+
+    private final RequestMetricsListener next;
+    private final ConcurrentMap<String, ConcurrentMap<Class<?>, EndpointStats>> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * @param next listener the records are forwarded to after they are aggregated, may be null
+     */
+    public RequestMetricsAggregator(@Nullable RequestMetricsListener next) {
+        requireAny(next);
+        this.next = next;
+    }
+
+    @Override
+    public void onRequestMetrics(@NonNull RequestMetrics metrics) {
+        statsFor(metrics).record(metrics);
+        if (next != null) {
+            next.onRequestMetrics(metrics);
+        }
+    }
+
+    /**
+     * @return the aggregated values, aggregation continues
+     */
+    public List<EndpointSnapshot> snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * @return the aggregated values, every histogram and counter starts from zero afterwards
+     */
+    public List<EndpointSnapshot> snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    private List<EndpointSnapshot> snapshot(boolean reset) {
+        List<EndpointSnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentMap<Class<?>, EndpointStats>> endpoint : endpoints.entrySet()) {
+            for (Map.Entry<Class<?>, EndpointStats> entry : endpoint.getValue().entrySet()) {
+                Class<?> resultType = entry.getKey() == NO_RESULT_TYPE ? null : entry.getKey();
+                snapshots.add(entry.getValue().snapshot(endpoint.getKey(), resultType, reset));
+            }
+        }
+        return snapshots;
+    }
+
+    private EndpointStats statsFor(RequestMetrics metrics) {
+        String name = metrics.getName() != null ? metrics.getName() : "";
+        ConcurrentMap<Class<?>, EndpointStats> byType = endpoints.get(name);
+        if (byType == null) {
+            ConcurrentMap<Class<?>, EndpointStats> created = new ConcurrentHashMap<>(2);
+            byType = endpoints.putIfAbsent(name, created);
+            if (byType == null) {
+                byType = created;
+            }
+        }
+
+        Class<?> resultType = metrics.getResultType() != null ? metrics.getResultType() : NO_RESULT_TYPE;
+        EndpointStats stats = byType.get(resultType);
+        if (stats == null) {
+            EndpointStats created = new EndpointStats();
+            stats = byType.putIfAbsent(resultType, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private static final class EndpointStats {
+        private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong cacheHits = new AtomicLong();
+        private final AtomicLong[] bytes = {new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong()};
+        private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<>(4);
+
+        EndpointStats() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        void record(RequestMetrics metrics) {
+            requests.incrementAndGet();
+            if (metrics.isCacheHit()) {
+                cacheHits.incrementAndGet();
+            }
+            if (metrics.getErrorCode() != null) {
+                errorCounter(metrics.getErrorCode()).incrementAndGet();
+            }
+            addBytes(BYTES_REQUEST_SENT, metrics.getRequestBytes());
+            addBytes(BYTES_REQUEST_BODY, metrics.getRequestBodyBytes());
+            addBytes(BYTES_RESPONSE_RECEIVED, metrics.getResponseBytes());
+            addBytes(BYTES_RESPONSE_DECODED, metrics.getDecodedResponseBytes());
+
+            long lastStage = Math.max(Math.max(metrics.getResponseNanos(), metrics.getParseEndNanos()), metrics.getBindEndNanos());
+            record(Stage.TOTAL, metrics.getStartNanos(), metrics.getDeliveryNanos() != 0 ? metrics.getDeliveryNanos() : lastStage);
+            record(Stage.QUEUE, metrics.getEnqueueNanos(), metrics.getDispatchNanos());
+            record(Stage.NETWORK, metrics.getDispatchNanos(), metrics.getResponseNanos());
+            record(Stage.PARSE, metrics.getParseStartNanos(), metrics.getParseEndNanos());
+            record(Stage.BIND, metrics.getBindStartNanos(), metrics.getBindEndNanos());
+            record(Stage.DELIVERY, lastStage, metrics.getDeliveryNanos());
+        }
+
+        private void addBytes(int index, long value) {
+            if (value > 0) {
+                bytes[index].addAndGet(value);
+            }
+        }
+
+        private void record(Stage stage, long startNanos, long endNanos) {
+            if (startNanos != 0 && endNanos != 0 && endNanos >= startNanos) {
+                histograms[stage.ordinal()].recordNanos(endNanos - startNanos);
+            }
+        }
+
+        private AtomicLong errorCounter(String code) {
+            AtomicLong counter = errors.get(code);
+            if (counter == null) {
+                AtomicLong created = new AtomicLong();
+                counter = errors.putIfAbsent(code, created);
+                if (counter == null) {
+                    counter = created;
+                }
+            }
+            return counter;
+        }
+
+        EndpointSnapshot snapshot(String name, @Nullable Class<?> resultType, boolean reset) {
+            long requestCount = reset ? requests.getAndSet(0) : requests.get();
+            long cacheHitCount = reset ? cacheHits.getAndSet(0) : cacheHits.get();
+            long[] byteCounts = new long[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                byteCounts[i] = reset ? bytes[i].getAndSet(0) : bytes[i].get();
+            }
+            Map<String, Long> errorCounts = new HashMap<>();
+            for (Map.Entry<String, AtomicLong> entry : errors.entrySet()) {
+                long count = reset ? entry.getValue().getAndSet(0) : entry.getValue().get();
+                if (count > 0) {
+                    errorCounts.put(entry.getKey(), count);
+                }
+            }
+            Map<Stage, LatencyHistogram.Snapshot> stages = new EnumMap<>(Stage.class);
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = histograms[stage.ordinal()];
+                stages.put(stage, reset ? histogram.snapshotAndReset() : histogram.snapshot());
+            }
+            return new EndpointSnapshot(name, resultType, requestCount, cacheHitCount, byteCounts, errorCounts, stages);
+        }
+    }
+
+    /**
+     * Aggregated values of one endpoint and result type.
+     */
+    public static final class EndpointSnapshot {
+        private final String name;
+        private final Class<?> resultType;
+        private final long requestCount;
+        private final long cacheHitCount;
+        private final long[] byteCounts;
+        private final Map<String, Long> errorCounts;
+        private final Map<Stage, LatencyHistogram.Snapshot> histograms;
+
+        EndpointSnapshot(String name, @Nullable Class<?> resultType, long requestCount, long cacheHitCount, long[] byteCounts,
+                         Map<String, Long> errorCounts, Map<Stage, LatencyHistogram.Snapshot> histograms) {
+            this.name = name;
+            this.resultType = resultType;
+            this.requestCount = requestCount;
+            this.cacheHitCount = cacheHitCount;
+            this.byteCounts = byteCounts;
+            this.errorCounts = Collections.unmodifiableMap(errorCounts);
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+
+        /**
+         * @return endpoint of the operation or url of the request without its query
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return result type of the operation, null for requests made without an operation
+         */
+        @Nullable
+        public Class<?> getResultType() {
+            return resultType;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getCacheHitCount() {
+            return cacheHitCount;
+        }
+
+        /**
+         * @return request body bytes sent, after compression
+         */
+        public long getRequestBytesSent() {
+            return byteCounts[BYTES_REQUEST_SENT];
+        }
+
+        /**
+         * @return request body bytes before compression
+         */
+        public long getRequestBodyBytes() {
+            return byteCounts[BYTES_REQUEST_BODY];
+        }
+
+        /**
+         * @return response body bytes received, before decompression
+         */
+        public long getResponseBytesReceived() {
+            return byteCounts[BYTES_RESPONSE_RECEIVED];
+        }
+
+        /**
+         * @return response body bytes after decompression
+         */
+        public long getResponseBytesDecoded() {
+            return byteCounts[BYTES_RESPONSE_DECODED];
+        }
+
+        /**
+         * @return number of failures by {@code ErrorCodes} value
+         */
+        public Map<String, Long> getErrorCounts() {
+            return errorCounts;
+        }
+
+        public long getErrorCount() {
+            long total = 0;
+            for (Long count : errorCounts.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return failed requests over all requests, between 0 and 1
+         */
+        public double getErrorRate() {
+            return requestCount == 0 ? 0 : (double) getErrorCount() / requestCount;
+        }
+
+        /**
+         * @return error rate of one {@code ErrorCodes} value, between 0 and 1
+         */
+        public double getErrorRate(String errorCode) {
+            Long count = errorCounts.get(errorCode);
+            return requestCount == 0 || count == null ? 0 : (double) count / requestCount;
+        }
+
+        public LatencyHistogram.Snapshot getHistogram(Stage stage) {
+            return histograms.get(stage);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder stringBuilder = new StringBuilder(name)
+                    .append(resultType != null ? " " + resultType.getSimpleName() : "")
+                    .append(" requests: ").append(requestCount)
+                    .append(" errors: ").append(errorCounts)
+                    .append(" total: ").append(histograms.get(Stage.TOTAL));
+            return stringBuilder.toString();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import com.android.sdk.core.utils.Logger;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+
+import java.io.IOException;
+
+/**
+ * Delivers the decoded response body as is, for binary payloads and for HEAD requests.
+ * The body is available through {@link DataResponse#getResult()}.
+ */
+public class BytesRequest extends VolleyRequest<byte[]> {
+    private static final String TAG = BytesRequest.class.getSimpleName();
+
+    public BytesRequest(DataTransaction dataTransaction, DataListener dataListener) {
+        super(dataTransaction, dataListener);
+    }
+
+    @Override
+    protected Response<byte[]> parseNetworkResponse(NetworkResponse response) {
+        if (parseNotModified(response)) {
+            return emptyResponse(response);
+        }
+        try {
+            byte[] body = decodeBody(response);
+            return Response.success(body, parseCacheEntry(response));
+        } catch (IOException e) {
+            Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    @Override
+    protected void deliverResponse(byte[] response) {
+        dataTransaction.getDataResponse().setResult(response);
+        dataListener.onSuccess(dataTransaction);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.os.SystemClock;
+
+import com.android.volley.VolleyError;
+
+/**
+ * Circuit breaker of one endpoint, stops sending requests to an endpoint that keeps failing so that its requests
+ * do not hold network dispatchers until they time out.
+ * <ul>
+ * <li>CLOSED: requests pass, outcomes are recorded in a sliding window of the last {@code windowSize} calls.
+ * When the window is full and the failure rate reaches the threshold the breaker opens.</li>
+ * <li>OPEN: requests fail fast until {@code openDurationMs} passed.</li>
+ * <li>HALF_OPEN: a single probe request passes, its outcome closes or re-opens the breaker.</li>
+ * </ul>
+ * Timeouts, connection failures and 408, 429 and 5xx responses count as failures, other errors mean the endpoint
+ * answered and count as successes.
+ * <p>
+ * Every state change starts a new period, {@link #tryAcquire()} hands out the current one as a permit. Outcomes are
+ * only recorded for the period they were acquired in, so that a request sent before the breaker opened can not close
+ * it in place of the probe.
+ */
+final class CircuitBreaker {
+
+    static final long NO_PERMIT = -1;
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean[] window;
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int calls;
+    private int failures;
+    private int next;
+    private long period;
+    private long openedAt;
+    private long probeStartedAt;
+    private boolean probeInFlight;
+
+    CircuitBreaker(int windowSize, int failureRatePercent, long openDurationMs) {
+        this.window = new boolean[windowSize];
+        this.failureThreshold = Math.max(1, (windowSize * failureRatePercent + 99) / 100);
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * @return the endpoint of a url: the url without query and fragment
+     */
+    static String keyFor(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return end == url.length() ? url : url.substring(0, end);
+    }
+
+    static boolean isFailure(VolleyError error) {
+        return DataRetryPolicy.isRetryable(error);
+    }
+
+    /**
+     * @return permit to report the outcome with, or {@link #NO_PERMIT} if the request should fail fast.
+     */
+    synchronized long tryAcquire() {
+        long now = SystemClock.elapsedRealtime();
+        switch (state) {
+            case CLOSED:
+                return period;
+            case OPEN:
+                if (now - openedAt < openDurationMs) {
+                    return NO_PERMIT;
+                }
+                state = State.HALF_OPEN;
+                return startProbe(now);
+            default:
+                // a probe that never reported back, eg: cancelled, must not keep the breaker half open forever
+                if (probeInFlight && now - probeStartedAt < openDurationMs) {
+                    return NO_PERMIT;
+                }
+                return startProbe(now);
+        }
+    }
+
+    /**
+     * @return true if requests pass normally, failed requests are only retried then so that retries are never probes.
+     */
+    synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized void onSuccess(long permit) {
+        if (permit != period) {
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(false);
+        } else if (state == State.HALF_OPEN) {
+            close();
+        }
+    }
+
+    synchronized void onFailure(long permit) {
+        if (permit != period) {
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+            if (calls == window.length && failures >= failureThreshold) {
+                open();
+            }
+        } else if (state == State.HALF_OPEN) {
+            open();
+        }
+    }
+
+    private long startProbe(long now) {
+        probeInFlight = true;
+        probeStartedAt = now;
+        return ++period;
+    }
+
+    private void record(boolean failure) {
+        if (calls == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        period++;
+        openedAt = SystemClock.elapsedRealtime();
+        probeInFlight = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        period++;
+        probeInFlight = false;
+        calls = 0;
+        failures = 0;
+        next = 0;
+    }
+}
@@ -24,11 +24,24 @@
 
 package com.android.sdk.core.models;
 
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.metrics.RequestMetrics;
 import com.android.sdk.core.utils.Logger;
+import com.android.volley.Request;
 
 import org.json.JSONObject;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.android.sdk.core.utils.DesignByContract.requireAny;
 import static com.android.sdk.core.utils.DesignByContract.requireNonEmptyString;
@@ -39,14 +52,56 @@ import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
  */
 public class DataRequest {
     private static final String TAG = DataRequest.class.getSimpleName();
+    /**
+     * Stands for a null key or value in the cache key, {@link URLEncoder} never emits it.
+     */
+    private static final String NULL_KEY_PART = "~";
+    private static final Comparator<Map.Entry<String, String>> BY_KEY = new Comparator<Map.Entry<String, String>>() {
+        @Override
+        public int compare(Map.Entry<String, String> lhs, Map.Entry<String, String> rhs) {
+            if (lhs.getKey() == null || rhs.getKey() == null) {
+                return lhs.getKey() == null ? (rhs.getKey() == null ? 0 : -1) : 1;
+            }
+            return lhs.getKey().compareTo(rhs.getKey());
+        }
+    };
+
+    /**
+     * Scheduling priority of a request, higher priority requests are dispatched first.
+     * {@link #PREFETCH} is dispatched like {@link #LOW} and is meant for speculative work.
+     */
+    public enum Priority {
+        IMMEDIATE(Request.Priority.IMMEDIATE),
+        HIGH(Request.Priority.HIGH),
+        NORMAL(Request.Priority.NORMAL),
+        LOW(Request.Priority.LOW),
+        PREFETCH(Request.Priority.LOW);
+
+        private final Request.Priority volleyPriority;
 
-    VolleyRequest volleyRequest;
-    private boolean cancelled;
+        Priority(Request.Priority volleyPriority) {
+            this.volleyPriority = volleyPriority;
+        }
+
+        Request.Priority getVolleyPriority() {
+            return volleyPriority;
+        }
+    }
+
+    volatile InFlightRequest inFlightRequest;
+    private volatile boolean cancelled;
+    private volatile Priority priority = Priority.NORMAL;
+    private volatile DataRetryPolicy retryPolicy;
+    private volatile RequestMetrics metrics;
+    private boolean publishMetricsOnDelivery;
+    private volatile boolean compressBody;
+    private volatile boolean deferrable;
     private DataRequestMethod dataRequestMethod;
     private String path;
     private Map<String, String> headers;
+    private Set<String> transientHeaders;
     private Map<String, String> params;
-    private JSONObject body;
+    private DataRequestBody body;
 
 
     public static DataRequest createSimpleDataRequest(SimpleDataRequestMethod method, String path, Map<String, String> headers, Map<String, String> params) {
@@ -61,18 +116,35 @@ public class DataRequest {
     }
 
     public static DataRequest createJsonDataRequest(JsonDataRequestMethod method, String path, Map<String, String> headers, Map<String, String> params, JSONObject body) {
+        requireNonNull(body, "jsonBody");
+        return createJsonDataRequest(method, path, headers, params, DataRequestBody.fromJson(body));
+    }
+
+    /**
+     * Creates a request with a body that is encoded once, eg: {@code DataRequestBody.fromObject(question)} serializes
+     * the model without building a {@link JSONObject} first.
+     */
+    public static DataRequest createJsonDataRequest(JsonDataRequestMethod method, String path, Map<String, String> headers, Map<String, String> params, DataRequestBody body) {
         requireNonNull(method, "method");
         requireNonEmptyString(path, "path");
         requireAny(headers);
         requireAny(params);
-        requireNonNull(body, "jsonBody");
+        requireNonNull(body, "body");
 
         DataRequest dataRequest = new DataRequest(method, path, headers, params, body);
 
         return dataRequest;
     }
 
-    private DataRequest(DataRequestMethod method, String path, Map<String, String> headers, Map<String, String> params, JSONObject body) {
+    /**
+     * Rebuilds a request that was serialized, the body must match the method.
+     */
+    static DataRequest restore(DataRequestMethod.Method method, String path, @Nullable Map<String, String> headers,
+                               @Nullable Map<String, String> params, @Nullable DataRequestBody body) {
+        return new DataRequest(DataRequestMethod.of(method), path, headers, params, body);
+    }
+
+    private DataRequest(DataRequestMethod method, String path, Map<String, String> headers, Map<String, String> params, DataRequestBody body) {
         requireNonNull(method, "method");
         requireNonEmptyString(path, "path");
         requireAny(headers);
@@ -91,11 +163,15 @@ public class DataRequest {
     }
 
 
+    /**
+     * Cancels this request, the underlying network call is cancelled once no other identical request is waiting for it.
+     */
     public void cancel() {
         cancelled = true;
-        if (volleyRequest != null) {
-            Logger.d(TAG, "cancelling n/w request");
-            volleyRequest.cancel();
+        InFlightRequest request = inFlightRequest;
+        if (request != null) {
+            Logger.d(TAG, "detaching from n/w request");
+            request.detach(this);
         }
     }
 
@@ -103,10 +179,120 @@ public class DataRequest {
         return cancelled;
     }
 
+    /**
+     * Sets the priority of the request, must be called before the request is queued.
+     * Identical GET requests sharing one network call are dispatched with the priority of the first request.
+     *
+     * @param priority {@link Priority#NORMAL} by default
+     */
+    public void setPriority(Priority priority) {
+        requireNonNull(priority, "priority");
+        this.priority = priority;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets how the request is retried, must be called before the request is queued.
+     *
+     * @param retryPolicy null (default) to use the policy of the {@link DataTransceiverConfig}
+     */
+    public void setRetryPolicy(@Nullable DataRetryPolicy retryPolicy) {
+        requireAny(retryPolicy);
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Nullable
+    public DataRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Opts the request in to gzip compression of its body, the body is only compressed when it is at least
+     * {@link DataTransceiverConfig#getRequestCompressionThresholdBytes()} long. Only enable it for servers that accept
+     * {@code Content-Encoding: gzip} request bodies.
+     *
+     * @param compressBody false by default
+     */
+    public void setCompressBody(boolean compressBody) {
+        this.compressBody = compressBody;
+    }
+
+    public boolean isCompressBody() {
+        return compressBody;
+    }
+
+    /**
+     * Marks the request as background traffic that may wait, with connectivity aware scheduling enabled it is held
+     * until Wi-Fi is available or the radio is up for another request and then sent along with the other held
+     * requests, at the latest after {@link DataTransceiverConfig#getMaxDeferralMs()}.
+     * Ignored when {@link DataTransceiverConfig.Builder#setConnectivityAwareScheduling(boolean, long)} is not enabled.
+     *
+     * @param deferrable false by default, must be set before the request is queued
+     */
+    public void setDeferrable(boolean deferrable) {
+        this.deferrable = deferrable;
+    }
+
+    public boolean isDeferrable() {
+        return deferrable;
+    }
+
+    /**
+     * Attaches a metrics record that the request stages are recorded in, the caller publishes it.
+     * When no record is attached and metrics are enabled the {@link DataTransceiver} attaches one and publishes it
+     * once the listener was called.
+     */
+    public void setMetrics(@Nullable RequestMetrics metrics) {
+        requireAny(metrics);
+        this.metrics = metrics;
+        this.publishMetricsOnDelivery = false;
+    }
+
+    @Nullable
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    void setMetricsPublishedOnDelivery(RequestMetrics metrics) {
+        this.metrics = metrics;
+        this.publishMetricsOnDelivery = true;
+    }
+
+    boolean isMetricsPublishedOnDelivery() {
+        return publishMetricsOnDelivery;
+    }
+
     public Map<String, String> getHeaders() {
         return headers;
     }
 
+    /**
+     * Adds or replaces a request header.
+     */
+    public void setHeader(String name, String value) {
+        requireNonEmptyString(name, "name");
+        requireNonNull(value, "value");
+        if (headers == null) {
+            headers = new HashMap<>();
+        }
+        headers.put(name, value);
+    }
+
+    /**
+     * Adds or replaces a header that does not change the response, eg: a trace id. It is sent like any other header
+     * but left out of {@link #getCacheKey()}, so requests that only differ in it still share a call and a cache entry.
+     */
+    public void setTransientHeader(String name, String value) {
+        setHeader(name, value);
+        if (transientHeaders == null) {
+            transientHeaders = new HashSet<>();
+        }
+        transientHeaders.add(name);
+    }
+
     public Map<String, String> getParams() {
         return params;
     }
@@ -119,10 +305,20 @@ public class DataRequest {
         return path;
     }
 
+    /**
+     * @return the body or null if the request has none
+     */
+    @Nullable
+    public DataRequestBody getRequestBody() {
+        return body;
+    }
+
+    /**
+     * @return the encoded body, the bytes are shared between attempts and must not be modified
+     */
     public byte[] getBody() {
         if (body != null) {
-            String value = body.toString();
-            return value.getBytes();
+            return body.getBytes();
         } else {
             Logger.w(TAG, "getBody: body is null");
 
@@ -130,6 +326,57 @@ public class DataRequest {
         return null;
     }
 
+    /**
+     * Identity of the request: method, path, sorted params and sorted headers, without the headers set with
+     * {@link #setTransientHeader(String, String)}. Names and values are url encoded, so that separators in them can not
+     * make two different requests look alike.
+     * Only GET requests have an identity, since other methods are not safe to share or cache.
+     *
+     * @return key or null if the request is not a GET request
+     */
+    @Nullable
+    public String getCacheKey() {
+        if (getMethod() != Request.Method.GET) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder().append(getMethod()).append(' ').append(path);
+        appendSorted(key, '?', params, null);
+        appendSorted(key, '#', headers, transientHeaders);
+        return key.toString();
+    }
+
+    private static void appendSorted(StringBuilder key, char separator, @Nullable Map<String, String> values,
+                                     @Nullable Set<String> excluded) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, String>> entries = new ArrayList<>(values.entrySet());
+        Collections.sort(entries, BY_KEY);
+        boolean first = true;
+        for (Map.Entry<String, String> entry : entries) {
+            if (excluded != null && excluded.contains(entry.getKey())) {
+                continue;
+            }
+            if (first) {
+                key.append(separator);
+                first = false;
+            }
+            key.append(encode(entry.getKey())).append('=').append(encode(entry.getValue())).append('&');
+        }
+    }
+
+    private static String encode(@Nullable String part) {
+        if (part == null) {
+            return NULL_KEY_PART;
+        }
+        try {
+            return URLEncoder.encode(part, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public boolean hasBody() {
         return dataRequestMethod.hasBody();
     }
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.NonNull;
+
+import com.android.sdk.core.Core;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+import static com.android.sdk.core.utils.DesignByContract.ensureNonNull;
+import static com.android.sdk.core.utils.DesignByContract.requireNonEmptyString;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Body of a {@link DataRequest}.
+ * <p/>
+ * The body is encoded to bytes once, on the network thread, the bytes and their gzip encoding are kept for retries.
+ * Json is always encoded as UTF-8.
+ */
+public abstract class DataRequestBody {
+
+    public static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String contentType;
+    private byte[] bytes;
+    private byte[] gzipBytes;
+
+    protected DataRequestBody(String contentType) {
+        requireNonEmptyString(contentType, "contentType");
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return body serialized by the json adapter registered for the class of {@code value} in the
+     * {@link com.android.sdk.core.models.TypeAdapterRegistry}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DataRequestBody fromObject(@NonNull T value) {
+        requireNonNull(value, "value");
+        return fromObject(value, Core.getInstance().getTypeAdapterRegistry().getAdapter((Class<T>) value.getClass()));
+    }
+
+    /**
+     * @return body serialized by the given adapter, no intermediate json tree or string is built
+     */
+    public static <T> DataRequestBody fromObject(@NonNull final T value, @NonNull final TypeAdapter<T> adapter) {
+        requireNonNull(value, "value");
+        requireNonNull(adapter, "adapter");
+        return new DataRequestBody(CONTENT_TYPE_JSON) {
+            @Override
+            protected byte[] encode() throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, UTF_8));
+                try {
+                    adapter.write(writer, value);
+                } finally {
+                    writer.close();
+                }
+                return out.toByteArray();
+            }
+        };
+    }
+
+    public static DataRequestBody fromJson(@NonNull final JSONObject json) {
+        requireNonNull(json, "json");
+        return new DataRequestBody(CONTENT_TYPE_JSON) {
+            @Override
+            protected byte[] encode() {
+                return json.toString().getBytes(UTF_8);
+            }
+        };
+    }
+
+    /**
+     * @param bytes       encoded body, not copied and must not be modified afterwards
+     * @param contentType value of the Content-Type header
+     */
+    public static DataRequestBody fromBytes(@NonNull final byte[] bytes, @NonNull String contentType) {
+        requireNonNull(bytes, "bytes");
+        return new DataRequestBody(contentType) {
+            @Override
+            protected byte[] encode() {
+                return bytes;
+            }
+        };
+    }
+
+    /**
+     * Called at most once per body.
+     *
+     * @return the encoded body
+     */
+    protected abstract byte[] encode() throws IOException;
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the encoded body, encoded on the first call
+     * @throws JsonIOException if the body could not be serialized
+     */
+    public synchronized byte[] getBytes() {
+        if (bytes == null) {
+            try {
+                bytes = encode();
+            } catch (IOException e) {
+                throw new JsonIOException(e);
+            }
+            ensureNonNull(bytes, "bytes");
+        }
+        return bytes;
+    }
+
+    /**
+     * @return gzip encoding of {@link #getBytes()}, compressed on the first call
+     */
+    synchronized byte[] getGzipBytes() throws IOException {
+        if (gzipBytes == null) {
+            gzipBytes = GzipCodec.encode(getBytes());
+        }
+        return gzipBytes;
+    }
+}
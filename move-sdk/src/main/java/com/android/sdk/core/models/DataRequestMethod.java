@@ -24,6 +24,8 @@
 
 package com.android.sdk.core.models;
 
+import android.support.annotation.Nullable;
+
 import com.android.volley.Request;
 
 import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
@@ -34,18 +36,37 @@ import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
 public abstract class DataRequestMethod {
 
     static enum Method {
-        GET(Request.Method.GET),
-        POST(Request.Method.POST);
+        GET(Request.Method.GET, false),
+        HEAD(Request.Method.HEAD, false),
+        DELETE(Request.Method.DELETE, false),
+        POST(Request.Method.POST, true),
+        PUT(Request.Method.PUT, true),
+        PATCH(Request.Method.PATCH, true);
 
         int value;
+        boolean hasBody;
 
-        Method(int method) {
+        Method(int method, boolean hasBody) {
             this.value = method;
+            this.hasBody = hasBody;
         }
 
         public int getValue() {
             return value;
         }
+
+        /**
+         * @return the method with the given volley value or null if it is unknown
+         */
+        @Nullable
+        static Method of(int value) {
+            for (Method method : values()) {
+                if (method.value == value) {
+                    return method;
+                }
+            }
+            return null;
+        }
     }
 
     private Method method;
@@ -55,6 +76,14 @@ public abstract class DataRequestMethod {
         this.method = method;
     }
 
+    /**
+     * @return a method for requests that are rebuilt from their serialized form, eg: by the {@link Outbox}
+     */
+    static DataRequestMethod of(Method method) {
+        return new DataRequestMethod(method) {
+        };
+    }
+
     public int getMethod() {
         return method.getValue();
     }
@@ -65,7 +94,7 @@ public abstract class DataRequestMethod {
      * @return true|false
      */
     public boolean hasBody() {
-        return false;
+        return method.hasBody;
     }
 
 }
@@ -25,9 +25,16 @@
 package com.android.sdk.core.models;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.android.volley.Cache;
+import com.android.volley.VolleyError;
 
 import org.json.JSONObject;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static com.android.sdk.core.utils.DesignByContract.*;
 
 /**
@@ -36,22 +43,119 @@ import static com.android.sdk.core.utils.DesignByContract.*;
 public class DataResponse {
 
     private JSONObject json;
+    private Object result;
     private FailureMessage failureMessage;
+    private Cache.Entry cacheEntry;
+    private Map<String, String> headers;
+    private int contentLength;
+    private boolean notModified;
+    private VolleyError error;
 
     void setJson(JSONObject json) {
         ensureNonNull(json);
         this.json = json;
     }
 
+    void setResult(Object result) {
+        ensureAny(result);
+        this.result = result;
+    }
+
     void setFailureMessage(FailureMessage message) {
         ensureNonNull(message);
         this.failureMessage = message;
     }
 
+    void setCacheEntry(Cache.Entry cacheEntry) {
+        ensureAny(cacheEntry);
+        this.cacheEntry = cacheEntry;
+    }
+
+    void setHeaders(Map<String, String> headers) {
+        ensureAny(headers);
+        this.headers = headers;
+    }
+
+    void setContentLength(int contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    void setNotModified(boolean notModified) {
+        this.notModified = notModified;
+    }
+
+    void setError(VolleyError error) {
+        ensureNonNull(error);
+        this.error = error;
+    }
+
+    /**
+     * @return the volley error of a failed request, used to decide whether it is retried
+     */
+    VolleyError getError() {
+        return error;
+    }
+
+    void copyFrom(DataResponse response) {
+        this.json = response.json;
+        this.result = response.result;
+        this.failureMessage = response.failureMessage;
+        this.cacheEntry = response.cacheEntry;
+        this.headers = response.headers;
+        this.contentLength = response.contentLength;
+        this.notModified = response.notModified;
+        this.error = response.error;
+    }
+
     public JSONObject getJson() {
         return this.json;
     }
 
+    /**
+     * Model object bound directly from the response body, available for requests queued through
+     * {@code DataTransceiver#queueGsonRequest}.
+     *
+     * @return result or null if the response was not bound to a model
+     */
+    @Nullable
+    public Object getResult() {
+        return this.result;
+    }
+
+    /**
+     * Cache directives of the response as parsed by {@code HttpHeaderParser#parseCacheHeaders}.
+     *
+     * @return entry or null if the response must not be cached (no-cache, no-store)
+     */
+    @Nullable
+    public Cache.Entry getCacheEntry() {
+        return this.cacheEntry;
+    }
+
+    /**
+     * Headers of the response as received, also for responses that must not be cached.
+     *
+     * @return headers, empty if no response was received
+     */
+    @NonNull
+    public Map<String, String> getHeaders() {
+        return headers != null ? headers : Collections.<String, String>emptyMap();
+    }
+
+    /**
+     * @return size of the response body in bytes
+     */
+    public int getContentLength() {
+        return this.contentLength;
+    }
+
+    /**
+     * @return true if the server answered 304 Not Modified to a conditional request
+     */
+    public boolean isNotModified() {
+        return this.notModified;
+    }
+
     @NonNull
     public FailureMessage getFailureMessage() {
         return this.failureMessage;
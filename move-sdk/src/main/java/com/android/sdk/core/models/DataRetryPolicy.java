@@ -0,0 +1,245 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import java.util.Random;
+
+import static com.android.sdk.core.utils.DesignByContract.require;
+
+/**
+ * How a failed request is retried: exponential backoff with full jitter, bounded by a number of retries and an
+ * optional total deadline. Only timeouts, connection failures, 408, 429 and 5xx responses are retried, and only for
+ * idempotent methods unless {@link Builder#setRetryNonIdempotent(boolean)} is set.
+ * <p/>
+ * <pre>
+ * DataRetryPolicy policy = new DataRetryPolicy.Builder()
+ *         .setMaxRetries(3)
+ *         .setInitialBackoffMs(500)
+ *         .setDeadlineMs(10000)
+ *         .build();
+ * </pre>
+ * Set it per request with {@link DataRequest#setRetryPolicy(DataRetryPolicy)} or for every request with
+ * {@link DataTransceiverConfig.Builder#setRetryPolicy(DataRetryPolicy)}.
+ */
+public final class DataRetryPolicy {
+
+    public static final int DEFAULT_TIMEOUT_MS = DefaultRetryPolicy.DEFAULT_TIMEOUT_MS;
+    public static final int DEFAULT_MAX_RETRIES = DefaultRetryPolicy.DEFAULT_MAX_RETRIES;
+    public static final int DEFAULT_INITIAL_BACKOFF_MS = 250;
+    public static final int DEFAULT_MAX_BACKOFF_MS = 10 * 1000;
+    public static final float DEFAULT_BACKOFF_MULTIPLIER = 2f;
+
+    /**
+     * Volley's timeout with one retry, the behaviour before retry policies were configurable.
+     */
+    public static final DataRetryPolicy DEFAULT = new Builder().build();
+
+    /**
+     * Never retries.
+     */
+    public static final DataRetryPolicy NONE = new Builder().setMaxRetries(0).build();
+
+    private final int timeoutMs;
+    private final int maxRetries;
+    private final int initialBackoffMs;
+    private final int maxBackoffMs;
+    private final float backoffMultiplier;
+    private final long deadlineMs;
+    private final boolean retryNonIdempotent;
+
+    private DataRetryPolicy(Builder builder) {
+        this.timeoutMs = builder.timeoutMs;
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoffMs = builder.initialBackoffMs;
+        this.maxBackoffMs = builder.maxBackoffMs;
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.deadlineMs = builder.deadlineMs;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    /**
+     * @param elapsedMs time since the first attempt started
+     * @return socket timeout of the next attempt, shortened so that it does not run past the deadline
+     */
+    int getAttemptTimeoutMs(long elapsedMs) {
+        if (deadlineMs <= 0) {
+            return timeoutMs;
+        }
+        return (int) Math.max(1, Math.min(timeoutMs, deadlineMs - elapsedMs));
+    }
+
+    /**
+     * Full jitter: a random delay between 0 and the exponential backoff, so that clients failing together do not
+     * retry together.
+     *
+     * @param retry number of the retry, starting at 0
+     */
+    long getBackoffMs(int retry, Random random) {
+        double backoff = initialBackoffMs * Math.pow(backoffMultiplier, retry);
+        long cap = (long) Math.min(maxBackoffMs, backoff);
+        return cap > 0 ? (long) (random.nextDouble() * cap) : 0;
+    }
+
+    /**
+     * @param retry     number of retries already made
+     * @param elapsedMs time since the first attempt started
+     * @param backoffMs delay before the next attempt
+     * @return true if the request should be sent again
+     */
+    boolean shouldRetry(int method, VolleyError error, int retry, long elapsedMs, long backoffMs) {
+        if (retry >= maxRetries) {
+            return false;
+        }
+        if (!retryNonIdempotent && !isIdempotent(method)) {
+            return false;
+        }
+        if (deadlineMs > 0 && elapsedMs + backoffMs >= deadlineMs) {
+            return false;
+        }
+        return isRetryable(error);
+    }
+
+    static boolean isIdempotent(int method) {
+        switch (method) {
+            case Request.Method.GET:
+            case Request.Method.HEAD:
+            case Request.Method.PUT:
+            case Request.Method.DELETE:
+            case Request.Method.OPTIONS:
+            case Request.Method.TRACE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean isRetryable(VolleyError error) {
+        if (error instanceof TimeoutError || error instanceof NetworkError) {
+            return true;
+        }
+        NetworkResponse response = error.networkResponse;
+        if (!(error instanceof ServerError) || response == null) {
+            return false;
+        }
+        return response.statusCode == 408 || response.statusCode == 429 || response.statusCode >= 500;
+    }
+
+    public static final class Builder {
+        private int timeoutMs = DEFAULT_TIMEOUT_MS;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private int initialBackoffMs = DEFAULT_INITIAL_BACKOFF_MS;
+        private int maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+        private float backoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+        private long deadlineMs;
+        private boolean retryNonIdempotent;
+
+        /**
+         * @param timeoutMs socket timeout of each attempt, default {@link #DEFAULT_TIMEOUT_MS}
+         */
+        public Builder setTimeoutMs(int timeoutMs) {
+            require(timeoutMs > 0, "timeoutMs > 0");
+            this.timeoutMs = timeoutMs;
+            return this;
+        }
+
+        /**
+         * @param maxRetries number of retries after the first attempt, default {@link #DEFAULT_MAX_RETRIES}
+         */
+        public Builder setMaxRetries(int maxRetries) {
+            require(maxRetries >= 0, "maxRetries >= 0");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param initialBackoffMs upper bound of the delay before the first retry, default {@link #DEFAULT_INITIAL_BACKOFF_MS}
+         */
+        public Builder setInitialBackoffMs(int initialBackoffMs) {
+            require(initialBackoffMs >= 0, "initialBackoffMs >= 0");
+            this.initialBackoffMs = initialBackoffMs;
+            return this;
+        }
+
+        /**
+         * @param maxBackoffMs upper bound of the delay before any retry, default {@link #DEFAULT_MAX_BACKOFF_MS}
+         */
+        public Builder setMaxBackoffMs(int maxBackoffMs) {
+            require(maxBackoffMs >= 0, "maxBackoffMs >= 0");
+            this.maxBackoffMs = maxBackoffMs;
+            return this;
+        }
+
+        /**
+         * @param backoffMultiplier growth of the delay per retry, default {@link #DEFAULT_BACKOFF_MULTIPLIER}
+         */
+        public Builder setBackoffMultiplier(float backoffMultiplier) {
+            require(backoffMultiplier >= 1f, "backoffMultiplier >= 1");
+            this.backoffMultiplier = backoffMultiplier;
+            return this;
+        }
+
+        /**
+         * @param deadlineMs total time budget of the request including retries, 0 (default) for no deadline
+         */
+        public Builder setDeadlineMs(long deadlineMs) {
+            require(deadlineMs >= 0, "deadlineMs >= 0");
+            this.deadlineMs = deadlineMs;
+            return this;
+        }
+
+        /**
+         * @param retryNonIdempotent when true POST requests are retried too, false by default
+         */
+        public Builder setRetryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        public DataRetryPolicy build() {
+            return new DataRetryPolicy(this);
+        }
+    }
+}
@@ -24,13 +24,32 @@
 
 package com.android.sdk.core.models;
 
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.metrics.RequestMetrics;
+import com.android.sdk.core.storage.StorageUtil;
+import com.android.sdk.core.utils.ConnectivityMonitor;
+import com.android.sdk.core.utils.Dispatchers;
 import com.android.sdk.core.utils.Logger;
 
 import com.android.sdk.core.Core;
+import com.android.volley.Cache;
+import com.android.volley.Network;
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HttpStack;
+import com.android.volley.toolbox.HurlStack;
+import com.google.gson.TypeAdapter;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import static com.android.sdk.core.utils.DesignByContract.ensureNonNull;
+import static com.android.sdk.core.utils.DesignByContract.require;
+import static com.android.sdk.core.utils.DesignByContract.requireAny;
 import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
 
 /**
@@ -41,16 +60,183 @@ import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
 public final class DataTransceiver {
     private static final String TAG = DataTransceiver.class.getSimpleName();
     private static final DataTransceiver sInstance = new DataTransceiver();
-    private static final RequestQueue queue = Volley.newRequestQueue(Core.getInstance().getApplicationContext());
+
+    private final ConcurrentMap<String, InFlightRequest> inFlightRequests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final DownloadTargets downloadTargets = new DownloadTargets();
+    private final RequestQueue.RequestFinishedListener<Object> downloadFinishedListener = new RequestQueue.RequestFinishedListener<Object>() {
+        @Override
+        public void onRequestFinished(Request<Object> request) {
+            Request<?> finished = request;
+            if (finished instanceof FileRequest) {
+                FileRequest next = downloadTargets.release((FileRequest) finished);
+                if (next != null) {
+                    getQueue().add(next);
+                }
+            }
+        }
+    };
+    private volatile RequestQueue queue;
+    private volatile DataTransceiverConfig config;
+    private volatile PriorityLimiter priorityLimiter;
+    private volatile RetryThrottle retryThrottle;
+    private volatile Outbox outbox;
+    private volatile DeferredRequests deferredRequests;
+    private volatile boolean deferredRequestsResolved;
 
     private DataTransceiver() {
 
     }
 
+    /**
+     * Creates a transceiver backed by the given queue, used by tests and benchmarks.
+     */
+    DataTransceiver(RequestQueue queue, DataTransceiverConfig config) {
+        requireNonNull(queue, "queue");
+        requireNonNull(config, "config");
+        this.queue = queue;
+        this.config = config;
+        queue.addRequestFinishedListener(downloadFinishedListener);
+        this.priorityLimiter = new PriorityLimiter(config.getPriorityLimits());
+        this.retryThrottle = new RetryThrottle(config.getRetryThrottleTokens(), config.getRetryThrottleRatio());
+    }
+
     public static DataTransceiver getsInstance() {
         return sInstance;
     }
 
+    /**
+     * The request queue is created and started on first use, with the {@link DataTransceiverConfig} passed to {@code Core#init}.
+     */
+    private RequestQueue getQueue() {
+        RequestQueue requestQueue = queue;
+        if (requestQueue == null) {
+            synchronized (this) {
+                requestQueue = queue;
+                if (requestQueue == null) {
+                    requestQueue = newRequestQueue(Core.getInstance().getApplicationContext(), getConfig());
+                    requestQueue.addRequestFinishedListener(downloadFinishedListener);
+                    requestQueue.start();
+                    queue = requestQueue;
+                }
+            }
+        }
+        return requestQueue;
+    }
+
+    DataTransceiverConfig getConfig() {
+        DataTransceiverConfig transceiverConfig = config;
+        if (transceiverConfig == null) {
+            transceiverConfig = Core.getInstance().getDataTransceiverConfig();
+            config = transceiverConfig;
+        }
+        return transceiverConfig;
+    }
+
+    private PriorityLimiter getPriorityLimiter() {
+        PriorityLimiter limiter = priorityLimiter;
+        if (limiter == null) {
+            synchronized (this) {
+                limiter = priorityLimiter;
+                if (limiter == null) {
+                    limiter = new PriorityLimiter(getConfig().getPriorityLimits());
+                    priorityLimiter = limiter;
+                }
+            }
+        }
+        return limiter;
+    }
+
+    RetryThrottle getRetryThrottle() {
+        RetryThrottle throttle = retryThrottle;
+        if (throttle == null) {
+            synchronized (this) {
+                throttle = retryThrottle;
+                if (throttle == null) {
+                    DataTransceiverConfig transceiverConfig = getConfig();
+                    throttle = new RetryThrottle(transceiverConfig.getRetryThrottleTokens(), transceiverConfig.getRetryThrottleRatio());
+                    retryThrottle = throttle;
+                }
+            }
+        }
+        return throttle;
+    }
+
+    /**
+     * The outbox is created on first use and replays the requests left in its journal.
+     *
+     * @return the durable outbox, {@link DataTransceiverConfig.Builder#setOutbox(boolean, int)} must enable it
+     */
+    public Outbox getOutbox() {
+        Outbox requestOutbox = outbox;
+        if (requestOutbox == null) {
+            synchronized (this) {
+                requestOutbox = outbox;
+                if (requestOutbox == null) {
+                    DataTransceiverConfig transceiverConfig = getConfig();
+                    require(transceiverConfig.isOutboxEnabled(), "outbox is not enabled");
+                    Context context = Core.getInstance().getApplicationContext();
+                    requestOutbox = new Outbox(context, this, StorageUtil.getInternalStorageFile(context, Outbox.JOURNAL_FILE_NAME),
+                            transceiverConfig.getOutboxMaxConcurrentRequests(), transceiverConfig.getOutboxHeaderPolicy());
+                    outbox = requestOutbox;
+                }
+            }
+        }
+        return requestOutbox;
+    }
+
+    /**
+     * @return the scheduler of deferrable requests or null if connectivity aware scheduling is not enabled
+     */
+    @Nullable
+    private DeferredRequests getDeferredRequests() {
+        if (!deferredRequestsResolved) {
+            synchronized (this) {
+                if (!deferredRequestsResolved) {
+                    DataTransceiverConfig transceiverConfig = getConfig();
+                    if (transceiverConfig.isConnectivityAwareSchedulingEnabled()) {
+                        ConnectivityMonitor monitor = ConnectivityMonitor.getInstance(Core.getInstance().getApplicationContext());
+                        deferredRequests = new DeferredRequests(this, monitor, transceiverConfig.getMaxDeferralMs(),
+                                transceiverConfig.isDeferWhilePowerSaving());
+                    }
+                    deferredRequestsResolved = true;
+                }
+            }
+        }
+        return deferredRequests;
+    }
+
+    /**
+     * @return false only if connectivity aware scheduling is enabled and the device is offline
+     */
+    boolean isOnline() {
+        DeferredRequests scheduler = getDeferredRequests();
+        return scheduler == null || scheduler.isConnected();
+    }
+
+    DataRetryPolicy getRetryPolicy() {
+        return getConfig().getRetryPolicy();
+    }
+
+    private static RequestQueue newRequestQueue(Context context, DataTransceiverConfig config) {
+        requireNonNull(context, "context");
+        requireNonNull(config, "config");
+
+        Network network = config.getNetwork();
+        if (network == null) {
+            HttpStack stack = config.getHttpStack();
+            if (stack == null) {
+                network = new StreamingNetwork(new BasicNetwork(new HurlStack()));
+            } else {
+                network = new BasicNetwork(stack);
+            }
+        }
+
+        Cache cache = new DiskBasedCache(config.getCacheDirectory(context), config.getCacheSizeBytes());
+        Logger.df(TAG, "newRequestQueue: threads: %d cacheSize: %d", config.getThreadPoolSize(), config.getCacheSizeBytes());
+        return new RequestQueue(cache, network, config.getThreadPoolSize());
+    }
+
 
     /**
      * Queues any service request that returns a Json response.
@@ -58,35 +244,312 @@ public final class DataTransceiver {
      * @param dataRequest
      * @param dataListener
      */
-    public void queueJsonRequest(DataRequest dataRequest, final DataListener dataListener) {
+    public void queueJsonRequest(DataRequest dataRequest, DataListener dataListener) {
         requireNonNull(dataRequest);
         requireNonNull(dataListener);
 
         if (!dataRequest.isCancelled()) {
-            DataTransaction transaction = new DataTransaction(dataRequest);
+            enqueue(dataRequest, dataListener, VolleyRequestFactory.JSON);
+        } else {
+            Logger.df(TAG, "queueJsonRequest: Will not queue DataRequest: %s, request already cancelled", dataRequest);
+        }
+    }
+
+    /**
+     * Queues a service request whose Json response is bound directly to a model object on the network thread.
+     * The bound object is available through {@link DataResponse#getResult()}.
+     *
+     * @param dataRequest
+     * @param typeAdapter  adapter for the expected model, null if the response body should be ignored.
+     * @param dataListener
+     */
+    public <T> void queueGsonRequest(DataRequest dataRequest, @Nullable TypeAdapter<T> typeAdapter, DataListener dataListener) {
+        requireNonNull(dataRequest);
+        requireAny(typeAdapter);
+        requireNonNull(dataListener);
 
-            VolleyRequest request = new JsonRequest(transaction, new DataListener() {
-                @Override
-                public void onSuccess(DataTransaction dataTransaction) {
-                    Logger.d(TAG, "onSuccess");
-                    dataListener.onSuccess(dataTransaction);
+        if (!dataRequest.isCancelled()) {
+            enqueue(dataRequest, dataListener, VolleyRequestFactory.gson(typeAdapter));
+        } else {
+            Logger.df(TAG, "queueGsonRequest: Will not queue DataRequest: %s, request already cancelled", dataRequest);
+        }
+    }
+
+    /**
+     * Queues a service request whose response body is delivered as a byte array through {@link DataResponse#getResult()}.
+     * Use it for binary payloads and HEAD requests.
+     */
+    public void queueBytesRequest(DataRequest dataRequest, DataListener dataListener) {
+        requireNonNull(dataRequest);
+        requireNonNull(dataListener);
+
+        if (!dataRequest.isCancelled()) {
+            enqueue(dataRequest, dataListener, VolleyRequestFactory.BYTES);
+        } else {
+            Logger.df(TAG, "queueBytesRequest: Will not queue DataRequest: %s, request already cancelled", dataRequest);
+        }
+    }
+
+    /**
+     * Queues a service request whose response body is delivered as a String through {@link DataResponse#getResult()}.
+     */
+    public void queueStringRequest(DataRequest dataRequest, DataListener dataListener) {
+        requireNonNull(dataRequest);
+        requireNonNull(dataListener);
+
+        if (!dataRequest.isCancelled()) {
+            enqueue(dataRequest, dataListener, VolleyRequestFactory.STRING);
+        } else {
+            Logger.df(TAG, "queueStringRequest: Will not queue DataRequest: %s, request already cancelled", dataRequest);
+        }
+    }
+
+    /**
+     * Queues a download, the response body is written to the target file which is delivered through
+     * {@link DataResponse#getResult()}. The body is streamed to disk unless a custom network or http stack is
+     * configured, see {@link FileRequest}.
+     *
+     * @param target file that is replaced once the download completed
+     */
+    public void queueFileRequest(DataRequest dataRequest, File target, DataListener dataListener) {
+        queueFileRequest(dataRequest, target, false, null, FileRequest.DEFAULT_PROGRESS_INTERVAL_MS, dataListener);
+    }
+
+    /**
+     * Queues a download that reports its progress and optionally resumes from the partial file of an earlier attempt.
+     *
+     * @param target             file that is replaced once the download completed
+     * @param resumable          keep the partial file when the download fails or is cancelled and continue it with a
+     *                           Range request, also across retries
+     * @param progressListener   optional, called on the network thread
+     * @param progressIntervalMs minimum time between two progress callbacks
+     */
+    public void queueFileRequest(DataRequest dataRequest, File target, boolean resumable,
+                                 @Nullable DownloadProgressListener progressListener, long progressIntervalMs, DataListener dataListener) {
+        requireNonNull(dataRequest);
+        requireNonNull(target, "target");
+        requireAny(progressListener);
+        require(progressIntervalMs >= 0, "progressIntervalMs >= 0");
+        requireNonNull(dataListener);
+
+        if (!dataRequest.isCancelled()) {
+            enqueue(dataRequest, dataListener, VolleyRequestFactory.file(target, resumable, progressListener, progressIntervalMs));
+        } else {
+            Logger.df(TAG, "queueFileRequest: Will not queue DataRequest: %s, request already cancelled", dataRequest);
+        }
+    }
+
+    /**
+     * {@link RequestQueue#add(com.android.volley.Request)} is thread safe, requests are submitted without any
+     * additional locking so that producer threads never contend with each other here.
+     * <p/>
+     * Identical GET requests that are already in flight share the existing network call instead of opening a new one.
+     * Deferrable requests may be held by the {@link DeferredRequests} first.
+     */
+    private void enqueue(DataRequest dataRequest, DataListener dataListener, VolleyRequestFactory factory) {
+        DeferredRequests scheduler = getDeferredRequests();
+        if (scheduler != null && dataRequest.isDeferrable() && scheduler.hold(dataRequest, dataListener, factory)) {
+            return;
+        }
+        send(dataRequest, dataListener, factory);
+    }
+
+    void send(DataRequest dataRequest, DataListener dataListener, VolleyRequestFactory factory) {
+        RequestMetrics metrics = dataRequest.getMetrics();
+        if (metrics == null && RequestMetrics.isEnabled()) {
+            metrics = RequestMetrics.obtain(CircuitBreaker.keyFor(dataRequest.getPath()));
+            dataRequest.setMetricsPublishedOnDelivery(metrics);
+        }
+        if (metrics != null) {
+            metrics.markEnqueue();
+        }
+
+        String key = getConfig().isRequestCoalescingEnabled() ? InFlightRequest.keyFor(dataRequest, factory) : null;
+
+        InFlightRequest inFlightRequest;
+        if (key != null) {
+            inFlightRequest = attachToInFlightRequest(key, dataRequest, dataListener, factory);
+        } else {
+            inFlightRequest = new InFlightRequest(this, null, factory);
+            inFlightRequest.attach(dataRequest, dataListener, factory);
+        }
+
+        if (dataRequest.isCancelled()) {
+            // cancelled while the request was being attached
+            inFlightRequest.detach(dataRequest);
+            return;
+        }
+
+        VolleyRequest request = inFlightRequest.createVolleyRequest();
+        if (request == null) {
+            Logger.df(TAG, "attached to an in flight request: %s", key);
+            return;
+        }
+
+        DeferredRequests scheduler = getDeferredRequests();
+        if (scheduler != null && !scheduler.isConnected()) {
+            sendOffline(inFlightRequest, request, dataRequest);
+            return;
+        }
+
+        start(inFlightRequest, request, dataRequest);
+        if (scheduler != null) {
+            scheduler.onRadioActive();
+        }
+    }
+
+    private void start(InFlightRequest inFlightRequest, VolleyRequest request, DataRequest dataRequest) {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(dataRequest);
+        if (circuitBreaker != null) {
+            long permit = circuitBreaker.tryAcquire();
+            if (permit == CircuitBreaker.NO_PERMIT) {
+                Logger.df(TAG, "circuit open, failing fast: %s", dataRequest.getPath());
+                inFlightRequest.failFast(Error.CreateErrorMessageWithCode(Error.Code.CIRCUIT_OPEN, null));
+                return;
+            }
+            inFlightRequest.setCircuitBreaker(circuitBreaker, permit);
+        }
+
+        dispatch(inFlightRequest, request);
+    }
+
+    /**
+     * Offline only a GET that volley can answer from a fresh cache entry can succeed, every other request fails
+     * fast. The cache is read on a worker thread since {@link DiskBasedCache} reads the entry from disk.
+     */
+    private void sendOffline(final InFlightRequest inFlightRequest, final VolleyRequest request, final DataRequest dataRequest) {
+        if (dataRequest.getMethod() != Request.Method.GET || !request.shouldCache()) {
+            failOffline(inFlightRequest, dataRequest);
+            return;
+        }
+        final Cache cache = getQueue().getCache();
+        Dispatchers.worker().execute(new Runnable() {
+            @Override
+            public void run() {
+                Cache.Entry entry = cache.get(request.getCacheKey());
+                if (entry != null && !entry.isExpired()) {
+                    Logger.df(TAG, "offline, serving from cache: %s", dataRequest.getPath());
+                    start(inFlightRequest, request, dataRequest);
+                } else {
+                    failOffline(inFlightRequest, dataRequest);
                 }
+            }
+        });
+    }
+
+    private static void failOffline(InFlightRequest inFlightRequest, DataRequest dataRequest) {
+        Logger.df(TAG, "offline, failing fast: %s", dataRequest.getPath());
+        inFlightRequest.failFast(Error.CreateErrorMessageWithCode(Error.Code.NETWORK_ERROR, null));
+    }
+
+    @Nullable
+    private CircuitBreaker getCircuitBreaker(DataRequest dataRequest) {
+        DataTransceiverConfig transceiverConfig = getConfig();
+        if (!transceiverConfig.isCircuitBreakerEnabled()) {
+            return null;
+        }
+        String key = CircuitBreaker.keyFor(dataRequest.getPath());
+        CircuitBreaker circuitBreaker = circuitBreakers.get(key);
+        if (circuitBreaker == null) {
+            CircuitBreaker created = new CircuitBreaker(transceiverConfig.getCircuitBreakerWindow(),
+                    transceiverConfig.getCircuitBreakerFailureRate(), transceiverConfig.getCircuitBreakerOpenMs());
+            circuitBreaker = circuitBreakers.putIfAbsent(key, created);
+            if (circuitBreaker == null) {
+                circuitBreaker = created;
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Adds the request to the queue, unless its priority class is at its concurrency cap, it then waits for a slot.
+     */
+    private void dispatch(InFlightRequest inFlightRequest, VolleyRequest request) {
+        PriorityLimiter limiter = getPriorityLimiter();
+        if (limiter.isLimited(inFlightRequest.getPriority())) {
+            if (limiter.acquireOrPark(inFlightRequest)) {
+                startWithSlot(inFlightRequest);
+            } else {
+                Logger.d(TAG, "dispatch: priority class at its limit, waiting for a slot");
+            }
+            return;
+        }
+
+        Logger.d(TAG, "queueing Request");
+        addToQueue(request);
+    }
+
+    private void startWithSlot(InFlightRequest inFlightRequest) {
+        inFlightRequest.acquireSlot();
+        if (inFlightRequest.isCompleted()) {
+            // cancelled while waiting, hand the slot over
+            releaseSlot(inFlightRequest);
+            return;
+        }
+        Logger.d(TAG, "queueing Request");
+        addToQueue(inFlightRequest.getVolleyRequest());
+    }
 
-                @Override
-                public void onFailure(DataTransaction dataTransaction) {
-                    ensureNonNull(dataTransaction.getDataResponse().getFailureMessage());
-                    dataListener.onFailure(dataTransaction);
+    /**
+     * Downloads of a target file that is still being written wait until the running download finished, see
+     * {@link DownloadTargets}.
+     */
+    private void addToQueue(VolleyRequest request) {
+        if (request instanceof FileRequest && !downloadTargets.acquireOrPark((FileRequest) request)) {
+            Logger.d(TAG, "download target busy, waiting for the running download");
+            return;
+        }
+        getQueue().add(request);
+    }
+
+    private void releaseSlot(InFlightRequest inFlightRequest) {
+        if (inFlightRequest.releaseSlot()) {
+            InFlightRequest next = getPriorityLimiter().release(inFlightRequest.getPriority());
+            if (next != null) {
+                startWithSlot(next);
+            }
+        }
+    }
+
+    private InFlightRequest attachToInFlightRequest(String key, DataRequest dataRequest, DataListener dataListener, VolleyRequestFactory factory) {
+        while (true) {
+            InFlightRequest existing = inFlightRequests.get(key);
+            if (existing != null) {
+                if (existing.attach(dataRequest, dataListener, factory)) {
+                    return existing;
                 }
-            });
+                // completed, it is removing itself
+                inFlightRequests.remove(key, existing);
+                continue;
+            }
 
-            dataRequest.volleyRequest = request;
-            synchronized (sInstance) {
-                Logger.d(TAG, "queueing Request");
-                queue.add(request);
+            InFlightRequest created = new InFlightRequest(this, key, factory);
+            created.attach(dataRequest, dataListener, factory);
+            if (inFlightRequests.putIfAbsent(key, created) == null) {
+                return created;
             }
-        } else {
-            Logger.d(TAG, "queueJsonRequest: Will not queue DataRequest: " + dataRequest + ", request already cancelled");
         }
     }
-}
 
+    /**
+     * Queues the next attempt of a failed call after the backoff, unless every subscriber left in the meantime.
+     */
+    void retry(final InFlightRequest inFlightRequest, final VolleyRequest request, long delayMs) {
+        Dispatchers.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (!inFlightRequest.isCompleted()) {
+                    addToQueue(request);
+                }
+            }
+        }, delayMs);
+    }
+
+    void onInFlightRequestFinished(InFlightRequest inFlightRequest) {
+        if (inFlightRequest.getKey() != null) {
+            inFlightRequests.remove(inFlightRequest.getKey(), inFlightRequest);
+        }
+
+        releaseSlot(inFlightRequest);
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.android.volley.Network;
+import com.android.volley.toolbox.HttpStack;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static com.android.sdk.core.utils.DesignByContract.require;
+import static com.android.sdk.core.utils.DesignByContract.requireAny;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Configuration of the {@link DataTransceiver} request queue, pass it to {@code Core#init}.
+ * <p/>
+ * <pre>
+ * DataTransceiverConfig config = new DataTransceiverConfig.Builder()
+ *         .setThreadPoolSize(6)
+ *         .setCacheSizeBytes(10 * 1024 * 1024)
+ *         .build();
+ * </pre>
+ * Values that are not set fall back to the volley defaults.
+ */
+public final class DataTransceiverConfig {
+
+    public static final int DEFAULT_THREAD_POOL_SIZE = 4;
+    public static final int DEFAULT_CACHE_SIZE_BYTES = 5 * 1024 * 1024;
+    public static final int DEFAULT_RETRY_THROTTLE_TOKENS = 10;
+    public static final float DEFAULT_RETRY_THROTTLE_RATIO = 0.1f;
+    public static final int DEFAULT_CIRCUIT_BREAKER_WINDOW = 10;
+    public static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE = 50;
+    public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MS = 30 * 1000;
+    public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD_BYTES = 1024;
+    public static final int DEFAULT_OUTBOX_MAX_CONCURRENT_REQUESTS = 2;
+    public static final long DEFAULT_MAX_DEFERRAL_MS = 5 * 60 * 1000;
+    static final String DEFAULT_CACHE_DIR = "volley";
+
+    private final int threadPoolSize;
+    private final File cacheDirectory;
+    private final int cacheSizeBytes;
+    private final HttpStack httpStack;
+    private final Network network;
+    private final boolean requestCoalescingEnabled;
+    private final int[] priorityLimits;
+    private final DataRetryPolicy retryPolicy;
+    private final int retryThrottleTokens;
+    private final float retryThrottleRatio;
+    private final boolean circuitBreakerEnabled;
+    private final int circuitBreakerWindow;
+    private final int circuitBreakerFailureRate;
+    private final long circuitBreakerOpenMs;
+    private final boolean responseCompressionEnabled;
+    private final boolean requestCompressionEnabled;
+    private final int requestCompressionThresholdBytes;
+    private final boolean outboxEnabled;
+    private final int outboxMaxConcurrentRequests;
+    private final Outbox.HeaderPolicy outboxHeaderPolicy;
+    private final boolean connectivityAwareScheduling;
+    private final long maxDeferralMs;
+    private final boolean deferWhilePowerSaving;
+
+    private DataTransceiverConfig(Builder builder) {
+        this.threadPoolSize = builder.threadPoolSize;
+        this.cacheDirectory = builder.cacheDirectory;
+        this.cacheSizeBytes = builder.cacheSizeBytes;
+        this.httpStack = builder.httpStack;
+        this.network = builder.network;
+        this.requestCoalescingEnabled = builder.requestCoalescingEnabled;
+        this.priorityLimits = builder.priorityLimits.clone();
+        this.retryPolicy = builder.retryPolicy;
+        this.retryThrottleTokens = builder.retryThrottleTokens;
+        this.retryThrottleRatio = builder.retryThrottleRatio;
+        this.circuitBreakerEnabled = builder.circuitBreakerEnabled;
+        this.circuitBreakerWindow = builder.circuitBreakerWindow;
+        this.circuitBreakerFailureRate = builder.circuitBreakerFailureRate;
+        this.circuitBreakerOpenMs = builder.circuitBreakerOpenMs;
+        this.responseCompressionEnabled = builder.responseCompressionEnabled;
+        this.requestCompressionEnabled = builder.requestCompressionEnabled;
+        this.requestCompressionThresholdBytes = builder.requestCompressionThresholdBytes;
+        this.outboxEnabled = builder.outboxEnabled;
+        this.outboxMaxConcurrentRequests = builder.outboxMaxConcurrentRequests;
+        this.outboxHeaderPolicy = builder.outboxHeaderPolicy;
+        this.connectivityAwareScheduling = builder.connectivityAwareScheduling;
+        this.maxDeferralMs = builder.maxDeferralMs;
+        this.deferWhilePowerSaving = builder.deferWhilePowerSaving;
+    }
+
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    /**
+     * @param context used to resolve the default cache directory
+     * @return the configured cache directory or {@code <cacheDir>/volley}
+     */
+    @NonNull
+    public File getCacheDirectory(@NonNull Context context) {
+        requireNonNull(context, "context");
+        if (cacheDirectory != null) {
+            return cacheDirectory;
+        }
+        return new File(context.getCacheDir(), DEFAULT_CACHE_DIR);
+    }
+
+    public int getCacheSizeBytes() {
+        return cacheSizeBytes;
+    }
+
+    @Nullable
+    public HttpStack getHttpStack() {
+        return httpStack;
+    }
+
+    @Nullable
+    public Network getNetwork() {
+        return network;
+    }
+
+    public boolean isRequestCoalescingEnabled() {
+        return requestCoalescingEnabled;
+    }
+
+    /**
+     * @return maximum number of requests of the priority class in flight at the same time
+     */
+    public int getMaxConcurrentRequests(DataRequest.Priority priority) {
+        requireNonNull(priority, "priority");
+        return priorityLimits[priority.ordinal()];
+    }
+
+    int[] getPriorityLimits() {
+        return priorityLimits;
+    }
+
+    /**
+     * @return retry policy of requests that do not set their own
+     */
+    @NonNull
+    public DataRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public int getRetryThrottleTokens() {
+        return retryThrottleTokens;
+    }
+
+    public float getRetryThrottleRatio() {
+        return retryThrottleRatio;
+    }
+
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    public int getCircuitBreakerWindow() {
+        return circuitBreakerWindow;
+    }
+
+    public int getCircuitBreakerFailureRate() {
+        return circuitBreakerFailureRate;
+    }
+
+    public long getCircuitBreakerOpenMs() {
+        return circuitBreakerOpenMs;
+    }
+
+    public boolean isResponseCompressionEnabled() {
+        return responseCompressionEnabled;
+    }
+
+    public boolean isRequestCompressionEnabled() {
+        return requestCompressionEnabled;
+    }
+
+    public int getRequestCompressionThresholdBytes() {
+        return requestCompressionThresholdBytes;
+    }
+
+    public boolean isOutboxEnabled() {
+        return outboxEnabled;
+    }
+
+    public int getOutboxMaxConcurrentRequests() {
+        return outboxMaxConcurrentRequests;
+    }
+
+    @Nullable
+    public Outbox.HeaderPolicy getOutboxHeaderPolicy() {
+        return outboxHeaderPolicy;
+    }
+
+    public boolean isConnectivityAwareSchedulingEnabled() {
+        return connectivityAwareScheduling;
+    }
+
+    public long getMaxDeferralMs() {
+        return maxDeferralMs;
+    }
+
+    public boolean isDeferWhilePowerSaving() {
+        return deferWhilePowerSaving;
+    }
+
+    public static final class Builder {
+        private int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+        private File cacheDirectory;
+        private int cacheSizeBytes = DEFAULT_CACHE_SIZE_BYTES;
+        private HttpStack httpStack;
+        private Network network;
+        private boolean requestCoalescingEnabled = true;
+        private final int[] priorityLimits = unlimited();
+        private DataRetryPolicy retryPolicy = DataRetryPolicy.DEFAULT;
+        private int retryThrottleTokens = DEFAULT_RETRY_THROTTLE_TOKENS;
+        private float retryThrottleRatio = DEFAULT_RETRY_THROTTLE_RATIO;
+        private boolean circuitBreakerEnabled;
+        private int circuitBreakerWindow = DEFAULT_CIRCUIT_BREAKER_WINDOW;
+        private int circuitBreakerFailureRate = DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE;
+        private long circuitBreakerOpenMs = DEFAULT_CIRCUIT_BREAKER_OPEN_MS;
+        private boolean responseCompressionEnabled = true;
+        private boolean requestCompressionEnabled = true;
+        private int requestCompressionThresholdBytes = DEFAULT_REQUEST_COMPRESSION_THRESHOLD_BYTES;
+        private boolean outboxEnabled;
+        private int outboxMaxConcurrentRequests = DEFAULT_OUTBOX_MAX_CONCURRENT_REQUESTS;
+        private Outbox.HeaderPolicy outboxHeaderPolicy;
+        private boolean connectivityAwareScheduling;
+        private long maxDeferralMs = DEFAULT_MAX_DEFERRAL_MS;
+        private boolean deferWhilePowerSaving = true;
+
+        private static int[] unlimited() {
+            int[] limits = new int[DataRequest.Priority.values().length];
+            Arrays.fill(limits, PriorityLimiter.UNLIMITED);
+            return limits;
+        }
+
+        /**
+         * @param threadPoolSize number of network dispatcher threads, default {@link #DEFAULT_THREAD_POOL_SIZE}
+         */
+        public Builder setThreadPoolSize(int threadPoolSize) {
+            require(threadPoolSize > 0, "threadPoolSize > 0");
+            this.threadPoolSize = threadPoolSize;
+            return this;
+        }
+
+        /**
+         * @param cacheDirectory directory of the disk cache, default {@code <cacheDir>/volley}
+         */
+        public Builder setCacheDirectory(@NonNull File cacheDirectory) {
+            requireNonNull(cacheDirectory, "cacheDirectory");
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        /**
+         * @param cacheSizeBytes maximum size of the disk cache, default {@link #DEFAULT_CACHE_SIZE_BYTES}
+         */
+        public Builder setCacheSizeBytes(int cacheSizeBytes) {
+            require(cacheSizeBytes > 0, "cacheSizeBytes > 0");
+            this.cacheSizeBytes = cacheSizeBytes;
+            return this;
+        }
+
+        /**
+         * @param httpStack stack used by the default {@code BasicNetwork}, ignored when a {@link Network} is set.
+         *                  Downloads are only streamed to disk with the default stack, a custom stack buffers them.
+         */
+        public Builder setHttpStack(@Nullable HttpStack httpStack) {
+            requireAny(httpStack);
+            this.httpStack = httpStack;
+            return this;
+        }
+
+        /**
+         * @param network network implementation, takes precedence over {@link #setHttpStack(HttpStack)}
+         */
+        public Builder setNetwork(@Nullable Network network) {
+            requireAny(network);
+            this.network = network;
+            return this;
+        }
+
+        /**
+         * @param requestCoalescingEnabled when true (default) identical GET requests in flight share one network call
+         */
+        public Builder setRequestCoalescingEnabled(boolean requestCoalescingEnabled) {
+            this.requestCoalescingEnabled = requestCoalescingEnabled;
+            return this;
+        }
+
+        /**
+         * Caps the number of requests of a priority class in flight at the same time, eg: allow at most one
+         * {@link DataRequest.Priority#PREFETCH} request so that prefetching never takes every network dispatcher.
+         * Not capped by default.
+         */
+        public Builder setMaxConcurrentRequests(DataRequest.Priority priority, int maxConcurrentRequests) {
+            requireNonNull(priority, "priority");
+            require(maxConcurrentRequests > 0, "maxConcurrentRequests > 0");
+            this.priorityLimits[priority.ordinal()] = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * @param retryPolicy retry policy of requests that do not set their own, default {@link DataRetryPolicy#DEFAULT}
+         */
+        public Builder setRetryPolicy(@NonNull DataRetryPolicy retryPolicy) {
+            requireNonNull(retryPolicy, "retryPolicy");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Configures the retry throttle shared by all requests: every failed attempt takes a token, every success
+         * gives back {@code tokenRatio} tokens and retries stop while half of the tokens or fewer are left.
+         *
+         * @param maxTokens  size of the bucket, default {@link #DEFAULT_RETRY_THROTTLE_TOKENS}
+         * @param tokenRatio tokens returned per success, default {@link #DEFAULT_RETRY_THROTTLE_RATIO}
+         */
+        public Builder setRetryThrottle(int maxTokens, float tokenRatio) {
+            require(maxTokens > 0, "maxTokens > 0");
+            require(tokenRatio > 0f, "tokenRatio > 0");
+            this.retryThrottleTokens = maxTokens;
+            this.retryThrottleRatio = tokenRatio;
+            return this;
+        }
+
+        /**
+         * @param circuitBreakerEnabled when true requests to an endpoint that keeps failing fail fast
+         *                              with {@link ErrorCodes#CIRCUIT_OPEN}, disabled by default
+         */
+        public Builder setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+            this.circuitBreakerEnabled = circuitBreakerEnabled;
+            return this;
+        }
+
+        /**
+         * Configures the circuit breaker of each endpoint, an endpoint is the request url without its query.
+         *
+         * @param windowSize         number of recent calls the failure rate is computed on, default {@link #DEFAULT_CIRCUIT_BREAKER_WINDOW}
+         * @param failureRatePercent failure rate that opens the breaker, default {@link #DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE}
+         * @param openDurationMs     time requests fail fast before a probe is let through, default {@link #DEFAULT_CIRCUIT_BREAKER_OPEN_MS}
+         */
+        public Builder setCircuitBreaker(int windowSize, int failureRatePercent, long openDurationMs) {
+            require(windowSize > 0, "windowSize > 0");
+            require(failureRatePercent > 0 && failureRatePercent <= 100, "0 < failureRatePercent <= 100");
+            require(openDurationMs >= 0, "openDurationMs >= 0");
+            this.circuitBreakerWindow = windowSize;
+            this.circuitBreakerFailureRate = failureRatePercent;
+            this.circuitBreakerOpenMs = openDurationMs;
+            return this;
+        }
+
+        /**
+         * @param responseCompressionEnabled when true (default) requests send {@code Accept-Encoding: gzip} and gzip
+         *                                   responses are decoded before parsing
+         */
+        public Builder setResponseCompressionEnabled(boolean responseCompressionEnabled) {
+            this.responseCompressionEnabled = responseCompressionEnabled;
+            return this;
+        }
+
+        /**
+         * Bodies of requests that opted in with {@link DataRequest#setCompressBody(boolean)} are gzipped when they are
+         * at least {@code thresholdBytes} long, smaller bodies do not gain enough to pay for the gzip header.
+         *
+         * @param enabled        true by default, false ignores the per request flag
+         * @param thresholdBytes default {@link #DEFAULT_REQUEST_COMPRESSION_THRESHOLD_BYTES}
+         */
+        public Builder setRequestCompression(boolean enabled, int thresholdBytes) {
+            require(thresholdBytes >= 0, "thresholdBytes >= 0");
+            this.requestCompressionEnabled = enabled;
+            this.requestCompressionThresholdBytes = thresholdBytes;
+            return this;
+        }
+
+        /**
+         * Enables the {@link Outbox}, its journal is read when {@code Core#init} is called and the pending requests are
+         * replayed as soon as the device is online.
+         *
+         * @param enabled               false by default
+         * @param maxConcurrentRequests outbox requests in flight at a time, default
+         *                              {@link #DEFAULT_OUTBOX_MAX_CONCURRENT_REQUESTS}
+         */
+        public Builder setOutbox(boolean enabled, int maxConcurrentRequests) {
+            require(maxConcurrentRequests > 0, "maxConcurrentRequests > 0");
+            this.outboxEnabled = enabled;
+            this.outboxMaxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * @param headerPolicy decides which headers of outbox requests are written to the journal, null (default)
+         *                     journals every header in plain text
+         */
+        public Builder setOutboxHeaderPolicy(@Nullable Outbox.HeaderPolicy headerPolicy) {
+            requireAny(headerPolicy);
+            this.outboxHeaderPolicy = headerPolicy;
+            return this;
+        }
+
+        /**
+         * Lets the transceiver observe the network: requests fail fast with {@code NETWORK_ERROR} while the device is
+         * offline, except GET requests that volley can answer from a fresh cache entry, and failed attempts are not
+         * retried while offline. Requests marked with {@link DataRequest#setDeferrable(boolean)} are held until they
+         * can be sent in one burst, see {@link #setDeferWhilePowerSaving(boolean)}.
+         *
+         * @param enabled       false by default
+         * @param maxDeferralMs longest time a deferrable request is held, default {@link #DEFAULT_MAX_DEFERRAL_MS}
+         */
+        public Builder setConnectivityAwareScheduling(boolean enabled, long maxDeferralMs) {
+            require(maxDeferralMs >= 0, "maxDeferralMs >= 0");
+            this.connectivityAwareScheduling = enabled;
+            this.maxDeferralMs = maxDeferralMs;
+            return this;
+        }
+
+        /**
+         * @param deferWhilePowerSaving when true (default) deferrable requests are not sent on Wi-Fi while battery
+         *                              saver is on or the device dozes, only along with other traffic or after the
+         *                              maximum deferral
+         */
+        public Builder setDeferWhilePowerSaving(boolean deferWhilePowerSaving) {
+            this.deferWhilePowerSaving = deferWhilePowerSaving;
+            return this;
+        }
+
+        public DataTransceiverConfig build() {
+            return new DataTransceiverConfig(this);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import com.android.sdk.core.utils.ConnectivityMonitor;
+import com.android.sdk.core.utils.Dispatchers;
+import com.android.sdk.core.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds deferrable requests so that they share a radio wakeup.
+ * <p/>
+ * A cellular radio stays in its high power state for several seconds after every transfer, a request sent on its own
+ * pays for that tail. Held requests are released together when:
+ * <ul>
+ * <li>the device is on an unmetered network, and not saving power if that is configured</li>
+ * <li>the radio became active for other traffic, reported by the {@link ConnectivityMonitor} or by a request that
+ * was not deferred</li>
+ * <li>the oldest request was held for {@link DataTransceiverConfig#getMaxDeferralMs()}</li>
+ * </ul>
+ */
+final class DeferredRequests implements ConnectivityMonitor.Listener {
+    private static final String TAG = DeferredRequests.class.getSimpleName();
+
+    private final DataTransceiver transceiver;
+    private final ConnectivityMonitor monitor;
+    private final long maxDeferralMs;
+    private final boolean deferWhilePowerSaving;
+    private final List<HeldRequest> held = new ArrayList<>();
+    private boolean timerScheduled;
+
+    private final Runnable deadlineTask = new Runnable() {
+        @Override
+        public void run() {
+            long remainingMs;
+            synchronized (DeferredRequests.this) {
+                timerScheduled = false;
+                if (held.isEmpty()) {
+                    return;
+                }
+                remainingMs = (held.get(0).deadlineNanos - System.nanoTime()) / 1000000L;
+                if (remainingMs > 0) {
+                    scheduleDeadline(remainingMs);
+                    return;
+                }
+            }
+            Logger.d(TAG, "deadline reached");
+            flush();
+        }
+    };
+
+    DeferredRequests(DataTransceiver transceiver, ConnectivityMonitor monitor, long maxDeferralMs, boolean deferWhilePowerSaving) {
+        this.transceiver = transceiver;
+        this.monitor = monitor;
+        this.maxDeferralMs = maxDeferralMs;
+        this.deferWhilePowerSaving = deferWhilePowerSaving;
+        monitor.addListener(this);
+    }
+
+    boolean isConnected() {
+        return monitor.isConnected();
+    }
+
+    /**
+     * @return true if the request is held, false if it should be sent right away
+     */
+    boolean hold(DataRequest dataRequest, DataListener dataListener, VolleyRequestFactory factory) {
+        if (maxDeferralMs == 0 || canSendNow()) {
+            return false;
+        }
+        synchronized (this) {
+            held.add(new HeldRequest(dataRequest, dataListener, factory, System.nanoTime() + maxDeferralMs * 1000000L));
+            if (!timerScheduled) {
+                scheduleDeadline(maxDeferralMs);
+            }
+        }
+        Logger.df(TAG, "holding %s", dataRequest.getPath());
+        return true;
+    }
+
+    /**
+     * Called when a request goes out, the radio is up and the held requests travel along.
+     */
+    void onRadioActive() {
+        if (monitor.isConnected()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onConnectivityChanged(boolean connected, boolean metered) {
+        if (canSendNow()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onNetworkActive() {
+        onRadioActive();
+    }
+
+    private boolean canSendNow() {
+        return monitor.isConnected() && !monitor.isMetered() && !(deferWhilePowerSaving && monitor.isPowerSaving());
+    }
+
+    private void scheduleDeadline(long delayMs) {
+        timerScheduled = true;
+        Dispatchers.postDelayed(deadlineTask, delayMs);
+    }
+
+    private void flush() {
+        List<HeldRequest> released;
+        synchronized (this) {
+            if (held.isEmpty()) {
+                return;
+            }
+            released = new ArrayList<>(held);
+            held.clear();
+        }
+        Logger.df(TAG, "releasing %d held requests", released.size());
+        for (HeldRequest request : released) {
+            if (request.dataRequest.isCancelled()) {
+                continue;
+            }
+            transceiver.send(request.dataRequest, request.dataListener, request.factory);
+        }
+    }
+
+    private static final class HeldRequest {
+        final DataRequest dataRequest;
+        final DataListener dataListener;
+        final VolleyRequestFactory factory;
+        final long deadlineNanos;
+
+        HeldRequest(DataRequest dataRequest, DataListener dataListener, VolleyRequestFactory factory, long deadlineNanos) {
+            this.dataRequest = dataRequest;
+            this.dataListener = dataListener;
+            this.factory = factory;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serializes the downloads of a target file. A download is only added to the request queue once the previous
+ * download of the same file finished, eg: a download started again right after it was cancelled waits here until
+ * the cancelled one stopped writing the partial file, instead of holding a network dispatcher.
+ */
+final class DownloadTargets {
+
+    private final Map<String, ArrayDeque<FileRequest>> active = new HashMap<>();
+
+    /**
+     * @return true if the download may be queued now, false if it was parked until the target is free.
+     */
+    synchronized boolean acquireOrPark(FileRequest request) {
+        String path = request.getTarget().getAbsolutePath();
+        ArrayDeque<FileRequest> waiting = active.get(path);
+        if (waiting == null) {
+            active.put(path, new ArrayDeque<FileRequest>());
+            return true;
+        }
+        waiting.add(request);
+        return false;
+    }
+
+    /**
+     * Frees the target of a finished download.
+     *
+     * @return the next parked download of the same target, which now holds it, or null if none is waiting.
+     */
+    @Nullable
+    synchronized FileRequest release(FileRequest request) {
+        String path = request.getTarget().getAbsolutePath();
+        ArrayDeque<FileRequest> waiting = active.get(path);
+        if (waiting == null) {
+            return null;
+        }
+        FileRequest next;
+        while ((next = waiting.poll()) != null) {
+            if (!next.isCanceled()) {
+                return next;
+            }
+        }
+        active.remove(path);
+        return null;
+    }
+}
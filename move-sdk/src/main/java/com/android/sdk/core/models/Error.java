@@ -47,7 +47,8 @@ public class Error implements FailureMessage {
     enum Code {
         UNKNOWN(R.string.error_message_unknown),
         SERVICE_RESPONSE_ERROR(R.string.error_message_unknown),
-        NETWORK_ERROR(R.string.error_message_network_unavailable);
+        NETWORK_ERROR(R.string.error_message_network_unavailable),
+        CIRCUIT_OPEN(R.string.error_message_service_unavailable);
 
         private int stringResourceId;
 
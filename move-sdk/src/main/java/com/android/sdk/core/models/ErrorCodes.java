@@ -30,4 +30,12 @@ package com.android.sdk.core.models;
 public class ErrorCodes {
     public static final String UNKNOWN = Error.Code.UNKNOWN.toString();
     public static final String NETWORK_ERROR = Error.Code.NETWORK_ERROR.toString();
+    /**
+     * The response could not be parsed into the expected result.
+     */
+    public static final String SERVICE_RESPONSE_ERROR = Error.Code.SERVICE_RESPONSE_ERROR.toString();
+    /**
+     * The endpoint kept failing, the request was not sent.
+     */
+    public static final String CIRCUIT_OPEN = Error.Code.CIRCUIT_OPEN.toString();
 }
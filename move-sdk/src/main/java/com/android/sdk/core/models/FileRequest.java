@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.metrics.RequestMetrics;
+import com.android.sdk.core.utils.Logger;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static com.android.sdk.core.utils.DesignByContract.require;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Writes the response body to a file, the file is available through {@link DataResponse#getResult()}.
+ * <p/>
+ * With the default network the body is streamed to disk through {@link StreamingNetwork} and never held in memory,
+ * resumable requests continue an interrupted download with an HTTP Range request. When a custom {@code Network} or
+ * {@code HttpStack} is configured the body is buffered by volley and written once it arrived, without resume.
+ * Responses are written to a temporary file that replaces the target on success, downloads are never kept in the
+ * volley cache.
+ */
+public class FileRequest extends VolleyRequest<File> {
+    private static final String TAG = FileRequest.class.getSimpleName();
+    public static final long DEFAULT_PROGRESS_INTERVAL_MS = 250;
+
+    private final File target;
+    private final boolean resumable;
+    private final DownloadProgressListener progressListener;
+    private final long progressIntervalMs;
+    private long lastProgressMs;
+    private long streamedLength = -1;
+
+    public FileRequest(DataTransaction dataTransaction, File target, DataListener dataListener) {
+        this(dataTransaction, target, false, null, DEFAULT_PROGRESS_INTERVAL_MS, dataListener);
+    }
+
+    /**
+     * @param resumable          keep the partial file of a failed or cancelled download and continue it on the next attempt
+     * @param progressListener   optional listener, called on the network thread
+     * @param progressIntervalMs minimum time between two progress callbacks
+     */
+    public FileRequest(DataTransaction dataTransaction, File target, boolean resumable,
+                       @Nullable DownloadProgressListener progressListener, long progressIntervalMs, DataListener dataListener) {
+        super(dataTransaction, dataListener);
+        requireNonNull(target, "target");
+        require(progressIntervalMs >= 0, "progressIntervalMs >= 0");
+        this.target = target;
+        this.resumable = resumable;
+        this.progressListener = progressListener;
+        this.progressIntervalMs = progressIntervalMs;
+        setShouldCache(false);
+    }
+
+    public File getTarget() {
+        return target;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Throttles the progress callbacks, called on the network thread after every buffer written.
+     *
+     * @param completed true for the last call, which is never throttled
+     */
+    void reportProgress(long bytesDownloaded, long totalBytes, boolean completed) {
+        if (progressListener == null) {
+            return;
+        }
+        long nowMs = SystemClock.elapsedRealtime();
+        if (completed || nowMs - lastProgressMs >= progressIntervalMs) {
+            lastProgressMs = nowMs;
+            progressListener.onProgress(bytesDownloaded, totalBytes);
+        }
+    }
+
+    /**
+     * Called on the network thread by {@link StreamingNetwork} once the body was written to the target.
+     */
+    void setStreamedLength(long streamedLength) {
+        this.streamedLength = streamedLength;
+    }
+
+    @Override
+    protected Response<File> parseNetworkResponse(NetworkResponse response) {
+        long length = streamedLength;
+        if (length < 0) {
+            try {
+                byte[] body = decodeBody(response);
+                length = StreamingNetwork.writeTo(new ByteArrayInputStream(body), target);
+                reportProgress(length, length, true);
+            } catch (IOException e) {
+                Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+                return Response.error(new VolleyError(e));
+            } catch (VolleyError e) {
+                Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+                return Response.error(e);
+            }
+        }
+        parseCacheEntry(response);
+        dataTransaction.getDataResponse().setContentLength((int) Math.min(Integer.MAX_VALUE, length));
+        RequestMetrics metrics = getMetrics();
+        if (metrics != null && streamedLength >= 0) {
+            metrics.setResponseBytes(length);
+            metrics.setDecodedResponseBytes(length);
+        }
+        return Response.success(target, null);
+    }
+
+    @Override
+    protected void deliverResponse(File response) {
+        dataTransaction.getDataResponse().setResult(response);
+        dataListener.onSuccess(dataTransaction);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.metrics.RequestMetrics;
+import com.android.sdk.core.utils.Logger;
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+/**
+ * Binds the response body straight into the result model using a Gson {@link TypeAdapter}.
+ * <p/>
+ * Parsing happens on the volley network thread while reading {@link NetworkResponse#data}, no intermediate
+ * {@code String} or {@code JSONObject} is created. Only the bound model is handed over to the delivery thread.
+ */
+public class GsonRequest<T> extends VolleyRequest<T> {
+    private static final String TAG = GsonRequest.class.getSimpleName();
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private final TypeAdapter<T> typeAdapter;
+
+    /**
+     * @param typeAdapter adapter used to bind the response, pass null when the response body should be ignored.
+     */
+    public GsonRequest(DataTransaction dataTransaction, @Nullable TypeAdapter<T> typeAdapter, DataListener dataListener) {
+        super(dataTransaction, dataListener);
+        this.typeAdapter = typeAdapter;
+    }
+
+    @Override
+    protected Response<T> parseNetworkResponse(NetworkResponse response) {
+        if (typeAdapter == null || parseNotModified(response)) {
+            return emptyResponse(response);
+        }
+
+        RequestMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.markBindStart();
+        }
+        JsonReader reader = null;
+        try {
+            String charset = HttpHeaderParser.parseCharset(response.headers, DEFAULT_CHARSET);
+            reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(decodeBody(response)), charset));
+            reader.setLenient(true);
+            T result = typeAdapter.read(reader);
+            if (metrics != null) {
+                metrics.markBindEnd();
+            }
+            return Response.success(result, parseCacheEntry(response));
+        } catch (UnsupportedEncodingException e) {
+            Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+            return Response.error(new ParseError(e));
+        } catch (IOException e) {
+            Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+            return Response.error(new ParseError(e));
+        } catch (JsonParseException e) {
+            Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+            return Response.error(new ParseError(e));
+        } catch (IllegalStateException e) {
+            Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+            return Response.error(new ParseError(e));
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Logger.w(TAG, "parseNetworkResponse: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void deliverResponse(T response) {
+        dataTransaction.getDataResponse().setResult(response);
+        dataListener.onSuccess(dataTransaction);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() throws AuthFailureError {
+
+        Map<String, String> headers = super.getHeaders();
+        headers.put("Content-Type", getContentType(DataRequestBody.CONTENT_TYPE_JSON));
+        headers.put("User-agent", System.getProperty("http.agent"));
+        return headers;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.metrics.RequestMetrics;
+import com.android.sdk.core.utils.Dispatchers;
+import com.android.sdk.core.utils.Logger;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.VolleyError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A network call in flight and the {@link DataRequest}s waiting for it.
+ * <p/>
+ * Identical GET requests attach to the same call, the response is fanned out to every attached listener.
+ * Cancelling a {@link DataRequest} only detaches it, the network call is cancelled when the last subscriber leaves.
+ */
+final class InFlightRequest implements DataListener {
+    private static final String TAG = InFlightRequest.class.getSimpleName();
+    private static final Random RANDOM = new Random();
+
+    private final DataTransceiver transceiver;
+    private final String key;
+    private final VolleyRequestFactory factory;
+    private final List<Subscriber> subscribers = new ArrayList<>(1);
+    private VolleyRequest volleyRequest;
+    private boolean completed;
+    private DataRequest.Priority priority = DataRequest.Priority.NORMAL;
+    private final AtomicBoolean holdsSlot = new AtomicBoolean();
+    private DataRetryPolicy retryPolicy;
+    private long startNanos;
+    private int retries;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile long circuitPermit = CircuitBreaker.NO_PERMIT;
+
+    /**
+     * @param key coalescing key, null if the call should not be shared
+     */
+    InFlightRequest(DataTransceiver transceiver, @Nullable String key, VolleyRequestFactory factory) {
+        this.transceiver = transceiver;
+        this.key = key;
+        this.factory = factory;
+    }
+
+    /**
+     * @return the key identifying identical requests or null if the request can not be shared.
+     */
+    @Nullable
+    static String keyFor(DataRequest dataRequest, VolleyRequestFactory factory) {
+        String cacheKey = dataRequest.getCacheKey();
+        if (cacheKey == null) {
+            return null;
+        }
+        return factory.getResponseType() + ' ' + cacheKey;
+    }
+
+    @Nullable
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * @return false if the call already completed or produces a different response type, the request needs a new call then.
+     */
+    synchronized boolean attach(DataRequest dataRequest, DataListener listener, VolleyRequestFactory factory) {
+        if (completed || !this.factory.equals(factory)) {
+            return false;
+        }
+        subscribers.add(new Subscriber(dataRequest, listener));
+        dataRequest.inFlightRequest = this;
+        return true;
+    }
+
+    void detach(DataRequest dataRequest) {
+        VolleyRequest requestToCancel = null;
+        synchronized (this) {
+            for (int i = 0; i < subscribers.size(); i++) {
+                if (subscribers.get(i).dataRequest == dataRequest) {
+                    subscribers.remove(i);
+                    break;
+                }
+            }
+            if (subscribers.isEmpty() && !completed) {
+                completed = true;
+                requestToCancel = volleyRequest;
+            }
+        }
+
+        if (requestToCancel != null) {
+            Logger.d(TAG, "cancelling n/w request");
+            transceiver.onInFlightRequestFinished(this);
+            requestToCancel.cancel();
+        }
+    }
+
+    /**
+     * Creates the volley request on behalf of the first subscriber.
+     *
+     * @return the request to queue or null if it was already created or every subscriber already left.
+     */
+    @Nullable
+    synchronized VolleyRequest createVolleyRequest() {
+        if (volleyRequest != null || completed || subscribers.isEmpty()) {
+            return null;
+        }
+        DataRequest dataRequest = subscribers.get(0).dataRequest;
+        priority = dataRequest.getPriority();
+        retryPolicy = dataRequest.getRetryPolicy() != null ? dataRequest.getRetryPolicy() : transceiver.getRetryPolicy();
+        startNanos = System.nanoTime();
+        volleyRequest = newVolleyRequest(dataRequest, 0);
+        return volleyRequest;
+    }
+
+    /**
+     * Volley only gets the socket timeout, retries are scheduled here so that they can back off without
+     * holding a network dispatcher.
+     */
+    private VolleyRequest newVolleyRequest(DataRequest dataRequest, long elapsedMs) {
+        VolleyRequest request = factory.create(new DataTransaction(dataRequest), this);
+        DataTransceiverConfig config = transceiver.getConfig();
+        request.setCompression(config.isResponseCompressionEnabled(),
+                config.isRequestCompressionEnabled() ? config.getRequestCompressionThresholdBytes() : -1);
+        request.setRetryPolicy(new DefaultRetryPolicy(retryPolicy.getAttemptTimeoutMs(elapsedMs), 0, 1f));
+        return request;
+    }
+
+    synchronized VolleyRequest getVolleyRequest() {
+        return volleyRequest;
+    }
+
+    /**
+     * @return priority of the request that created the network call
+     */
+    synchronized DataRequest.Priority getPriority() {
+        return priority;
+    }
+
+    synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Marks the call as occupying a slot of its priority class in the {@link PriorityLimiter}.
+     */
+    void acquireSlot() {
+        holdsSlot.set(true);
+    }
+
+    /**
+     * @return true if the call occupied a slot, only the first caller gets true.
+     */
+    boolean releaseSlot() {
+        return holdsSlot.getAndSet(false);
+    }
+
+    /**
+     * @param permit permit returned by {@link CircuitBreaker#tryAcquire()}
+     */
+    void setCircuitBreaker(@Nullable CircuitBreaker circuitBreaker, long permit) {
+        this.circuitPermit = permit;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Fails every subscriber without sending the request, the failure is delivered on the main thread like
+     * volley responses.
+     */
+    void failFast(final FailureMessage failureMessage) {
+        final List<Subscriber> snapshot = complete();
+        Dispatchers.main().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Subscriber subscriber : snapshot) {
+                    DataTransaction transaction = new DataTransaction(subscriber.dataRequest);
+                    transaction.getDataResponse().setFailureMessage(failureMessage);
+                    deliver(subscriber, transaction, false);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onSuccess(DataTransaction dataTransaction) {
+        transceiver.getRetryThrottle().onSuccess();
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null) {
+            breaker.onSuccess(circuitPermit);
+        }
+        List<Subscriber> snapshot = complete();
+        shareNetworkMetrics(snapshot, dataTransaction);
+        for (Subscriber subscriber : snapshot) {
+            deliver(subscriber, transactionFor(subscriber, dataTransaction), true);
+        }
+    }
+
+    @Override
+    public void onFailure(DataTransaction dataTransaction) {
+        recordOutcome(dataTransaction.getDataResponse().getError());
+        if (scheduleRetry(dataTransaction)) {
+            return;
+        }
+        List<Subscriber> snapshot = complete();
+        shareNetworkMetrics(snapshot, dataTransaction);
+        for (Subscriber subscriber : snapshot) {
+            deliver(subscriber, transactionFor(subscriber, dataTransaction), false);
+        }
+    }
+
+    private void recordOutcome(@Nullable VolleyError error) {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker == null || error == null) {
+            return;
+        }
+        if (CircuitBreaker.isFailure(error)) {
+            breaker.onFailure(circuitPermit);
+        } else {
+            breaker.onSuccess(circuitPermit);
+        }
+    }
+
+    /**
+     * @return true if the failed attempt is sent again, the subscribers are not notified then.
+     */
+    private boolean scheduleRetry(DataTransaction failed) {
+        VolleyError error = failed.getDataResponse().getError();
+        if (error == null || !DataRetryPolicy.isRetryable(error)) {
+            return false;
+        }
+        RetryThrottle throttle = transceiver.getRetryThrottle();
+        throttle.onFailure();
+        if (!transceiver.isOnline()) {
+            Logger.d(TAG, "retry skipped, offline");
+            return false;
+        }
+
+        VolleyRequest retryRequest;
+        long backoffMs;
+        synchronized (this) {
+            if (completed || retryPolicy == null) {
+                return false;
+            }
+            long elapsedMs = (System.nanoTime() - startNanos) / 1000000L;
+            backoffMs = retryPolicy.getBackoffMs(retries, RANDOM);
+            DataRequest dataRequest = failed.getDataRequest();
+            if (!retryPolicy.shouldRetry(dataRequest.getMethod(), error, retries, elapsedMs, backoffMs)) {
+                return false;
+            }
+            if (circuitBreaker != null && !circuitBreaker.isClosed()) {
+                Logger.d(TAG, "retry skipped, circuit not closed");
+                return false;
+            }
+            if (!throttle.isRetryAllowed()) {
+                Logger.d(TAG, "retry throttled");
+                return false;
+            }
+            retries++;
+            if (dataRequest.getMetrics() != null) {
+                dataRequest.getMetrics().incrementRetries();
+            }
+            volleyRequest = newVolleyRequest(dataRequest, elapsedMs + backoffMs);
+            retryRequest = volleyRequest;
+        }
+
+        Logger.df(TAG, "retry %d in %dms", retries, backoffMs);
+        transceiver.retry(this, retryRequest, backoffMs);
+        return true;
+    }
+
+    private List<Subscriber> complete() {
+        List<Subscriber> snapshot;
+        synchronized (this) {
+            completed = true;
+            snapshot = new ArrayList<>(subscribers);
+            subscribers.clear();
+        }
+        transceiver.onInFlightRequestFinished(this);
+        if (snapshot.size() > 1) {
+            Logger.df(TAG, "delivering shared response to %d subscribers", snapshot.size());
+        }
+        return snapshot;
+    }
+
+    private static void deliver(Subscriber subscriber, DataTransaction transaction, boolean success) {
+        DataRequest dataRequest = subscriber.dataRequest;
+        RequestMetrics metrics = dataRequest.getMetrics();
+        if (metrics != null && !success) {
+            metrics.setErrorCode(transaction.getDataResponse().getFailureMessage().getCode());
+        }
+
+        if (success) {
+            subscriber.listener.onSuccess(transaction);
+        } else {
+            subscriber.listener.onFailure(transaction);
+        }
+
+        if (metrics != null && dataRequest.isMetricsPublishedOnDelivery()) {
+            metrics.markDelivery();
+            dataRequest.setMetrics(null);
+            metrics.publish();
+        }
+    }
+
+    private static DataTransaction transactionFor(Subscriber subscriber, DataTransaction dataTransaction) {
+        if (subscriber.dataRequest == dataTransaction.getDataRequest()) {
+            return dataTransaction;
+        }
+        DataTransaction transaction = new DataTransaction(subscriber.dataRequest);
+        transaction.getDataResponse().copyFrom(dataTransaction.getDataResponse());
+        return transaction;
+    }
+
+    /**
+     * Copies the network stages into the records of the requests that shared the call, before any record is
+     * published and recycled.
+     */
+    private static void shareNetworkMetrics(List<Subscriber> subscribers, DataTransaction dataTransaction) {
+        RequestMetrics networkMetrics = dataTransaction.getDataRequest().getMetrics();
+        if (networkMetrics == null || subscribers.size() < 2) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            RequestMetrics metrics = subscriber.dataRequest.getMetrics();
+            if (metrics != null && metrics != networkMetrics) {
+                metrics.copyNetworkFrom(networkMetrics);
+            }
+        }
+    }
+
+    private static final class Subscriber {
+        final DataRequest dataRequest;
+        final DataListener listener;
+
+        Subscriber(DataRequest dataRequest, DataListener listener) {
+            this.dataRequest = dataRequest;
+            this.listener = listener;
+        }
+    }
+}
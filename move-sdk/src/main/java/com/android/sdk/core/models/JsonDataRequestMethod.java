@@ -36,4 +36,12 @@ public class JsonDataRequestMethod extends DataRequestMethod {
     public static JsonDataRequestMethod Post() {
         return new JsonDataRequestMethod(DataRequestMethod.Method.POST);
     }
+
+    public static JsonDataRequestMethod Put() {
+        return new JsonDataRequestMethod(DataRequestMethod.Method.PUT);
+    }
+
+    public static JsonDataRequestMethod Patch() {
+        return new JsonDataRequestMethod(DataRequestMethod.Method.PATCH);
+    }
 }
@@ -24,6 +24,7 @@
 
 package com.android.sdk.core.models;
 
+import com.android.sdk.core.metrics.RequestMetrics;
 import com.android.sdk.core.utils.Logger;
 
 import com.android.volley.AuthFailureError;
@@ -35,6 +36,7 @@ import com.android.volley.toolbox.HttpHeaderParser;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -49,20 +51,37 @@ public class JsonRequest extends VolleyRequest<JSONObject> {
 
     @Override
     protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
+        if (parseNotModified(response)) {
+            return emptyResponse(response);
+        }
+        RequestMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.markParseStart();
+        }
         try {
-            String json = new String(response.data);
-            Logger.d(TAG, "parseNetworkResponse: " + json);
+            byte[] body = decodeBody(response);
+            String json = new String(body);
+            Logger.payload(TAG, "parseNetworkResponse: ", body);
             HttpHeaderParser.parseCharset(response.headers);
-            return Response.success(new JSONObject(json), HttpHeaderParser.parseCacheHeaders(response));
+            JSONObject jsonObject = new JSONObject(json);
+            if (metrics != null) {
+                metrics.markParseEnd();
+            }
+            return Response.success(jsonObject, parseCacheEntry(response));
         } catch (JSONException e) {
             Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
             return Response.error(new ParseError(e));
+        } catch (IOException e) {
+            Logger.w(TAG, "Failed: parseNetworkResponse: " + e.getMessage());
+            return Response.error(new ParseError(e));
         }
     }
 
     @Override
     protected void deliverResponse(JSONObject response) {
-        dataTransaction.getDataResponse().setJson(response);
+        if (response != null) {
+            dataTransaction.getDataResponse().setJson(response);
+        }
         dataListener.onSuccess(dataTransaction);
     }
 
@@ -70,7 +89,7 @@ public class JsonRequest extends VolleyRequest<JSONObject> {
     public Map<String, String> getHeaders() throws AuthFailureError {
 
         Map<String, String> headers = super.getHeaders();
-        headers.put("Content-Type", "application/json; charset=utf-8");
+        headers.put("Content-Type", getContentType(DataRequestBody.CONTENT_TYPE_JSON));
         headers.put("User-agent", System.getProperty("http.agent"));
         return headers;
     }
@@ -0,0 +1,343 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.utils.ConnectivityMonitor;
+import com.android.sdk.core.utils.Dispatchers;
+import com.android.sdk.core.utils.Logger;
+import com.android.volley.Request;
+import com.android.volley.VolleyError;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static com.android.sdk.core.utils.DesignByContract.require;
+import static com.android.sdk.core.utils.DesignByContract.requireAny;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Durable queue for requests that must reach the server eventually, eg: a POST made while the device is offline.
+ * <p/>
+ * <pre>
+ * String key = DataTransceiver.getsInstance().getOutbox().enqueue(dataRequest);
+ * </pre>
+ * Queued requests are written to an {@link OutboxJournal} in internal storage before they are sent, so they survive
+ * the process. A request is only sent once its journal record is on disk, a failed write is retried with a backoff.
+ * Every request carries an {@value #HEADER_IDEMPOTENCY_KEY} header that stays the same on every replay, the server
+ * uses it to drop duplicates of a request whose response was lost.
+ * <p/>
+ * The journal stores the request headers in plain text in the app's internal storage and replays them as they were,
+ * credentials included. Set a {@link HeaderPolicy} with
+ * {@link DataTransceiverConfig.Builder#setOutboxHeaderPolicy(HeaderPolicy)} to keep headers such as
+ * {@code Authorization} out of the journal and add current ones before every attempt.
+ * <p/>
+ * A request leaves the outbox once the server answered it, it stays when the failure is retryable
+ * ({@link DataRetryPolicy}) and is sent again when connectivity returns or on {@link #replay()}. At most
+ * {@link DataTransceiverConfig#getOutboxMaxConcurrentRequests()} outbox requests are in flight at a time.
+ * <p/>
+ * Enabled with {@link DataTransceiverConfig.Builder#setOutbox(boolean, int)}.
+ */
+public final class Outbox {
+    private static final String TAG = Outbox.class.getSimpleName();
+    public static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String JOURNAL_FILE_NAME = "move-sdk-outbox.journal";
+    static final long SYNC_RETRY_MIN_MS = 1000;
+    static final long SYNC_RETRY_MAX_MS = 60 * 1000;
+
+    /**
+     * Notified on the main thread when a request leaves the outbox.
+     */
+    public interface Listener {
+        /**
+         * The server accepted the request.
+         */
+        void onDelivered(String idempotencyKey, DataTransaction dataTransaction);
+
+        /**
+         * The server answered with an error that will not change on a retry, eg: 400, the request was dropped.
+         */
+        void onRejected(String idempotencyKey, DataTransaction dataTransaction);
+    }
+
+    /**
+     * Decides which headers are journaled, and adds the ones that are not before a request is sent.
+     */
+    public interface HeaderPolicy {
+        /**
+         * @return false to keep the header out of the journal, eg: {@code Authorization}. The
+         * {@value #HEADER_IDEMPOTENCY_KEY} header is always journaled.
+         */
+        boolean isJournaled(String name);
+
+        /**
+         * Called on a background thread before every attempt, including the first one, eg: to sign the request with
+         * the current access token.
+         */
+        void onSend(String idempotencyKey, DataRequest dataRequest);
+    }
+
+    private final DataTransceiver transceiver;
+    private final OutboxJournal journal;
+    private final ConnectivityMonitor connectivityMonitor;
+    private final int maxConcurrentRequests;
+    private final HeaderPolicy headerPolicy;
+    private final Executor executor = Dispatchers.newSerialExecutor();
+    private final Object pendingLock = new Object();
+    private List<OutboxJournal.Entry> pendingAppends = new ArrayList<>();
+    private boolean syncScheduled;
+    private volatile Listener listener;
+    private volatile int pendingCount;
+
+    // confined to the executor
+    private final Set<String> inFlight = new HashSet<>();
+    private long syncRetryMs;
+
+    private final Runnable syncRetryTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduleSync();
+        }
+    };
+
+    /**
+     * @param headerPolicy null to journal every header
+     */
+    Outbox(Context context, DataTransceiver transceiver, File journalFile, int maxConcurrentRequests,
+           @Nullable HeaderPolicy headerPolicy) {
+        requireNonNull(context, "context");
+        requireNonNull(transceiver, "transceiver");
+        requireNonNull(journalFile, "journalFile");
+        require(maxConcurrentRequests > 0, "maxConcurrentRequests > 0");
+        requireAny(headerPolicy);
+        this.transceiver = transceiver;
+        this.journal = new OutboxJournal(journalFile);
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.headerPolicy = headerPolicy;
+        this.connectivityMonitor = ConnectivityMonitor.getInstance(context);
+        connectivityMonitor.addListener(new ConnectivityMonitor.Listener() {
+            @Override
+            public void onConnectivityChanged(boolean connected, boolean metered) {
+                if (connected) {
+                    replay();
+                }
+            }
+
+            @Override
+            public void onNetworkActive() {
+                // requests that failed while online wait for a reconnect or an explicit replay
+            }
+        });
+        replay();
+    }
+
+    /**
+     * @param listener null to stop listening, requests that were sent before a listener is set are not reported
+     */
+    public void setListener(@Nullable Listener listener) {
+        requireAny(listener);
+        this.listener = listener;
+    }
+
+    /**
+     * Journals the request and sends it once the journal is on disk. Requests that arrive while the journal is being
+     * written are written together with a single fsync.
+     *
+     * @param dataRequest any request but a GET, the body is encoded on the calling thread
+     * @return the idempotency key of the request, the {@value #HEADER_IDEMPOTENCY_KEY} header if it was already set
+     */
+    public String enqueue(@NonNull DataRequest dataRequest) {
+        requireNonNull(dataRequest, "dataRequest");
+        require(dataRequest.getMethod() != Request.Method.GET, "GET requests are not queued");
+
+        String key = dataRequest.getHeaders() != null ? dataRequest.getHeaders().get(HEADER_IDEMPOTENCY_KEY) : null;
+        if (key == null) {
+            key = UUID.randomUUID().toString();
+            dataRequest.setHeader(HEADER_IDEMPOTENCY_KEY, key);
+        }
+        OutboxJournal.Entry entry = OutboxJournal.Entry.of(key, dataRequest);
+        if (headerPolicy != null && entry.headers != null) {
+            for (Iterator<String> names = entry.headers.keySet().iterator(); names.hasNext(); ) {
+                String name = names.next();
+                if (!HEADER_IDEMPOTENCY_KEY.equals(name) && !headerPolicy.isJournaled(name)) {
+                    names.remove();
+                }
+            }
+        }
+        synchronized (pendingLock) {
+            pendingAppends.add(entry);
+        }
+        scheduleSync();
+        return key;
+    }
+
+    /**
+     * Sends the queued requests that are not in flight yet, nothing is sent while the device is offline.
+     */
+    public void replay() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                journal.load();
+                pendingCount = journal.size();
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * @return number of requests in the outbox, including the ones in flight
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * The executor is called outside of {@code pendingLock}, the sync task takes that lock itself.
+     */
+    private void scheduleSync() {
+        synchronized (pendingLock) {
+            if (syncScheduled) {
+                return;
+            }
+            syncScheduled = true;
+        }
+        executor.execute(syncTask);
+    }
+
+    private final Runnable syncTask = new Runnable() {
+        @Override
+        public void run() {
+            List<OutboxJournal.Entry> appends;
+            synchronized (pendingLock) {
+                appends = pendingAppends;
+                pendingAppends = new ArrayList<>();
+                syncScheduled = false;
+            }
+            journal.load();
+            boolean synced = false;
+            try {
+                for (OutboxJournal.Entry entry : appends) {
+                    journal.append(entry);
+                }
+                journal.sync();
+                synced = true;
+            } catch (IOException e) {
+                // the records stay buffered in the journal and are written by the next sync
+                syncRetryMs = Math.min(Math.max(SYNC_RETRY_MIN_MS, syncRetryMs * 2), SYNC_RETRY_MAX_MS);
+                Logger.wf(TAG, "sync: journal not written, retrying in %d ms, %s", syncRetryMs, e.getMessage());
+                Dispatchers.postDelayed(syncRetryTask, syncRetryMs);
+            }
+            pendingCount = journal.size();
+            if (synced) {
+                syncRetryMs = 0;
+                dispatch();
+            }
+        }
+    };
+
+    /**
+     * Runs on the executor, only entries that are on disk are sent.
+     */
+    private void dispatch() {
+        if (!connectivityMonitor.isConnected()) {
+            Logger.df(TAG, "dispatch: offline, %d requests waiting", journal.size());
+            return;
+        }
+        for (OutboxJournal.Entry entry : journal.entries()) {
+            if (inFlight.size() >= maxConcurrentRequests) {
+                return;
+            }
+            if (journal.isSynced(entry.key) && inFlight.add(entry.key)) {
+                send(entry);
+            }
+        }
+    }
+
+    private void send(final OutboxJournal.Entry entry) {
+        Logger.df(TAG, "send: %s", entry.key);
+        DataRequest dataRequest = entry.toDataRequest();
+        if (headerPolicy != null) {
+            headerPolicy.onSend(entry.key, dataRequest);
+        }
+        transceiver.queueBytesRequest(dataRequest, new DataListener() {
+            @Override
+            public void onSuccess(DataTransaction dataTransaction) {
+                complete(entry.key, true);
+                Listener outboxListener = listener;
+                if (outboxListener != null) {
+                    outboxListener.onDelivered(entry.key, dataTransaction);
+                }
+            }
+
+            @Override
+            public void onFailure(DataTransaction dataTransaction) {
+                VolleyError error = dataTransaction.getDataResponse().getError();
+                // no error means the request failed fast, eg: the circuit is open
+                boolean rejected = error != null && !DataRetryPolicy.isRetryable(error);
+                complete(entry.key, rejected);
+                Listener outboxListener = listener;
+                if (rejected && outboxListener != null) {
+                    outboxListener.onRejected(entry.key, dataTransaction);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param acknowledged true if the request is done and leaves the journal, false to keep it for the next replay
+     */
+    private void complete(final String key, final boolean acknowledged) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                inFlight.remove(key);
+                if (!acknowledged) {
+                    Logger.df(TAG, "complete: %s kept for replay", key);
+                    return;
+                }
+                try {
+                    journal.ack(key);
+                } catch (IOException e) {
+                    Logger.wf(TAG, "complete: ack not journaled, %s", e.getMessage());
+                }
+                pendingCount = journal.size();
+                scheduleSync();
+                dispatch();
+            }
+        });
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the requests waiting in the {@link Outbox}.
+ * <p/>
+ * Every change is a record: {@code ADD} with the serialized request or {@code ACK} with the idempotency key of a
+ * request that no longer needs to be sent. Records are framed as {@code [length][crc32][payload]}, a torn record at the
+ * end of the file, left by a crash during a write, is detected by its checksum and dropped when the journal is loaded.
+ * <p/>
+ * Appends only fill an in-memory buffer, {@link #sync()} writes the buffer and fsyncs once for every record appended
+ * since the last sync. Once the records of acknowledged requests make up half of the file the live entries are
+ * rewritten to a new file that replaces the journal.
+ * <p/>
+ * Not thread safe, the {@link Outbox} confines it to its serial executor.
+ */
+final class OutboxJournal {
+    private static final String TAG = OutboxJournal.class.getSimpleName();
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final byte TYPE_ADD = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    static final int COMPACTION_MIN_ACKS = 32;
+
+    private final File file;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final Set<String> unsynced = new HashSet<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private FileOutputStream out;
+    private boolean loaded;
+    private int fileRecords;
+    private int ackRecords;
+    private int bufferedRecords;
+    private long syncedLength;
+
+    OutboxJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the journal on first use, a corrupt tail is truncated.
+     */
+    void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        long validLength = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            while (true) {
+                byte[] payload = readFrame(in);
+                if (payload == null) {
+                    break;
+                }
+                apply(payload);
+                validLength += 8 + payload.length;
+                fileRecords++;
+            }
+        } catch (IOException e) {
+            Logger.wf(TAG, "load: dropping records after %d bytes, %s", validLength, e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+        if (validLength < file.length()) {
+            truncate(validLength);
+        }
+        syncedLength = validLength;
+        Logger.df(TAG, "load: %d pending of %d records", entries.size(), fileRecords);
+    }
+
+    /**
+     * @return the pending entries, oldest first
+     */
+    List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * @return true once the ADD record of the entry is on disk
+     */
+    boolean isSynced(String key) {
+        return !unsynced.contains(key);
+    }
+
+    void append(Entry entry) throws IOException {
+        entries.put(entry.key, entry);
+        unsynced.add(entry.key);
+        writeFrame(buffer, encodeAdd(entry));
+        bufferedRecords++;
+    }
+
+    /**
+     * Marks the entry as done, unknown keys are ignored.
+     */
+    void ack(String key) throws IOException {
+        if (entries.remove(key) == null) {
+            return;
+        }
+        unsynced.remove(key);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(key.length() + 8);
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeByte(TYPE_ACK);
+        writeString(data, key);
+        writeFrame(buffer, payload.toByteArray());
+        bufferedRecords++;
+        ackRecords++;
+    }
+
+    /**
+     * Writes the buffered records and fsyncs the journal, compacts it afterwards if it is mostly acknowledged records.
+     * A failed write is truncated so that the records stay buffered for the next sync.
+     */
+    void sync() throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+        try {
+            if (out == null) {
+                out = new FileOutputStream(file, true);
+            }
+            buffer.writeTo(out);
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            close();
+            truncate(syncedLength);
+            throw e;
+        }
+        syncedLength += buffer.size();
+        fileRecords += bufferedRecords;
+        bufferedRecords = 0;
+        buffer.reset();
+        unsynced.clear();
+
+        // every ACK also makes its ADD record dead
+        if (ackRecords >= COMPACTION_MIN_ACKS && ackRecords * 4 >= fileRecords) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the pending entries to a temporary file that replaces the journal once it is on disk.
+     */
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Entry entry : entries.values()) {
+            writeFrame(records, encodeAdd(entry));
+        }
+        FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            records.writeTo(fos);
+            fos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        close();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("compact: rename failed " + temp);
+        }
+        Logger.df(TAG, "compact: %d records to %d", fileRecords, entries.size());
+        fileRecords = entries.size();
+        ackRecords = 0;
+        syncedLength = records.size();
+    }
+
+    void close() {
+        closeQuietly(out);
+        out = null;
+    }
+
+    private static void writeFrame(ByteArrayOutputStream target, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        DataOutputStream data = new DataOutputStream(target);
+        data.writeInt(payload.length);
+        data.writeInt((int) crc.getValue());
+        data.write(payload);
+        data.flush();
+    }
+
+    /**
+     * @return the payload or null at the end of the journal
+     */
+    @Nullable
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("invalid record length " + length);
+        }
+        int checksum = in.readInt();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("checksum mismatch");
+        }
+        return payload;
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = data.readByte();
+        if (type == TYPE_ADD) {
+            Entry entry = decodeAdd(data);
+            entries.put(entry.key, entry);
+        } else if (type == TYPE_ACK) {
+            entries.remove(readString(data));
+            ackRecords++;
+        } else {
+            throw new IOException("unknown record type " + type);
+        }
+    }
+
+    private static byte[] encodeAdd(Entry entry) throws IOException {
+        int bodyLength = entry.body != null ? entry.body.length : 0;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(bodyLength + entry.path.length() + 64);
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeByte(TYPE_ADD);
+        writeString(data, entry.key);
+        data.writeInt(entry.method.getValue());
+        writeString(data, entry.path);
+        writeMap(data, entry.headers);
+        writeMap(data, entry.params);
+        if (entry.body == null) {
+            data.writeInt(-1);
+        } else {
+            data.writeInt(entry.body.length);
+            data.write(entry.body);
+            writeString(data, entry.contentType);
+        }
+        data.writeBoolean(entry.compressBody);
+        data.flush();
+        return payload.toByteArray();
+    }
+
+    private static Entry decodeAdd(DataInputStream data) throws IOException {
+        String key = readString(data);
+        int methodValue = data.readInt();
+        DataRequestMethod.Method method = DataRequestMethod.Method.of(methodValue);
+        if (method == null) {
+            throw new IOException("unknown method " + methodValue);
+        }
+        String path = readString(data);
+        Map<String, String> headers = readMap(data);
+        Map<String, String> params = readMap(data);
+        byte[] body = null;
+        String contentType = null;
+        int bodyLength = data.readInt();
+        if (bodyLength >= 0) {
+            body = new byte[bodyLength];
+            data.readFully(body);
+            contentType = readString(data);
+        }
+        boolean compressBody = data.readBoolean();
+        return new Entry(key, method, path, headers, params, body, contentType, compressBody);
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(DataRequestBody.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, DataRequestBody.UTF_8);
+    }
+
+    private static void writeMap(DataOutputStream data, @Nullable Map<String, String> map) throws IOException {
+        if (map == null) {
+            data.writeInt(-1);
+            return;
+        }
+        data.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(data, entry.getKey());
+            writeString(data, entry.getValue());
+        }
+    }
+
+    @Nullable
+    private static Map<String, String> readMap(DataInputStream data) throws IOException {
+        int size = data.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            map.put(readString(data), readString(data));
+        }
+        return map;
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (FileNotFoundException e) {
+            Logger.w(TAG, "truncate: " + e.getMessage());
+        } catch (IOException e) {
+            Logger.w(TAG, "truncate: " + e.getMessage());
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Logger.w(TAG, "close: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A request as it is stored in the journal.
+     */
+    static final class Entry {
+        final String key;
+        final DataRequestMethod.Method method;
+        final String path;
+        final Map<String, String> headers;
+        final Map<String, String> params;
+        final byte[] body;
+        final String contentType;
+        final boolean compressBody;
+
+        Entry(String key, DataRequestMethod.Method method, String path, @Nullable Map<String, String> headers,
+              @Nullable Map<String, String> params, @Nullable byte[] body, @Nullable String contentType,
+              boolean compressBody) {
+            this.key = key;
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.params = params;
+            this.body = body;
+            this.contentType = contentType;
+            this.compressBody = compressBody;
+        }
+
+        /**
+         * Encodes the body of the request, the maps are copied so later changes to the request are not journaled.
+         */
+        static Entry of(String key, DataRequest dataRequest) {
+            DataRequestMethod.Method method = DataRequestMethod.Method.of(dataRequest.getMethod());
+            DataRequestBody requestBody = dataRequest.getRequestBody();
+            return new Entry(key, method, dataRequest.getPath(),
+                    dataRequest.getHeaders() != null ? new HashMap<>(dataRequest.getHeaders()) : null,
+                    dataRequest.getParams() != null ? new HashMap<>(dataRequest.getParams()) : null,
+                    requestBody != null ? requestBody.getBytes() : null,
+                    requestBody != null ? requestBody.getContentType() : null,
+                    dataRequest.isCompressBody());
+        }
+
+        DataRequest toDataRequest() {
+            DataRequestBody requestBody = body != null ? DataRequestBody.fromBytes(body, contentType) : null;
+            DataRequest dataRequest = DataRequest.restore(method, path, headers, params, requestBody);
+            dataRequest.setCompressBody(compressBody);
+            return dataRequest;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Caps the number of requests of a priority class that are in flight at the same time, so that low priority work
+ * can never occupy every network dispatcher. Requests over the cap wait here until a request of the same class finishes.
+ * <p/>
+ * Classes without a cap are never counted, they do not touch the lock.
+ */
+final class PriorityLimiter {
+
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final int[] limits;
+    private final int[] running;
+    private final ArrayDeque<InFlightRequest>[] waiting;
+
+    PriorityLimiter(int[] limits) {
+        int classes = DataRequest.Priority.values().length;
+        this.limits = new int[classes];
+        this.running = new int[classes];
+        this.waiting = new ArrayDeque[classes];
+        for (int i = 0; i < classes; i++) {
+            this.limits[i] = limits[i];
+            this.waiting[i] = new ArrayDeque<>();
+        }
+    }
+
+    boolean isLimited(DataRequest.Priority priority) {
+        return limits[priority.ordinal()] != UNLIMITED;
+    }
+
+    /**
+     * @return true if the request may be dispatched now, false if it was parked until a slot frees up.
+     */
+    synchronized boolean acquireOrPark(InFlightRequest inFlightRequest) {
+        int index = inFlightRequest.getPriority().ordinal();
+        if (running[index] < limits[index]) {
+            running[index]++;
+            return true;
+        }
+        waiting[index].add(inFlightRequest);
+        return false;
+    }
+
+    /**
+     * Frees the slot of a finished request.
+     *
+     * @return the next parked request of the same class, which now holds the slot, or null if none is waiting.
+     */
+    @Nullable
+    synchronized InFlightRequest release(DataRequest.Priority priority) {
+        int index = priority.ordinal();
+        running[index]--;
+        InFlightRequest next;
+        while ((next = waiting[index].poll()) != null) {
+            if (!next.isCompleted()) {
+                running[index]++;
+                return next;
+            }
+        }
+        return null;
+    }
+}
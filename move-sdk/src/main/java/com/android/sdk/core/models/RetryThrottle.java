@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Token bucket shared by every request of a {@link DataTransceiver} that stops retries when most requests fail,
+ * so that a degraded backend is not hit by a retry storm. Each failure takes a token, each success gives back
+ * a fraction of one, retries are allowed while more than half of the tokens are left.
+ * <p/>
+ * Tokens are kept in thousandths so the bucket can be updated with a single CAS.
+ */
+final class RetryThrottle {
+
+    private static final int SCALE = 1000;
+
+    private final int maxTokens;
+    private final int tokenRatio;
+    private final int threshold;
+    private final AtomicInteger tokens;
+
+    RetryThrottle(int maxTokens, float tokenRatio) {
+        this.maxTokens = maxTokens * SCALE;
+        this.tokenRatio = (int) (tokenRatio * SCALE);
+        this.threshold = this.maxTokens / 2;
+        this.tokens = new AtomicInteger(this.maxTokens);
+    }
+
+    void onSuccess() {
+        int current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + tokenRatio)));
+    }
+
+    void onFailure() {
+        int current;
+        do {
+            current = tokens.get();
+            if (current <= 0) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.max(0, current - SCALE)));
+    }
+
+    boolean isRetryAllowed() {
+        return tokens.get() > threshold;
+    }
+}
@@ -24,7 +24,9 @@
 
 package com.android.sdk.core.models;
 
+import static com.android.sdk.core.models.DataRequestMethod.Method.DELETE;
 import static com.android.sdk.core.models.DataRequestMethod.Method.GET;
+import static com.android.sdk.core.models.DataRequestMethod.Method.HEAD;
 
 /**
  * Created by deepu on 4/6/16.
@@ -39,5 +41,17 @@ public class SimpleDataRequestMethod extends DataRequestMethod {
         return new SimpleDataRequestMethod(GET);
     }
 
+    /**
+     * HEAD responses have no body, queue them with {@code DataTransceiver#queueBytesRequest} and read the headers
+     * from {@link DataResponse#getHeaders()}. Like every method other than GET they bypass the volley cache.
+     */
+    public static SimpleDataRequestMethod Head() {
+        return new SimpleDataRequestMethod(HEAD);
+    }
+
+    public static SimpleDataRequestMethod Delete() {
+        return new SimpleDataRequestMethod(DELETE);
+    }
+
 
 }
@@ -0,0 +1,452 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.utils.Logger;
+import com.android.volley.AuthFailureError;
+import com.android.volley.Network;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.Request;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.ByteArrayPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Network that streams the body of {@link FileRequest}s to disk, every other request goes to the wrapped network.
+ * <p/>
+ * Volley's {@code BasicNetwork} reads the whole body into a byte array, which does not work for large downloads.
+ * Bodies are copied through fixed size buffers that are reused between downloads, resumable downloads continue from
+ * their partial file with a Range request. Errors are reported the way
+ * {@code BasicNetwork} reports them, so retries and the circuit breaker treat downloads like any other request.
+ */
+final class StreamingNetwork implements Network {
+    private static final String TAG = StreamingNetwork.class.getSimpleName();
+
+    static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_ERROR_BODY_BYTES = 64 * 1024;
+    private static final int MAX_VALIDATOR_BYTES = 1024;
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String VALIDATOR_SUFFIX = ".part.validator";
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_IF_RANGE = "If-Range";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final ByteArrayPool BUFFER_POOL = new ByteArrayPool(4 * BUFFER_SIZE);
+
+    private final Network network;
+
+    StreamingNetwork(Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+        if (!(request instanceof FileRequest)) {
+            return network.performRequest(request);
+        }
+        return download((FileRequest) request, true);
+    }
+
+    /**
+     * Downloads of the same file never run at the same time, the transceiver queues them one after the other.
+     *
+     * @param resume false to ignore the partial file, used to start over once the server rejected its range
+     */
+    private NetworkResponse download(FileRequest request, boolean resume) throws VolleyError {
+        long startMs = SystemClock.elapsedRealtime();
+        File partial = partialFileOf(request.getTarget());
+        File validatorFile = validatorFileOf(request.getTarget());
+        String validator = resume && request.isResumable() && partial.length() > 0 ? readValidator(validatorFile) : null;
+        long offset = validator != null ? partial.length() : 0;
+        HttpURLConnection connection = null;
+        int statusCode = -1;
+        boolean complete = false;
+        try {
+            connection = open(request, offset, validator);
+            statusCode = connection.getResponseCode();
+            if (statusCode == -1) {
+                throw new IOException("Could not retrieve response code from HttpUrlConnection.");
+            }
+            Map<String, String> headers = headersOf(connection);
+            boolean resumed = offset > 0 && statusCode == HttpURLConnection.HTTP_PARTIAL && rangeStartOf(headers) == offset;
+            if (offset > 0 && statusCode == HTTP_RANGE_NOT_SATISFIABLE && rangeLengthOf(headers) == offset) {
+                // the partial file already holds the whole file, eg: the connection dropped before the rename
+                Logger.d(TAG, "download: partial file is complete");
+                rename(partial, request.getTarget());
+                complete = true;
+                request.setStreamedLength(offset);
+                request.reportProgress(offset, offset, true);
+                return new NetworkResponse(HttpURLConnection.HTTP_OK, new byte[0], headers, false,
+                        SystemClock.elapsedRealtime() - startMs);
+            }
+            if (statusCode < 200 || statusCode > 299 || (statusCode == HttpURLConnection.HTTP_PARTIAL && !resumed)) {
+                NetworkResponse response = new NetworkResponse(statusCode, readErrorBody(connection), headers, false,
+                        SystemClock.elapsedRealtime() - startMs);
+                if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED || statusCode == HttpURLConnection.HTTP_FORBIDDEN) {
+                    throw new AuthFailureError(response);
+                }
+                if (offset > 0 && (statusCode == HTTP_RANGE_NOT_SATISFIABLE || statusCode == HttpURLConnection.HTTP_PARTIAL)) {
+                    Logger.df(TAG, "download: range rejected with %d, restarting", statusCode);
+                    connection.disconnect();
+                    connection = null;
+                    deleteQuietly(partial);
+                    deleteQuietly(validatorFile);
+                    return download(request, false);
+                }
+                throw new ServerError(response);
+            }
+            if (resumed) {
+                Logger.df(TAG, "download: resuming at %d", offset);
+            } else {
+                offset = 0;
+                if (request.isResumable()) {
+                    writeValidator(validatorFile, headers);
+                }
+            }
+            long contentLength = contentLengthOf(headers);
+            long totalBytes = contentLength >= 0 ? offset + contentLength : -1;
+            long length = copy(connection.getInputStream(), partial, offset, totalBytes, request);
+            rename(partial, request.getTarget());
+            complete = true;
+            request.setStreamedLength(length);
+            request.reportProgress(length, length, true);
+            return new NetworkResponse(statusCode, new byte[0], headers, false, SystemClock.elapsedRealtime() - startMs);
+        } catch (SocketTimeoutException e) {
+            throw new TimeoutError();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Bad URL " + request.getUrl(), e);
+        } catch (IOException e) {
+            Logger.df(TAG, "download failed: %s", e.getMessage());
+            throw statusCode == -1 ? new NoConnectionError(e) : new NetworkError(e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            if (complete || !request.isResumable()) {
+                deleteQuietly(validatorFile);
+            }
+            if (!complete && !request.isResumable()) {
+                deleteQuietly(partial);
+            }
+        }
+    }
+
+    /**
+     * Accept-Encoding is left to {@link HttpURLConnection}, it only decodes gzip transparently when it added the
+     * header itself. Resumable downloads ask for the identity encoding so that byte ranges match the file on disk.
+     *
+     * @param offset    bytes already downloaded, requested with a Range header when greater than 0
+     * @param validator ETag or Last-Modified of the partial download, the server sends the whole file if it changed
+     */
+    private static HttpURLConnection open(FileRequest request, long offset, @Nullable String validator) throws IOException, AuthFailureError {
+        HttpURLConnection connection = (HttpURLConnection) new URL(request.getUrl()).openConnection();
+        connection.setConnectTimeout(request.getTimeoutMs());
+        connection.setReadTimeout(request.getTimeoutMs());
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!GzipCodec.HEADER_ACCEPT_ENCODING.equalsIgnoreCase(header.getKey())) {
+                connection.addRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        if (request.isResumable()) {
+            connection.setRequestProperty(GzipCodec.HEADER_ACCEPT_ENCODING, "identity");
+        }
+        if (offset > 0) {
+            connection.setRequestProperty(HEADER_RANGE, "bytes=" + offset + "-");
+            connection.setRequestProperty(HEADER_IF_RANGE, validator);
+        }
+        connection.setRequestMethod(methodName(request.getMethod()));
+        byte[] body = request.getBody();
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.addRequestProperty("Content-Type", request.getBodyContentType());
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        }
+        return connection;
+    }
+
+    private static String methodName(int method) {
+        switch (method) {
+            case Request.Method.POST:
+                return "POST";
+            case Request.Method.PUT:
+                return "PUT";
+            case Request.Method.DELETE:
+                return "DELETE";
+            case Request.Method.HEAD:
+                return "HEAD";
+            case Request.Method.PATCH:
+                return "PATCH";
+            default:
+                return "GET";
+        }
+    }
+
+    private static Map<String, String> headersOf(HttpURLConnection connection) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && !header.getValue().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+
+    private static byte[] readErrorBody(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getErrorStream();
+        if (in == null) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = BUFFER_POOL.getBuf(BUFFER_SIZE);
+        try {
+            int read;
+            while (body.size() < MAX_ERROR_BODY_BYTES && (read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        } finally {
+            BUFFER_POOL.returnBuf(buffer);
+            in.close();
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Copies the stream to a temporary file next to the target and renames it over the target once complete.
+     * Failing reads are thrown as {@link IOException}, failing writes as {@link VolleyError} since they are not
+     * network errors and must not be retried.
+     *
+     * @return number of bytes written
+     */
+    static long writeTo(InputStream in, File target) throws IOException, VolleyError {
+        File partial = partialFileOf(target);
+        boolean complete = false;
+        try {
+            long length = copy(in, partial, 0, -1, null);
+            rename(partial, target);
+            complete = true;
+            return length;
+        } finally {
+            if (!complete) {
+                deleteQuietly(partial);
+            }
+        }
+    }
+
+    /**
+     * @param offset  bytes already in the partial file, the stream is appended when greater than 0
+     * @param request reported progress to and checked for cancellation after every buffer, null for neither
+     * @return length of the partial file
+     */
+    private static long copy(InputStream in, File partial, long offset, long totalBytes, @Nullable FileRequest request)
+            throws IOException, VolleyError {
+        OutputStream out;
+        try {
+            out = new FileOutputStream(partial, offset > 0);
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new VolleyError(e);
+        }
+        byte[] buffer = BUFFER_POOL.getBuf(BUFFER_SIZE);
+        long length = offset;
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                try {
+                    out.write(buffer, 0, read);
+                } catch (IOException e) {
+                    throw new VolleyError(e);
+                }
+                length += read;
+                if (request != null) {
+                    if (request.isCanceled()) {
+                        throw new VolleyError("download cancelled");
+                    }
+                    request.reportProgress(length, totalBytes, false);
+                }
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new VolleyError(e);
+            }
+        } finally {
+            BUFFER_POOL.returnBuf(buffer);
+            closeQuietly(out);
+            closeQuietly(in);
+        }
+        return length;
+    }
+
+    private static void rename(File partial, File target) throws VolleyError {
+        if (!partial.renameTo(target)) {
+            throw new VolleyError("Could not rename " + partial + " to " + target);
+        }
+    }
+
+    static File partialFileOf(File target) {
+        return new File(target.getPath() + PARTIAL_SUFFIX);
+    }
+
+    private static File validatorFileOf(File target) {
+        return new File(target.getPath() + VALIDATOR_SUFFIX);
+    }
+
+    @Nullable
+    private static String readValidator(File validatorFile) {
+        if (!validatorFile.exists()) {
+            return null;
+        }
+        try {
+            InputStream in = new FileInputStream(validatorFile);
+            try {
+                byte[] buffer = new byte[(int) Math.min(validatorFile.length(), MAX_VALIDATOR_BYTES)];
+                int length = 0;
+                int read;
+                while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                    length += read;
+                }
+                return length > 0 ? new String(buffer, 0, length, DataRequestBody.UTF_8) : null;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Logger.wf(TAG, "readValidator: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the ETag, or else the Last-Modified date, of a new download. A download without either is restarted
+     * instead of resumed since a changed file could not be detected.
+     */
+    private static void writeValidator(File validatorFile, Map<String, String> headers) {
+        String validator = headers.get("ETag");
+        if (validator == null) {
+            validator = headers.get("Last-Modified");
+        }
+        if (validator == null) {
+            deleteQuietly(validatorFile);
+            return;
+        }
+        try {
+            OutputStream out = new FileOutputStream(validatorFile);
+            try {
+                out.write(validator.getBytes(DataRequestBody.UTF_8));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Logger.wf(TAG, "writeValidator: %s", e.getMessage());
+            deleteQuietly(validatorFile);
+        }
+    }
+
+    /**
+     * @return first byte of a {@code Content-Range: bytes first-last/length} header or -1
+     */
+    private static long rangeStartOf(Map<String, String> headers) {
+        String range = headers.get("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = range.indexOf('-');
+        try {
+            return dash > 6 ? Long.parseLong(range.substring(6, dash).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return complete length of a {@code Content-Range: bytes first-last/length} or {@code bytes *&#47;length} header or -1
+     */
+    private static long rangeLengthOf(Map<String, String> headers) {
+        String range = headers.get("Content-Range");
+        int slash = range != null ? range.lastIndexOf('/') : -1;
+        if (slash < 0 || !range.startsWith("bytes ")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(range.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long contentLengthOf(Map<String, String> headers) {
+        String length = headers.get("Content-Length");
+        if (length == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.wf(TAG, "could not delete %s", file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Logger.wf(TAG, "close failed: %s", e.getMessage());
+        }
+    }
+}
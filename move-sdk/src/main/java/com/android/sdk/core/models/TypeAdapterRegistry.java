@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.NonNull;
+
+import com.android.sdk.core.utils.Dispatchers;
+import com.android.sdk.core.utils.Logger;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.android.sdk.core.utils.DesignByContract.ensureNonNull;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Process wide cache of Gson {@link TypeAdapter}s keyed by the result type of an operation.
+ * <p/>
+ * Building a reflective adapter is expensive, adapters are built once and reused for every response.
+ * Use {@link #warmUp(Class[])} to build adapters for known model classes ahead of the first request.
+ */
+public final class TypeAdapterRegistry {
+    private static final String TAG = TypeAdapterRegistry.class.getSimpleName();
+
+    private final Gson gson;
+    private final ConcurrentMap<Class<?>, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    public TypeAdapterRegistry(@NonNull Gson gson) {
+        requireNonNull(gson, "gson");
+        this.gson = gson;
+    }
+
+    /**
+     * Returns the cached adapter for the given type, building it on first use.
+     *
+     * @param type model class
+     * @return TypeAdapter
+     */
+    @NonNull
+    public <T> TypeAdapter<T> getAdapter(@NonNull Class<T> type) {
+        requireNonNull(type, "type");
+
+        TypeAdapter<T> adapter = (TypeAdapter<T>) adapters.get(type);
+        if (adapter == null) {
+            adapter = gson.getAdapter(type);
+            TypeAdapter<T> existing = (TypeAdapter<T>) adapters.putIfAbsent(type, adapter);
+            if (existing != null) {
+                adapter = existing;
+            }
+        }
+
+        ensureNonNull(adapter, "adapter");
+        return adapter;
+    }
+
+    /**
+     * Registers a custom adapter for the given type, replacing any cached adapter.
+     *
+     * @param type    model class
+     * @param adapter adapter to use for the type
+     */
+    public <T> void registerAdapter(@NonNull Class<T> type, @NonNull TypeAdapter<T> adapter) {
+        requireNonNull(type, "type");
+        requireNonNull(adapter, "adapter");
+        adapters.put(type, adapter);
+    }
+
+    /**
+     * Parses the json leniently, the same way {@link Gson#fromJson(String, Class)} does, using the cached adapter.
+     *
+     * @throws JsonSyntaxException if the json is not a valid representation of the type
+     */
+    public <T> T fromJson(@NonNull String json, @NonNull Class<T> type) throws JsonSyntaxException {
+        requireNonNull(json, "json");
+
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        try {
+            return getAdapter(type).read(reader);
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Parses the json leniently from a stream, eg: a file in storage, without holding the whole document as a String.
+     * The reader is not closed.
+     *
+     * @throws JsonSyntaxException if the json is not a valid representation of the type
+     * @throws JsonIOException     if the reader fails
+     */
+    public <T> T fromJson(@NonNull Reader json, @NonNull Class<T> type) throws JsonSyntaxException, JsonIOException {
+        requireNonNull(json, "json");
+
+        JsonReader reader = new JsonReader(json);
+        reader.setLenient(true);
+        try {
+            return getAdapter(type).read(reader);
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Builds adapters for the given model classes on the {@link Dispatchers#worker()} pool.
+     *
+     * @param types model classes that are expected as operation results
+     */
+    public void warmUp(@NonNull final Class<?>... types) {
+        requireNonNull(types, "types");
+        if (types.length == 0) {
+            return;
+        }
+
+        Dispatchers.worker().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Class<?> type : types) {
+                    try {
+                        getAdapter(type);
+                    } catch (RuntimeException e) {
+                        Logger.w(TAG, "warmUp: unable to build adapter for " + type + ": " + e.getMessage());
+                    }
+                }
+                Logger.df(TAG, "warmUp: completed for %d types", types.length);
+            }
+        });
+    }
+}
@@ -24,15 +24,23 @@
 
 package com.android.sdk.core.models;
 
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.metrics.RequestMetrics;
 import com.android.sdk.core.utils.Logger;
 
 import com.android.volley.AuthFailureError;
+import com.android.volley.Cache;
 import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
 import com.android.volley.ParseError;
 import com.android.volley.Request;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 import static com.android.sdk.core.utils.DesignByContract.ensureNonNull;
@@ -45,45 +53,227 @@ public abstract class VolleyRequest<T> extends Request<T> {
     private static final String TAG = VolleyRequest.class.getSimpleName();
     protected DataTransaction dataTransaction;
     protected DataListener dataListener;
+    private boolean acceptGzip;
+    private int bodyCompressionThreshold = -1;
+    private byte[] encodedBody;
+    private boolean bodyGzipped;
+    private int decodedLength = -1;
 
     public VolleyRequest(final DataTransaction dataTransaction, final DataListener dataListener) {
-        super(dataTransaction.getDataRequest().getMethod(), dataTransaction.getDataRequest().getPath(), new Response.ErrorListener() {
-            @Override
-            public void onErrorResponse(VolleyError error) {
-                Logger.d(TAG, "onErrorResponse: " + error);
-                Error localError;
-                if (error.getCause() instanceof NetworkError) {
-                    localError = Error.CreateErrorMessageWithCode(Error.Code.NETWORK_ERROR, error);
-                } else if (error instanceof ParseError) {
-                    localError = Error.CreateErrorMessageWithCode(Error.Code.SERVICE_RESPONSE_ERROR, error);
-                } else {
-                    localError = Error.CreateErrorMessageWithCode(Error.Code.UNKNOWN, error);
-                }
-                ensureNonNull(localError);
-                dataTransaction.getDataResponse().setFailureMessage(localError);
-                dataListener.onFailure(dataTransaction);
-            }
-        });
+        super(dataTransaction.getDataRequest().getMethod(), dataTransaction.getDataRequest().getPath(), null);
         this.dataTransaction = dataTransaction;
         this.dataListener = dataListener;
+        if (getMethod() != Method.GET) {
+            // volley keys the cache by url only, any other method would replace or be answered by the GET entry
+            setShouldCache(false);
+        }
+    }
+
+    /**
+     * @param acceptGzip               advertise gzip support, the response is decoded in {@link #decodeBody(NetworkResponse)}
+     * @param bodyCompressionThreshold bodies of requests that opted in with {@link DataRequest#setCompressBody(boolean)}
+     *                                 are gzipped from this size on, -1 to never compress
+     */
+    void setCompression(boolean acceptGzip, int bodyCompressionThreshold) {
+        this.acceptGzip = acceptGzip;
+        this.bodyCompressionThreshold = bodyCompressionThreshold;
+    }
+
+    /**
+     * Decodes a gzip encoded response body, stacks that already decoded the body remove the Content-Encoding header.
+     * Called on the network thread, before {@link #parseCacheEntry(NetworkResponse)}.
+     *
+     * @return the decoded body
+     */
+    protected byte[] decodeBody(NetworkResponse response) throws IOException {
+        byte[] data = response.data;
+        if (data != null && data.length > 0 && GzipCodec.isGzipEncoded(response.headers)) {
+            data = GzipCodec.decode(data);
+        }
+        decodedLength = data != null ? data.length : 0;
+        RequestMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.setDecodedResponseBytes(decodedLength);
+        }
+        return data;
+    }
+
+    /**
+     * @return the metrics record of the request or null if metrics are not collected
+     */
+    @Nullable
+    public RequestMetrics getMetrics() {
+        return dataTransaction.getDataRequest().getMetrics();
+    }
+
+    /**
+     * Volley reports the progress of a request through markers, the ones that end a stage are recorded in the
+     * request metrics.
+     */
+    @Override
+    public void addMarker(String tag) {
+        super.addMarker(tag);
+        RequestMetrics metrics = getMetrics();
+        if (metrics == null) {
+            return;
+        }
+        switch (tag) {
+            case "network-queue-take":
+                metrics.markDispatch();
+                break;
+            case "network-http-complete":
+                metrics.markResponse();
+                break;
+            case "cache-hit":
+                metrics.setCacheHit(true);
+                metrics.markResponse();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Errors are handled here instead of through a {@code Response.ErrorListener}, which saves an allocation per request.
+     */
+    @Override
+    public void deliverError(VolleyError error) {
+        Logger.df(TAG, "onErrorResponse: %s", error.toString());
+        RequestMetrics metrics = getMetrics();
+        if (metrics != null && error.networkResponse != null) {
+            metrics.setStatusCode(error.networkResponse.statusCode);
+        }
+        Error localError;
+        if (error.getCause() instanceof NetworkError) {
+            localError = Error.CreateErrorMessageWithCode(Error.Code.NETWORK_ERROR, error);
+        } else if (error instanceof ParseError) {
+            localError = Error.CreateErrorMessageWithCode(Error.Code.SERVICE_RESPONSE_ERROR, error);
+        } else {
+            localError = Error.CreateErrorMessageWithCode(Error.Code.UNKNOWN, error);
+        }
+        ensureNonNull(localError);
+        dataTransaction.getDataResponse().setError(error);
+        dataTransaction.getDataResponse().setFailureMessage(localError);
+        ensureNonNull(dataTransaction.getDataResponse().getFailureMessage());
+        dataListener.onFailure(dataTransaction);
+    }
+
+
+    /**
+     * Parses the cache headers of the response and records them, along with the response size, on the transaction.
+     * Called on the network thread.
+     *
+     * @return cache entry for the response or null if the response must not be cached
+     */
+    protected Cache.Entry parseCacheEntry(NetworkResponse response) {
+        Cache.Entry entry = HttpHeaderParser.parseCacheHeaders(response);
+        DataResponse dataResponse = dataTransaction.getDataResponse();
+        dataResponse.setCacheEntry(entry);
+        dataResponse.setHeaders(response.headers);
+        int wireLength = response.data != null ? response.data.length : 0;
+        dataResponse.setContentLength(decodedLength >= 0 ? decodedLength : wireLength);
+        RequestMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.setStatusCode(response.statusCode);
+            metrics.setResponseBytes(wireLength);
+        }
+        return entry;
     }
 
+    /**
+     * Records whether the server answered 304 Not Modified.
+     *
+     * @return true if the response is a 304 without a body, there is nothing to parse then
+     */
+    protected boolean parseNotModified(NetworkResponse response) {
+        dataTransaction.getDataResponse().setNotModified(response.notModified);
+        return response.notModified && (response.data == null || response.data.length == 0);
+    }
+
+    /**
+     * Answers a response without a body to parse, eg: a 304. A 304 for a request volley has no cache entry for comes
+     * without data, which {@code DiskBasedCache} can not store, no cache entry is returned for it.
+     */
+    protected Response<T> emptyResponse(NetworkResponse response) {
+        Cache.Entry entry = parseCacheEntry(response);
+        return Response.success(null, response.data != null ? entry : null);
+    }
 
     @Override
     public byte[] getBody() throws AuthFailureError {
         if (dataTransaction.getDataRequest().hasBody()) {
-            return dataTransaction.getDataRequest().getBody();
+            return getEncodedBody();
         }
         return super.getBody();
     }
 
+    /**
+     * The {@link DataRequestBody} keeps the encoded bytes across attempts, {@link #getHeaders()} needs to know whether
+     * this attempt sends them compressed.
+     */
+    private byte[] getEncodedBody() {
+        if (encodedBody == null) {
+            DataRequest dataRequest = dataTransaction.getDataRequest();
+            DataRequestBody requestBody = dataRequest.getRequestBody();
+            if (requestBody == null) {
+                return null;
+            }
+            byte[] body = requestBody.getBytes();
+            encodedBody = body;
+            if (dataRequest.isCompressBody() && bodyCompressionThreshold >= 0 && body.length >= bodyCompressionThreshold) {
+                try {
+                    encodedBody = requestBody.getGzipBytes();
+                    bodyGzipped = true;
+                } catch (IOException e) {
+                    Logger.wf(TAG, "getBody: sending uncompressed body, %s", e.getMessage());
+                }
+            }
+            RequestMetrics metrics = getMetrics();
+            if (metrics != null) {
+                metrics.setRequestBodyBytes(body.length);
+                metrics.setRequestBytes(encodedBody.length);
+            }
+        }
+        return encodedBody;
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return getContentType(super.getBodyContentType());
+    }
+
+    /**
+     * @return content type of the request body or the given default if the request has no body
+     */
+    protected String getContentType(String defaultContentType) {
+        DataRequestBody requestBody = dataTransaction.getDataRequest().getRequestBody();
+        return requestBody != null ? requestBody.getContentType() : defaultContentType;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return dataTransaction.getDataRequest().getPriority().getVolleyPriority();
+    }
+
     @Override
     protected Map<String, String> getParams() throws AuthFailureError {
         return dataTransaction.getDataRequest().getParams();
     }
 
+    /**
+     * @return a copy of the request headers with the encoding headers, subclasses add to it
+     */
     @Override
     public Map<String, String> getHeaders() throws AuthFailureError {
-        return dataTransaction.getDataRequest().getHeaders();
+        DataRequest dataRequest = dataTransaction.getDataRequest();
+        Map<String, String> headers = dataRequest.getHeaders() != null
+                ? new HashMap<>(dataRequest.getHeaders()) : new HashMap<String, String>();
+        if (acceptGzip && !headers.containsKey(GzipCodec.HEADER_ACCEPT_ENCODING)) {
+            headers.put(GzipCodec.HEADER_ACCEPT_ENCODING, GzipCodec.GZIP);
+        }
+        if (dataRequest.hasBody() && getEncodedBody() != null && bodyGzipped) {
+            headers.put(GzipCodec.HEADER_CONTENT_ENCODING, GzipCodec.GZIP);
+        }
+        return headers;
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.models;
+
+import android.support.annotation.Nullable;
+
+import com.google.gson.TypeAdapter;
+
+import java.io.File;
+
+/**
+ * Creates the volley request for a response type. Two factories are equal when they produce the same response type,
+ * which is what allows identical requests to share one network call.
+ */
+abstract class VolleyRequestFactory {
+
+    static final VolleyRequestFactory JSON = new VolleyRequestFactory() {
+        @Override
+        VolleyRequest create(DataTransaction transaction, DataListener listener) {
+            return new JsonRequest(transaction, listener);
+        }
+
+        @Override
+        String getResponseType() {
+            return "json";
+        }
+    };
+
+    static final VolleyRequestFactory BYTES = new VolleyRequestFactory() {
+        @Override
+        VolleyRequest create(DataTransaction transaction, DataListener listener) {
+            return new BytesRequest(transaction, listener);
+        }
+
+        @Override
+        String getResponseType() {
+            return "bytes";
+        }
+    };
+
+    static final VolleyRequestFactory STRING = new VolleyRequestFactory() {
+        @Override
+        VolleyRequest create(DataTransaction transaction, DataListener listener) {
+            return new StringRequest(transaction, listener);
+        }
+
+        @Override
+        String getResponseType() {
+            return "string";
+        }
+    };
+
+    static VolleyRequestFactory file(File target, boolean resumable, @Nullable DownloadProgressListener progressListener,
+                                     long progressIntervalMs) {
+        return new FileRequestFactory(target, resumable, progressListener, progressIntervalMs);
+    }
+
+    static <T> VolleyRequestFactory gson(@Nullable TypeAdapter<T> typeAdapter) {
+        return new GsonRequestFactory<>(typeAdapter);
+    }
+
+    abstract VolleyRequest create(DataTransaction transaction, DataListener listener);
+
+    /**
+     * @return identifies the response type, part of the key of coalesced requests
+     */
+    abstract String getResponseType();
+
+    private static final class GsonRequestFactory<T> extends VolleyRequestFactory {
+        private final TypeAdapter<T> typeAdapter;
+
+        GsonRequestFactory(TypeAdapter<T> typeAdapter) {
+            this.typeAdapter = typeAdapter;
+        }
+
+        @Override
+        VolleyRequest create(DataTransaction transaction, DataListener listener) {
+            return new GsonRequest<>(transaction, typeAdapter, listener);
+        }
+
+        @Override
+        String getResponseType() {
+            return typeAdapter == null ? "gson:none" : "gson:" + System.identityHashCode(typeAdapter);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GsonRequestFactory && ((GsonRequestFactory) o).typeAdapter == typeAdapter;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(typeAdapter);
+        }
+    }
+
+    /**
+     * Downloads only share a call when they write the same file and report progress to the same listener.
+     */
+    private static final class FileRequestFactory extends VolleyRequestFactory {
+        private final File target;
+        private final boolean resumable;
+        private final DownloadProgressListener progressListener;
+        private final long progressIntervalMs;
+
+        FileRequestFactory(File target, boolean resumable, DownloadProgressListener progressListener, long progressIntervalMs) {
+            this.target = target;
+            this.resumable = resumable;
+            this.progressListener = progressListener;
+            this.progressIntervalMs = progressIntervalMs;
+        }
+
+        @Override
+        VolleyRequest create(DataTransaction transaction, DataListener listener) {
+            return new FileRequest(transaction, target, resumable, progressListener, progressIntervalMs, listener);
+        }
+
+        @Override
+        String getResponseType() {
+            return "file:" + target.getAbsolutePath() + (progressListener == null ? "" : ":" + System.identityHashCode(progressListener));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileRequestFactory)) {
+                return false;
+            }
+            FileRequestFactory other = (FileRequestFactory) o;
+            return other.target.equals(target) && other.resumable == resumable && other.progressListener == progressListener;
+        }
+
+        @Override
+        public int hashCode() {
+            return target.hashCode();
+        }
+    }
+}
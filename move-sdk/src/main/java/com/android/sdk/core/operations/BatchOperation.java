@@ -0,0 +1,373 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.operations;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.models.FailureMessage;
+import com.android.sdk.core.utils.Dispatchers;
+import com.android.sdk.core.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static com.android.sdk.core.utils.DesignByContract.require;
+import static com.android.sdk.core.utils.DesignByContract.requireAny;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Executes a group of operations with bounded concurrency and reports one aggregate result.
+ * <p/>
+ * At most {@code parallelism} operations are in execution at any time, the rest wait for a slot, so a large batch does
+ * not flood the request queue ahead of user initiated requests. Per item results are reported through an optional
+ * {@link ItemListener}. In {@link Mode#FAIL_FAST} the first failure cancels the remaining operations and is reported
+ * through {@link OperationListener#onFailure(FailureMessage)}, in {@link Mode#COLLECT_ALL} the batch always completes
+ * with a {@link Result} holding every result and failure.
+ * An operation that reports more than one result, eg: a {@link ServiceOperation} revalidating a cached response, is
+ * counted once, with its first result.
+ * <p/>
+ * The operations must not be in execution when the batch is executed. {@link #cancel()} cancels the whole group.
+ */
+public class BatchOperation<T> implements ExecutorOperation<BatchOperation.Result<T>> {
+
+    private static final String TAG = BatchOperation.class.getSimpleName();
+
+    public enum Mode {
+        FAIL_FAST,
+        COLLECT_ALL
+    }
+
+    public interface ItemListener<T> {
+
+        void onItemSuccess(int index, T result);
+
+        void onItemFailure(int index, FailureMessage failureMessage);
+    }
+
+    private final List<Operation<T>> operations;
+    private final int parallelism;
+    private final Mode mode;
+    private ItemListener<T> itemListener;
+
+    private final Object lock = new Object();
+    private boolean running;
+    private boolean finished;
+    private int generation;
+    private int nextIndex;
+    private int completedCount;
+    private boolean[] inExecution;
+    private Object[] results;
+    private FailureMessage[] failures;
+
+    /**
+     * @param operations  operations to execute, in order
+     * @param parallelism maximum number of operations in execution at the same time
+     * @param mode        {@link Mode#FAIL_FAST} or {@link Mode#COLLECT_ALL}
+     */
+    public BatchOperation(@NonNull List<? extends Operation<? extends T>> operations, int parallelism, @NonNull Mode mode) {
+        requireNonNull(operations, "operations");
+        require(parallelism > 0, "parallelism > 0");
+        requireNonNull(mode, "mode");
+
+        List<Operation<T>> copy = new ArrayList<>(operations.size());
+        for (Operation<? extends T> operation : operations) {
+            requireNonNull(operation, "operation");
+            copy.add((Operation<T>) operation);
+        }
+        this.operations = Collections.unmodifiableList(copy);
+        this.parallelism = parallelism;
+        this.mode = mode;
+    }
+
+    /**
+     * @param itemListener notified for every item, on the delivery executor of the batch
+     */
+    public void setItemListener(@Nullable ItemListener<T> itemListener) {
+        requireAny(itemListener);
+        this.itemListener = itemListener;
+    }
+
+    @Override
+    public void execute(OperationListener<Result<T>> operationListener) {
+        execute(operationListener, Dispatchers.main());
+    }
+
+    @Override
+    public void execute(final OperationListener<Result<T>> operationListener, final Executor deliveryExecutor) {
+        requireNonNull(operationListener, "operationListener");
+        requireNonNull(deliveryExecutor, "deliveryExecutor");
+
+        int size = operations.size();
+        synchronized (lock) {
+            if (running) {
+                Logger.w(TAG, "execute: WILL NOT EXECUTE, This operation is currently in execution");
+                return;
+            }
+            running = true;
+            finished = false;
+            generation++;
+            nextIndex = 0;
+            completedCount = 0;
+            inExecution = new boolean[size];
+            results = new Object[size];
+            failures = new FailureMessage[size];
+        }
+
+        if (size == 0) {
+            int current = finish();
+            deliverSuccess(operationListener, deliveryExecutor, current, new Result<T>(new Object[0], new FailureMessage[0]));
+            return;
+        }
+
+        for (int i = 0; i < Math.min(parallelism, size); i++) {
+            executeNext(operationListener, deliveryExecutor);
+        }
+    }
+
+    private void executeNext(final OperationListener<Result<T>> operationListener, final Executor deliveryExecutor) {
+        final int index;
+        synchronized (lock) {
+            if (finished || nextIndex >= operations.size()) {
+                return;
+            }
+            index = nextIndex++;
+            inExecution[index] = true;
+        }
+
+        OperationListener<T> itemListener = new OperationListener<T>() {
+            @Override
+            public void onSuccess(T result) {
+                onItemCompleted(index, result, null, operationListener, deliveryExecutor);
+            }
+
+            @Override
+            public void onFailure(FailureMessage failureMessage) {
+                onItemCompleted(index, null, failureMessage, operationListener, deliveryExecutor);
+            }
+        };
+        Operation<T> operation = operations.get(index);
+        if (operation instanceof ExecutorOperation) {
+            ((ExecutorOperation<T>) operation).execute(itemListener, Dispatchers.immediate());
+        } else {
+            operation.execute(itemListener);
+        }
+    }
+
+    private void onItemCompleted(final int index, @Nullable final T result, @Nullable final FailureMessage failureMessage,
+                                 final OperationListener<Result<T>> operationListener, final Executor deliveryExecutor) {
+        final boolean failFast;
+        final boolean batchCompleted;
+        final int current;
+        Result<T> batchResult = null;
+        synchronized (lock) {
+            if (finished || !inExecution[index]) {
+                // only the first completion of an item counts, eg: a stale while revalidate operation succeeds twice
+                return;
+            }
+            current = generation;
+            inExecution[index] = false;
+            completedCount++;
+            results[index] = result;
+            failures[index] = failureMessage;
+            failFast = failureMessage != null && mode == Mode.FAIL_FAST;
+            batchCompleted = failFast || completedCount == operations.size();
+            if (batchCompleted && !failFast) {
+                batchResult = new Result<>(results, failures);
+            }
+        }
+
+        deliverItem(index, result, failureMessage, deliveryExecutor, current);
+
+        if (failFast) {
+            Logger.df(TAG, "onItemCompleted: failing fast on item %d", index);
+            cancelInExecution(false);
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCurrent(current)) {
+                        operationListener.onFailure(failureMessage);
+                    }
+                }
+            });
+        } else if (batchCompleted) {
+            finish();
+            deliverSuccess(operationListener, deliveryExecutor, current, batchResult);
+        } else {
+            executeNext(operationListener, deliveryExecutor);
+        }
+    }
+
+    private void deliverItem(final int index, @Nullable final T result, @Nullable final FailureMessage failureMessage,
+                             Executor deliveryExecutor, final int current) {
+        final ItemListener<T> listener = itemListener;
+        if (listener == null) {
+            return;
+        }
+        deliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCurrent(current)) {
+                    return;
+                }
+                if (failureMessage != null) {
+                    listener.onItemFailure(index, failureMessage);
+                } else {
+                    listener.onItemSuccess(index, result);
+                }
+            }
+        });
+    }
+
+    private void deliverSuccess(final OperationListener<Result<T>> operationListener, Executor deliveryExecutor,
+                                final int current, final Result<T> result) {
+        deliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(current)) {
+                    operationListener.onSuccess(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return false once the execution was cancelled or a new one started, its queued callbacks are dropped
+     */
+    private boolean isCurrent(int current) {
+        synchronized (lock) {
+            return generation == current;
+        }
+    }
+
+    private int finish() {
+        synchronized (lock) {
+            finished = true;
+            running = false;
+            return generation;
+        }
+    }
+
+    /**
+     * Marks the batch finished and cancels every operation in execution, operations that did not start are skipped.
+     *
+     * @param dropCallbacks drop the callbacks that are already queued on the delivery executor
+     */
+    private void cancelInExecution(boolean dropCallbacks) {
+        List<Operation<T>> toCancel = new ArrayList<>();
+        synchronized (lock) {
+            if (dropCallbacks) {
+                generation++;
+            }
+            finished = true;
+            running = false;
+            for (int i = 0; i < inExecution.length; i++) {
+                if (inExecution[i]) {
+                    inExecution[i] = false;
+                    toCancel.add(operations.get(i));
+                }
+            }
+        }
+        for (Operation<T> operation : toCancel) {
+            operation.cancel();
+        }
+    }
+
+    /**
+     * Cancels the whole group, no further callbacks are delivered.
+     *
+     * @return true if the batch was in execution, false otherwise.
+     */
+    @Override
+    public boolean cancel() {
+        synchronized (lock) {
+            if (!running || finished) {
+                Logger.d(TAG, "cancel :operation not in execution");
+                return false;
+            }
+        }
+        cancelInExecution(true);
+        Logger.df(TAG, "operation cancelled: %s", this);
+        return true;
+    }
+
+    /**
+     * Results of a batch, by index of the operation in the batch.
+     */
+    public static final class Result<T> {
+        private final Object[] results;
+        private final FailureMessage[] failures;
+
+        Result(Object[] results, FailureMessage[] failures) {
+            this.results = Arrays.copyOf(results, results.length);
+            this.failures = Arrays.copyOf(failures, failures.length);
+        }
+
+        public int size() {
+            return results.length;
+        }
+
+        public boolean isSuccess(int index) {
+            return failures[index] == null;
+        }
+
+        @Nullable
+        public T getResult(int index) {
+            return (T) results[index];
+        }
+
+        @Nullable
+        public FailureMessage getFailure(int index) {
+            return failures[index];
+        }
+
+        /**
+         * @return results of the successful operations, in batch order
+         */
+        public List<T> getResults() {
+            List<T> list = new ArrayList<>(results.length);
+            for (int i = 0; i < results.length; i++) {
+                if (failures[i] == null) {
+                    list.add((T) results[i]);
+                }
+            }
+            return list;
+        }
+
+        public int getFailureCount() {
+            int count = 0;
+            for (FailureMessage failure : failures) {
+                if (failure != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.operations;
+
+/**
+ * Decides whether a {@link ServiceOperation} may answer from the in memory {@link ResultCache}.
+ */
+public enum CachePolicy {
+    /**
+     * Always goes to the network, results are not cached.
+     */
+    NETWORK_ONLY,
+    /**
+     * Delivers a fresh cached result when available, otherwise goes to the network and caches the result.
+     */
+    CACHE_ELSE_NETWORK,
+    /**
+     * Delivers the cached result right away, even if it is stale, and revalidates it in the background using
+     * If-None-Match / If-Modified-Since. A second, fresher result is delivered to
+     * {@link OperationListener#onSuccess(Object)} only if the content changed. Failures while revalidating are
+     * not reported since a result was already delivered. Without a cached result this behaves like
+     * {@link #CACHE_ELSE_NETWORK}.
+     */
+    STALE_WHILE_REVALIDATE
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.operations;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.android.sdk.core.Core;
+import com.android.sdk.core.models.DataListener;
+import com.android.sdk.core.models.DataRequest;
+import com.android.sdk.core.models.DataRetryPolicy;
+import com.android.sdk.core.models.DataTransaction;
+import com.android.sdk.core.models.DataTransceiver;
+import com.android.sdk.core.models.DownloadProgressListener;
+import com.android.sdk.core.models.FileRequest;
+import com.android.sdk.core.models.SimpleDataRequestMethod;
+import com.android.sdk.core.storage.StorageUtil;
+import com.android.sdk.core.utils.Dispatchers;
+import com.android.sdk.core.utils.Logger;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static com.android.sdk.core.utils.DesignByContract.ensureNonEmptyString;
+import static com.android.sdk.core.utils.DesignByContract.ensureNonNull;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+import static com.android.sdk.core.utils.DesignByContract.requireShouldOverRide;
+
+/**
+ * Base operation for downloading a file into internal storage, the downloaded file is the result.
+ * <p/>
+ * The body is streamed to disk through fixed size buffers, it is never held in memory. An interrupted or cancelled
+ * download is continued with an HTTP Range request the next time the operation is executed, unless
+ * {@link #isResumable()} is overridden. Pass a {@link DownloadListener} to be notified about the progress.
+ */
+public abstract class DownloadOperation implements ExecutorOperation<File> {
+
+    private static final String TAG = DownloadOperation.class.getSimpleName();
+
+    private volatile DataRequest dataRequest;
+
+    /**
+     * Return your service end point. This will get appended to the base url provided through {@code Core#init} or by overriding {@code #getBaseUrl()}
+     *
+     * @return NON-NULL String
+     */
+    protected abstract String getEndPoint();
+
+    /**
+     * @return name of the file in internal storage that the download is written to, an existing file is replaced
+     * once the download completed
+     */
+    protected abstract String getFileName();
+
+    /**
+     * Override to download with another method or to add headers and params, a GET request by default.
+     */
+    protected DataRequest getDataRequest(@NonNull String path, @NonNull Map<String, String> headers, @NonNull Map<String, String> params) {
+        return DataRequest.createSimpleDataRequest(SimpleDataRequestMethod.Get(), path, headers, params);
+    }
+
+    /**
+     * Executes the operation, the listener is invoked on the main thread.
+     */
+    @Override
+    public void execute(final OperationListener<File> operationListener) {
+        execute(operationListener, Dispatchers.main());
+    }
+
+    /**
+     * Executes the operation, the listener and its progress callbacks are invoked on the given executor.
+     *
+     * @param operationListener listener to be notified with the downloaded file, a {@link DownloadListener} is also
+     *                          notified about the progress
+     * @param deliveryExecutor  {@link Dispatchers#main()}, {@link Dispatchers#worker()}, {@link Dispatchers#immediate()} or your own executor
+     */
+    @Override
+    public void execute(final OperationListener<File> operationListener, final Executor deliveryExecutor) {
+        requireNonNull(operationListener, "operationListener");
+        requireNonNull(deliveryExecutor, "deliveryExecutor");
+
+        if (dataRequest != null) {
+            Logger.w(TAG, "execute: WILL NOT EXECUTE, This operation is currently in execution");
+            return;
+        }
+        String path = generateURl();
+        Logger.df(TAG, "path: %s", path);
+        File target = getTargetFile();
+
+        final DataRequest request = getDataRequest(path, new HashMap<String, String>(), new HashMap<String, String>());
+        ensureNonNull(request, "dataRequest");
+        DataRequest.Priority priority = getPriority();
+        if (priority != null) {
+            request.setPriority(priority);
+        }
+        DataRetryPolicy retryPolicy = getRetryPolicy();
+        if (retryPolicy != null) {
+            request.setRetryPolicy(retryPolicy);
+        }
+        dataRequest = request;
+
+        DownloadProgressListener progressListener = null;
+        if (operationListener instanceof DownloadListener) {
+            final DownloadListener downloadListener = (DownloadListener) operationListener;
+            progressListener = new DownloadProgressListener() {
+                @Override
+                public void onProgress(final long bytesDownloaded, final long totalBytes) {
+                    if (request.isCancelled()) {
+                        return;
+                    }
+                    deliveryExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!request.isCancelled()) {
+                                downloadListener.onProgress(bytesDownloaded, totalBytes);
+                            }
+                        }
+                    });
+                }
+            };
+        }
+
+        DataListener dataListener = new DataListener() {
+            @Override
+            public void onSuccess(final DataTransaction dataTransaction) {
+                final File file = (File) dataTransaction.getDataResponse().getResult();
+                deliveryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!complete(request)) {
+                            Logger.df(TAG, "onSuccess: ignoring cancelled operation %s", DownloadOperation.this);
+                            return;
+                        }
+                        operationListener.onSuccess(file);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final DataTransaction dataTransaction) {
+                Logger.df(TAG, "onFailure: %s", dataTransaction.getDataResponse().getFailureMessage());
+                deliveryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!complete(request)) {
+                            Logger.df(TAG, "onFailure: ignoring cancelled operation %s", DownloadOperation.this);
+                            return;
+                        }
+                        operationListener.onFailure(dataTransaction.getDataResponse().getFailureMessage());
+                    }
+                });
+            }
+        };
+
+        DataTransceiver.getsInstance().queueFileRequest(request, target, isResumable(), progressListener,
+                getProgressIntervalMs(), dataListener);
+    }
+
+    /**
+     * Ends the execution of the request, on the delivery executor.
+     *
+     * @return false if the request was cancelled, its result must not be delivered then
+     */
+    private boolean complete(DataRequest request) {
+        if (request.isCancelled()) {
+            return false;
+        }
+        dataRequest = null;
+        return true;
+    }
+
+    /**
+     * @return the file in internal storage the download is written to
+     */
+    public File getTargetFile() {
+        return StorageUtil.getInternalStorageFile(Core.getInstance().getApplicationContext(), getFileName());
+    }
+
+    /**
+     * Override to keep the partial file of a failed or cancelled download and continue it on the next execution,
+     * true by default. The server has to send an ETag or Last-Modified header for a download to be resumed.
+     */
+    protected boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * Override to change how often progress is reported.
+     *
+     * @return minimum time between two progress callbacks
+     */
+    protected long getProgressIntervalMs() {
+        return FileRequest.DEFAULT_PROGRESS_INTERVAL_MS;
+    }
+
+    /**
+     * Override to schedule the download ahead of or behind other requests, eg: {@link DataRequest.Priority#PREFETCH}.
+     *
+     * @return priority of the download or null for the default
+     */
+    @Nullable
+    protected DataRequest.Priority getPriority() {
+        return null;
+    }
+
+    /**
+     * Override to change how the download is retried, a retried resumable download continues where it stopped.
+     *
+     * @return retry policy of the download or null for the default from the {@code DataTransceiverConfig}
+     */
+    @Nullable
+    protected DataRetryPolicy getRetryPolicy() {
+        return null;
+    }
+
+    /**
+     * Cancels the download, the listener is not called afterwards. The partial file of a resumable download is kept
+     * and the operation can be executed again to continue it.
+     *
+     * @return true if the operation was cancelled, false if it was not in execution.
+     */
+    @Override
+    public boolean cancel() {
+        final DataRequest request = dataRequest;
+        if (request != null && !request.isCancelled()) {
+            dataRequest = null;
+            request.cancel();
+            Logger.df(TAG, "operation cancelled: %s", this);
+            return true;
+        }
+        Logger.d(TAG, "cancel: operation not in execution");
+        return false;
+    }
+
+    private String generateURl() {
+        ensureNonEmptyString(getBaseUrl(), "baseUrl");
+        ensureNonEmptyString(getEndPoint(), "Url endPoint");
+
+        return new StringBuilder(getBaseUrl()).append(getEndPoint()).toString();
+    }
+
+    /**
+     * Override when necessary, it is recommended not to override this method but provide your base URL in @{@code com.android.sdk.core.Core#init}
+     */
+    protected String getBaseUrl() {
+        String url = Core.getInstance().getBaseUrl();
+        if (TextUtils.isEmpty(url)) {
+            requireShouldOverRide("Looks like a BaseURL is not defined in Core, either provide a base URL in core or override getBaseUrl() in your operation");
+        }
+        return url;
+    }
+}
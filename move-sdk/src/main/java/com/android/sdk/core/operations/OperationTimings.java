@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.operations;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent by an operation in each stage of its last execution.
+ * <p/>
+ * Stages are: network (execute until the response is received), parse queue (waiting for a worker thread),
+ * parse (json to model) and delivery (waiting for the delivery executor). A stage that did not happen reports 0.
+ */
+public final class OperationTimings {
+
+    private volatile long executeNanos;
+    private volatile long responseNanos;
+    private volatile long parseStartNanos;
+    private volatile long parseEndNanos;
+    private volatile long deliveryNanos;
+
+    OperationTimings() {
+    }
+
+    void markExecute() {
+        executeNanos = System.nanoTime();
+    }
+
+    void markResponse() {
+        responseNanos = System.nanoTime();
+    }
+
+    void markParseStart() {
+        parseStartNanos = System.nanoTime();
+    }
+
+    void markParseEnd() {
+        parseEndNanos = System.nanoTime();
+    }
+
+    void markDelivery() {
+        deliveryNanos = System.nanoTime();
+    }
+
+    public long getNetworkTimeMs() {
+        return elapsedMs(executeNanos, responseNanos);
+    }
+
+    public long getParseQueueTimeMs() {
+        return elapsedMs(responseNanos, parseStartNanos);
+    }
+
+    public long getParseTimeMs() {
+        return elapsedMs(parseStartNanos, parseEndNanos);
+    }
+
+    public long getDeliveryTimeMs() {
+        return elapsedMs(parseEndNanos != 0 ? parseEndNanos : responseNanos, deliveryNanos);
+    }
+
+    public long getTotalTimeMs() {
+        return elapsedMs(executeNanos, deliveryNanos);
+    }
+
+    private static long elapsedMs(long startNanos, long endNanos) {
+        if (startNanos == 0 || endNanos == 0 || endNanos < startNanos) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder("network: ").append(getNetworkTimeMs())
+                .append("ms parseQueue: ").append(getParseQueueTimeMs())
+                .append("ms parse: ").append(getParseTimeMs())
+                .append("ms delivery: ").append(getDeliveryTimeMs())
+                .append("ms total: ").append(getTotalTimeMs()).append("ms");
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.operations;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.android.sdk.core.utils.Logger;
+import com.android.volley.Cache;
+
+import static com.android.sdk.core.utils.DesignByContract.require;
+import static com.android.sdk.core.utils.DesignByContract.requireAny;
+import static com.android.sdk.core.utils.DesignByContract.requireNonEmptyString;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * In memory LRU cache of parsed operation results, bounded by the approximate size of the results in bytes.
+ * <p/>
+ * Results are cached by {@link ServiceOperation} for the {@link CachePolicy#CACHE_ELSE_NETWORK} policy, keyed by
+ * result type and request identity. Freshness follows the HTTP cache headers of the response and falls back to the
+ * operation TTL when the response has none. Responses marked no-cache or no-store are never cached.
+ */
+public final class ResultCache {
+    private static final String TAG = ResultCache.class.getSimpleName();
+
+    private final LruCache<String, CachedResult> cache;
+
+    /**
+     * @param maxSizeBytes approximate maximum size of the cached results in bytes
+     */
+    public ResultCache(int maxSizeBytes) {
+        require(maxSizeBytes > 0, "maxSizeBytes > 0");
+        cache = new LruCache<String, CachedResult>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(String key, CachedResult value) {
+                return value.weight;
+            }
+        };
+    }
+
+    /**
+     * @return the default cache, sized to 1/16 of the heap available to the application
+     */
+    public static ResultCache createDefault() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        return new ResultCache((int) Math.min(maxMemory / 16, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return the cached result or null if there is no result for the key or it is expired
+     */
+    @Nullable
+    public CachedResult get(@NonNull String key) {
+        return get(key, false);
+    }
+
+    /**
+     * @param allowStale true to also return results that are past their freshness lifetime
+     * @return the cached result or null if there is no result for the key
+     */
+    @Nullable
+    public CachedResult get(@NonNull String key, boolean allowStale) {
+        requireNonEmptyString(key, "key");
+        CachedResult cachedResult = cache.get(key);
+        if (cachedResult != null && !allowStale && cachedResult.isExpired()) {
+            cache.remove(key);
+            return null;
+        }
+        return cachedResult;
+    }
+
+    /**
+     * Caches the result if the cache headers allow it.
+     *
+     * @param cacheEntry     cache directives of the response, null if the response must not be cached
+     * @param defaultTtlMs   time to live used when the response carries no freshness information, 0 to not cache it
+     * @param weightBytes    approximate size of the result in bytes
+     * @return true if the result was cached
+     */
+    public boolean put(@NonNull String key, @NonNull Object result, @Nullable Cache.Entry cacheEntry, long defaultTtlMs, int weightBytes) {
+        return put(key, result, cacheEntry, defaultTtlMs, weightBytes, false);
+    }
+
+    /**
+     * Caches the result if the cache headers allow it.
+     *
+     * @param keepStale true to keep results that are already stale, they can still be revalidated
+     * @see #put(String, Object, Cache.Entry, long, int)
+     */
+    public boolean put(@NonNull String key, @NonNull Object result, @Nullable Cache.Entry cacheEntry, long defaultTtlMs, int weightBytes, boolean keepStale) {
+        requireNonEmptyString(key, "key");
+        requireNonNull(result, "result");
+        requireAny(cacheEntry);
+
+        if (cacheEntry == null) {
+            Logger.d(TAG, "put: not caching, response is not cacheable");
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiry = cacheEntry.ttl > 0 ? cacheEntry.ttl : (defaultTtlMs > 0 ? now + defaultTtlMs : 0);
+        if (expiry <= now) {
+            if (!keepStale) {
+                Logger.d(TAG, "put: not caching, response is already stale");
+                return false;
+            }
+            expiry = now;
+        }
+
+        cache.put(key, new CachedResult(result, expiry, Math.max(1, weightBytes), cacheEntry.etag, cacheEntry.lastModified));
+        return true;
+    }
+
+    public void remove(@NonNull String key) {
+        requireNonEmptyString(key, "key");
+        cache.remove(key);
+    }
+
+    public void evictAll() {
+        cache.evictAll();
+    }
+
+    /**
+     * Releases memory according to {@link ComponentCallbacks2#onTrimMemory(int)}, Core forwards these callbacks.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            Logger.df(TAG, "onTrimMemory: evicting all, level: %d", level);
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            Logger.df(TAG, "onTrimMemory: trimming to half, level: %d", level);
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * @return approximate size of the cached results in bytes
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    public int maxSize() {
+        return cache.maxSize();
+    }
+
+    public static final class CachedResult {
+        private final Object result;
+        private final long expiry;
+        private final int weight;
+        private final String etag;
+        private final long lastModified;
+
+        CachedResult(Object result, long expiry, int weight, String etag, long lastModified) {
+            this.result = result;
+            this.expiry = expiry;
+            this.weight = weight;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        @NonNull
+        public Object getResult() {
+            return result;
+        }
+
+        /**
+         * @return wall clock time in milliseconds after which the result is no longer fresh
+         */
+        public long getExpiry() {
+            return expiry;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expiry;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return ETag of the response the result was parsed from, null if the response had none
+         */
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return Last-Modified time of the response in milliseconds, 0 if the response had none
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
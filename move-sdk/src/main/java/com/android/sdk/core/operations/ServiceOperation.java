@@ -28,21 +28,35 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
+import com.android.sdk.core.utils.DesignByContract;
+import com.android.sdk.core.utils.Dispatchers;
 import com.android.sdk.core.utils.Logger;
 
 import com.android.sdk.core.Core;
+import com.android.sdk.core.R;
+import com.android.sdk.core.metrics.RequestMetrics;
 import com.android.sdk.core.models.DataListener;
 import com.android.sdk.core.models.DataRequest;
+import com.android.sdk.core.models.DataRetryPolicy;
+import com.android.sdk.core.models.DataResponse;
 import com.android.sdk.core.models.DataTransaction;
 import com.android.sdk.core.models.DataTransceiver;
+import com.android.sdk.core.models.Error;
+import com.android.sdk.core.models.ErrorCodes;
 import com.android.sdk.core.models.FailureMessage;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.android.volley.Cache;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
 
 import org.json.JSONObject;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
 
 import static com.android.sdk.core.utils.DesignByContract.ensure;
 import static com.android.sdk.core.utils.DesignByContract.ensureNonEmptyString;
@@ -55,13 +69,17 @@ import static com.android.sdk.core.utils.DesignByContract.requireShouldOverRide;
  * Subclass this operation and override necessary methods to provide your service details.
  * Created by deepu on 3/30/16.
  */
-public abstract class ServiceOperation<T> implements Operation {
+public abstract class ServiceOperation<T> implements ExecutorOperation<T> {
 
     private static final String TAG = ServiceOperation.class.getSimpleName();
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
 
     private final Class resultType;
-    private DataRequest dataRequest;
-    private boolean cancelled;
+    private volatile DataRequest dataRequest;
+    private volatile boolean cancelled;
+    private volatile OperationTimings timings;
 
 
     /**
@@ -94,66 +112,365 @@ public abstract class ServiceOperation<T> implements Operation {
     }
 
 
+    /**
+     * Executes the operation, the listener is invoked on the main thread.
+     */
+    @Override
+    public void execute(final OperationListener<T> operationListener) {
+        execute(operationListener, Dispatchers.main());
+    }
+
+    /**
+     * Executes the operation, the response is parsed on a background worker and the listener is invoked on the
+     * given executor.
+     *
+     * @param operationListener listener to be notified with the result
+     * @param deliveryExecutor  {@link Dispatchers#main()}, {@link Dispatchers#worker()}, {@link Dispatchers#immediate()} or your own executor
+     */
     @Override
-    public void execute(final OperationListener operationListener) {
+    public void execute(final OperationListener<T> operationListener, final Executor deliveryExecutor) {
         Logger.d(TAG, "entering execute operation");
+        requireNonNull(operationListener, "operationListener");
+        requireNonNull(deliveryExecutor, "deliveryExecutor");
 
         if (dataRequest != null) {
             Logger.w(TAG, "execute: WILL NOT EXECUTE, This operation is currently in execution");
             return;
         }
         cancelled = false;
+        final OperationTimings operationTimings = new OperationTimings();
+        timings = operationTimings;
+        operationTimings.markExecute();
 
 
         String path = generateURl();
-        Logger.d(TAG, "path: " + path);
+        Logger.df(TAG, "path: %s", path);
 
         Map<String, String> headers = new HashMap<>();
         Map<String, String> params = new HashMap<>();
 
         dataRequest = getDataRequest(path, headers, params);
         ensureNonNull(dataRequest, "dataRequest");
+        final DataRequest request = dataRequest;
+        DataRequest.Priority priority = getPriority();
+        if (priority != null) {
+            dataRequest.setPriority(priority);
+        }
+        DataRetryPolicy retryPolicy = getRetryPolicy();
+        if (retryPolicy != null) {
+            dataRequest.setRetryPolicy(retryPolicy);
+        }
+        final RequestMetrics metrics = RequestMetrics.isEnabled() ? RequestMetrics.obtain(getEndPoint()) : null;
+        if (metrics != null) {
+            metrics.setResultType(resultType);
+            dataRequest.setMetrics(metrics);
+        }
+
+        final String resultCacheKey = getResultCacheKey(dataRequest);
+        final boolean staleWhileRevalidate = getCachePolicy() == CachePolicy.STALE_WHILE_REVALIDATE;
+        ResultCache.CachedResult cachedResult = null;
+        if (resultCacheKey != null) {
+            cachedResult = Core.getInstance().getResultCache().get(resultCacheKey, staleWhileRevalidate);
+            if (cachedResult != null) {
+                operationTimings.markResponse();
+                if (metrics != null) {
+                    metrics.setCacheHit(true);
+                }
+                T result = getResultFromResponse(cachedResult.getResult());
+                if (!staleWhileRevalidate) {
+                    Logger.d(TAG, "execute: delivering cached result");
+                    deliverResult(result, operationListener, deliveryExecutor, operationTimings, request, metrics, true);
+                    return;
+                }
+                Logger.d(TAG, "execute: delivering cached result, revalidating");
+                deliverResult(result, operationListener, deliveryExecutor, operationTimings, request, metrics, false);
+                addValidators(dataRequest, cachedResult);
+            }
+        }
+        final ResultCache.CachedResult revalidatedResult = cachedResult;
 
-        DataTransceiver.getsInstance().queueJsonRequest(dataRequest, new DataListener() {
+        final boolean streaming = isStreamingParseEnabled();
+        DataListener dataListener = new DataListener() {
             @Override
-            public void onSuccess(DataTransaction dataTransaction) {
-                dataRequest = null;
+            public void onSuccess(final DataTransaction dataTransaction) {
+                operationTimings.markResponse();
                 if (cancelled) {
+                    dataRequest = null;
                     logCancelled("onSuccess");
                     return;
                 }
-                Logger.d(TAG, "onSuccess: " + dataTransaction.getDataResponse().getJson());
                 requireNonNull(dataTransaction);
 
-                T result = null;
-                if (!isVoidResult()) {
-                    requireNonNull(dataTransaction.getDataResponse().getJson(), "jsonResponse");
-                    result = getResultFromJson(dataTransaction.getDataResponse().getJson());
-                } else {
-                    Logger.d(TAG, "Empty result, since the operation was NOT expecting a resultType");
+                if (revalidatedResult != null && isUnchanged(revalidatedResult, dataTransaction.getDataResponse())) {
+                    Logger.d(TAG, "onSuccess: cached result is still valid");
+                    DataResponse response = dataTransaction.getDataResponse();
+                    Core.getInstance().getResultCache().put(resultCacheKey, revalidatedResult.getResult(), response.getCacheEntry(),
+                            getResultCacheTtlMs(), revalidatedResult.getWeight(), true);
+                    dataRequest = null;
+                    publishMetrics(request, metrics);
+                    return;
                 }
 
-                completeWithResult(result, operationListener);
+                if (isVoidResult()) {
+                    Logger.d(TAG, "Empty result, since the operation was NOT expecting a resultType");
+                    deliverResult(null, operationListener, deliveryExecutor, operationTimings, request, metrics, true);
+                } else if (streaming) {
+                    Logger.payload(TAG, "onSuccess: ", dataTransaction.getDataResponse().getResult());
+                    T result = getResultFromResponse(dataTransaction.getDataResponse().getResult());
+                    cacheResult(resultCacheKey, result, dataTransaction);
+                    deliverResult(result, operationListener, deliveryExecutor, operationTimings, request, metrics, true);
+                } else {
+                    Logger.payload(TAG, "onSuccess: ", dataTransaction.getDataResponse().getJson());
+                    requireNonNull(dataTransaction.getDataResponse().getJson(), "jsonResponse");
+                    Dispatchers.worker().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (cancelled) {
+                                dataRequest = null;
+                                logCancelled("parse");
+                                return;
+                            }
+                            operationTimings.markParseStart();
+                            if (metrics != null) {
+                                metrics.markBindStart();
+                            }
+                            T result;
+                            try {
+                                result = getResultFromJson(dataTransaction.getDataResponse().getJson());
+                            } catch (JsonParseException e) {
+                                deliverParseFailure(e, operationListener, deliveryExecutor, operationTimings, request, metrics);
+                                return;
+                            } catch (DesignByContract.DesignByContractEnsureException e) {
+                                deliverParseFailure(e, operationListener, deliveryExecutor, operationTimings, request, metrics);
+                                return;
+                            }
+                            if (metrics != null) {
+                                metrics.markBindEnd();
+                            }
+                            operationTimings.markParseEnd();
+                            cacheResult(resultCacheKey, result, dataTransaction);
+                            deliverResult(result, operationListener, deliveryExecutor, operationTimings, request, metrics, true);
+                        }
+                    });
+                }
 
             }
 
             @Override
-            public void onFailure(DataTransaction dataTransaction) {
-                dataRequest = null;
+            public void onFailure(final DataTransaction dataTransaction) {
+                operationTimings.markResponse();
                 if (cancelled) {
+                    dataRequest = null;
                     logCancelled("onFailure");
                     return;
                 }
-                Logger.d(TAG, "onFailure: " + dataTransaction.getDataResponse().getFailureMessage());
+                Logger.df(TAG, "onFailure: %s", dataTransaction.getDataResponse().getFailureMessage());
                 requireNonNull(dataTransaction);
-                completeWithMessage(dataTransaction.getDataResponse().getFailureMessage(), operationListener);
+                if (revalidatedResult != null) {
+                    Logger.d(TAG, "onFailure: revalidation failed, keeping the cached result");
+                    dataRequest = null;
+                    publishMetrics(request, metrics);
+                    return;
+                }
+                deliveryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dataRequest = null;
+                        if (cancelled) {
+                            logCancelled("onFailure");
+                            return;
+                        }
+                        operationTimings.markDelivery();
+                        completeWithMessage(dataTransaction.getDataResponse().getFailureMessage(), operationListener);
+                        if (metrics != null) {
+                            metrics.markDelivery();
+                            publishMetrics(request, metrics);
+                        }
+                    }
+                });
 
             }
-        });
+        };
+
+        if (streaming) {
+            DataTransceiver.getsInstance().queueGsonRequest(dataRequest, isVoidResult() ? null : getResultTypeAdapter(), dataListener);
+        } else {
+            DataTransceiver.getsInstance().queueJsonRequest(dataRequest, dataListener);
+        }
 
         Logger.d(TAG, "exiting execute operation");
     }
 
+    /**
+     * @param completes false if the operation stays in execution after this result, eg: while revalidating a cached result
+     */
+    private void deliverResult(@Nullable final T result, final OperationListener<T> operationListener, Executor deliveryExecutor, final OperationTimings operationTimings,
+                               final DataRequest request, @Nullable final RequestMetrics metrics, final boolean completes) {
+        deliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (completes) {
+                    dataRequest = null;
+                }
+                if (cancelled) {
+                    logCancelled("deliverResult");
+                    return;
+                }
+                operationTimings.markDelivery();
+                Logger.df(TAG, "timings: %s", operationTimings);
+                completeWithResult(result, operationListener);
+                if (completes && metrics != null) {
+                    metrics.markDelivery();
+                    publishMetrics(request, metrics);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fails the operation with {@link ErrorCodes#SERVICE_RESPONSE_ERROR}, like a response that can not be bound on
+     * the network thread with streaming parse enabled.
+     */
+    private void deliverParseFailure(final Exception e, final OperationListener<T> operationListener, Executor deliveryExecutor,
+                                     final OperationTimings operationTimings, final DataRequest request,
+                                     @Nullable final RequestMetrics metrics) {
+        Logger.wf(TAG, "parse: failed to bind %s: %s", resultType.getSimpleName(), e.getMessage());
+        deliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                dataRequest = null;
+                if (cancelled) {
+                    logCancelled("parse");
+                    return;
+                }
+                operationTimings.markDelivery();
+                completeWithMessage(Error.CreateErrorMessage(ErrorCodes.SERVICE_RESPONSE_ERROR,
+                        Core.getInstance().getApplicationContext().getString(R.string.error_message_unknown), e), operationListener);
+                if (metrics != null) {
+                    metrics.setErrorCode(ErrorCodes.SERVICE_RESPONSE_ERROR);
+                    metrics.markDelivery();
+                    publishMetrics(request, metrics);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records of cancelled operations are dropped, they are not returned to the pool. The request lets go of the record
+     * first, volley may still report stages of a request whose result was already delivered.
+     */
+    private static void publishMetrics(DataRequest request, @Nullable RequestMetrics metrics) {
+        if (metrics != null) {
+            if (request.getMetrics() == metrics) {
+                request.setMetrics(null);
+            }
+            metrics.publish();
+        }
+    }
+
+    @Nullable
+    private String getResultCacheKey(DataRequest request) {
+        if (getCachePolicy() == CachePolicy.NETWORK_ONLY || isVoidResult()) {
+            return null;
+        }
+        String requestKey = request.getCacheKey();
+        if (requestKey == null) {
+            return null;
+        }
+        return resultType.getName() + ' ' + requestKey;
+    }
+
+    private void cacheResult(@Nullable String resultCacheKey, T result, DataTransaction dataTransaction) {
+        if (resultCacheKey == null) {
+            return;
+        }
+        DataResponse response = dataTransaction.getDataResponse();
+        Core.getInstance().getResultCache().put(resultCacheKey, result, response.getCacheEntry(),
+                getResultCacheTtlMs(), getResultWeight(result, response.getContentLength()),
+                getCachePolicy() == CachePolicy.STALE_WHILE_REVALIDATE);
+    }
+
+    /**
+     * Makes the request conditional, so that the server can answer 304 Not Modified if the cached result is current.
+     */
+    private static void addValidators(DataRequest request, ResultCache.CachedResult cachedResult) {
+        if (cachedResult.getEtag() != null) {
+            request.setHeader(HEADER_IF_NONE_MATCH, cachedResult.getEtag());
+        }
+        if (cachedResult.getLastModified() > 0) {
+            SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            request.setHeader(HEADER_IF_MODIFIED_SINCE, format.format(new Date(cachedResult.getLastModified())));
+        }
+    }
+
+    private static boolean isUnchanged(ResultCache.CachedResult cachedResult, DataResponse response) {
+        if (response.isNotModified()) {
+            return true;
+        }
+        Cache.Entry entry = response.getCacheEntry();
+        return entry != null && entry.etag != null && entry.etag.equals(cachedResult.getEtag());
+    }
+
+    /**
+     * Override to change the scheduling priority of the operation, eg: {@link DataRequest.Priority#PREFETCH} for
+     * speculative loads or {@link DataRequest.Priority#IMMEDIATE} for user initiated actions.
+     *
+     * @return priority of the request or null to keep the priority set on the {@link DataRequest}, null by default
+     */
+    @Nullable
+    protected DataRequest.Priority getPriority() {
+        return null;
+    }
+
+    /**
+     * Override to change how the operation is retried, eg: a short deadline for type-ahead searches.
+     *
+     * @return retry policy of the request or null to keep the policy set on the {@link DataRequest}, null by default
+     */
+    @Nullable
+    protected DataRetryPolicy getRetryPolicy() {
+        return null;
+    }
+
+    /**
+     * Override to answer from the in memory {@link ResultCache}, only GET requests are cached.
+     *
+     * @return {@link CachePolicy#NETWORK_ONLY} by default
+     */
+    protected CachePolicy getCachePolicy() {
+        return CachePolicy.NETWORK_ONLY;
+    }
+
+    /**
+     * Time to live of a cached result when the response has no Cache-Control max-age or Expires header.
+     *
+     * @return 0 by default, such responses are not cached
+     */
+    protected long getResultCacheTtlMs() {
+        return 0;
+    }
+
+    /**
+     * Approximate size of a result in memory, used to bound the {@link ResultCache}.
+     *
+     * @param contentLength size of the response body in bytes
+     * @return the size of the response body by default
+     */
+    protected int getResultWeight(T result, int contentLength) {
+        return contentLength;
+    }
+
+    /**
+     * Time spent in each stage by the last execution of this operation.
+     *
+     * @return OperationTimings or null if the operation was never executed.
+     */
+    @Nullable
+    public OperationTimings getTimings() {
+        return timings;
+    }
+
     protected void updateHeaders(Map<String, String> headers) {
         //Override
     }
@@ -166,22 +483,41 @@ public abstract class ServiceOperation<T> implements Operation {
         listener.onSuccess(result);
     }
 
-    protected void completeWithMessage(FailureMessage failureMessage, OperationListener listener) {
+    protected void completeWithMessage(FailureMessage failureMessage, OperationListener<T> listener) {
         listener.onFailure(failureMessage);
     }
 
     private T getResultFromJson(JSONObject jsonObject) {
         requireNonNull(jsonObject, "responseJson");
-        final GsonBuilder builder = new GsonBuilder();
-        final Gson gson = builder.create();
 
-        Object obj = gson.fromJson(jsonObject.toString(), resultType);
+        Object obj = Core.getInstance().getTypeAdapterRegistry().fromJson(jsonObject.toString(), resultType);
         ensureNonNull(obj);
-        ensure(resultType.isAssignableFrom(obj.getClass()), "Expected type: " + resultType + " actual type: " + obj);
+        ensure(resultType.isAssignableFrom(obj.getClass()), "Expected type: %s actual type: %s", resultType, obj);
+
+        return (T) obj;
+    }
+
+    private T getResultFromResponse(Object obj) {
+        ensureNonNull(obj, "result");
+        ensure(resultType.isAssignableFrom(obj.getClass()), "Expected type: %s actual type: %s", resultType, obj);
 
         return (T) obj;
     }
 
+    private TypeAdapter<T> getResultTypeAdapter() {
+        return Core.getInstance().getTypeAdapterRegistry().getAdapter((Class<T>) resultType);
+    }
+
+    /**
+     * Override and return true to bind the response straight from the network bytes into the result type on
+     * the network thread, skipping the intermediate {@code JSONObject}. Recommended for large responses.
+     *
+     * @return true to enable streaming parse, false by default
+     */
+    protected boolean isStreamingParseEnabled() {
+        return false;
+    }
+
 
     /**
      * Call this method when you want to cancel an operation in execution.
@@ -192,14 +528,15 @@ public abstract class ServiceOperation<T> implements Operation {
      */
     @Override
     public boolean cancel() {
+        final DataRequest request = dataRequest;
         if (!cancelled
-                && dataRequest != null) {
+                && request != null) {
             cancelled = true;
-            dataRequest.cancel();
-            Logger.d(TAG, "operation cancelled: " + this);
+            request.cancel();
+            Logger.df(TAG, "operation cancelled: %s", this);
             return true;
         } else {
-            if (dataRequest == null) {
+            if (request == null) {
                 Logger.d(TAG, "cancel :operation not in execution");
             } else {
                 Logger.d(TAG, "cancel :operation already cancelled");
@@ -209,6 +546,9 @@ public abstract class ServiceOperation<T> implements Operation {
     }
 
     private void logCancelled(@Nullable final String optionalPrefixMessage) {
+        if (!Logger.isLoggable(Logger.LogLevel.DEBUG)) {
+            return;
+        }
         StringBuilder sb = new StringBuilder(optionalPrefixMessage != null ? optionalPrefixMessage : "");
         sb.append(": Ignoring operation[ ").append(this).append("], since the operation is already cancelled.");
 
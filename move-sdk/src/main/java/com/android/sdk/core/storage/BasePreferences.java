@@ -2,6 +2,14 @@ package com.android.sdk.core.storage;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import com.android.sdk.core.utils.Dispatchers;
+import com.android.sdk.core.utils.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.android.sdk.core.utils.DesignByContract.*;
 
@@ -11,56 +19,258 @@ import static com.android.sdk.core.utils.DesignByContract.*;
  * <p>
  * To create a shared preference for your app, simply extend this class, provide a name for your shared pref make use of all wrapper methods to reade/write from SharedPrefs.
  * <p>
+ * Reads are served from an in-memory snapshot. Writes update the snapshot right away and are handed to
+ * {@link SharedPreferences.Editor#apply()} from a background thread, writes made while a flush is pending are merged
+ * into it. Once handed over, the framework finishes the write before an Activity pauses or a Service stops. Writes
+ * that are still pending in this class are lost if the process dies first, call {@link #flushBlocking()} where that
+ * matters. Group related writes in one {@link #edit()} transaction.
+ * All writes to the preference file must go through this instance, changes made to the file directly are not seen
+ * by the snapshot.
+ * <p>
  * Created by deepu on 3/13/16.
  */
 public abstract class BasePreferences {
+    private static final String TAG = BasePreferences.class.getSimpleName();
+    private static final Object REMOVED = new Object();
 
     private final SharedPreferences preferences;
+    /**
+     * Never modified once published, a transaction replaces it with an updated copy.
+     */
+    private volatile Map<String, Object> snapshot;
+    private final Object writeLock = new Object();
+    private final Object flushLock = new Object();
+    private Map<String, Object> pendingWrites = new HashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            flush(false);
+        }
+    };
 
     protected BasePreferences(String preferenceName, Context context) {
         preferences = context.getSharedPreferences(preferenceName, Context.MODE_PRIVATE);
     }
 
+    /**
+     * Starts a transaction, nothing is written before {@link Transaction#apply()}.
+     */
+    public Transaction edit() {
+        return new Transaction();
+    }
+
+    /**
+     * Writes the pending changes on the calling thread, eg: before the process is shut down.
+     */
+    public void flushBlocking() {
+        flush(true);
+    }
+
+    /**
+     * @param blocking commit on the calling thread, otherwise the write is handed to {@code apply()} which the
+     *                 framework waits for in {@code QueuedWork}
+     */
+    private void flush(boolean blocking) {
+        synchronized (flushLock) {
+            Map<String, Object> writes;
+            synchronized (writeLock) {
+                if (pendingWrites.isEmpty()) {
+                    return;
+                }
+                writes = pendingWrites;
+                pendingWrites = new HashMap<>();
+            }
+            SharedPreferences.Editor editor = preferences.edit();
+            for (Map.Entry<String, Object> write : writes.entrySet()) {
+                put(editor, write.getKey(), write.getValue());
+            }
+            if (!blocking) {
+                editor.apply();
+            } else if (!editor.commit()) {
+                Logger.wf(TAG, "flushBlocking: commit failed for %d keys", writes.size());
+            }
+        }
+    }
+
     protected void setString(String key, String value) {
         requireNonEmptyString(key);
         requireAny(value);
 
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putString(key, value);
-        editor.commit();
+        edit().putString(key, value).apply();
     }
 
     protected String getString(String key) {
         requireNonEmptyString(key);
-        return preferences.getString(key, null);
+        return (String) getSnapshot().get(key);
     }
 
 
     protected void setBoolean(String key, boolean value) {
         requireNonEmptyString(key);
 
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putBoolean(key, value);
-        editor.commit();
+        edit().putBoolean(key, value).apply();
     }
 
     protected boolean getBoolean(String key) {
         requireNonEmptyString(key);
-        return preferences.getBoolean(key, false);
+        Boolean value = (Boolean) getSnapshot().get(key);
+        return value != null && value;
     }
 
     protected void setInt(String key, int value) {
         requireNonEmptyString(key);
 
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putInt(key, value);
-        editor.commit();
+        edit().putInt(key, value).apply();
     }
 
     protected int getInt(String key) {
         requireNonEmptyString(key);
-        return preferences.getInt(key, 0);
+        Integer value = (Integer) getSnapshot().get(key);
+        return value != null ? value : 0;
+    }
+
+    protected void setLong(String key, long value) {
+        requireNonEmptyString(key);
+
+        edit().putLong(key, value).apply();
+    }
+
+    protected long getLong(String key) {
+        requireNonEmptyString(key);
+        Long value = (Long) getSnapshot().get(key);
+        return value != null ? value : 0L;
+    }
+
+    protected void setFloat(String key, float value) {
+        requireNonEmptyString(key);
+
+        edit().putFloat(key, value).apply();
+    }
+
+    protected float getFloat(String key) {
+        requireNonEmptyString(key);
+        Float value = (Float) getSnapshot().get(key);
+        return value != null ? value : 0f;
+    }
+
+    protected boolean contains(String key) {
+        requireNonEmptyString(key);
+        return getSnapshot().containsKey(key);
+    }
+
+    /**
+     * The snapshot is loaded on first use, SharedPreferences loads the file in the background once it is opened.
+     */
+    private Map<String, Object> getSnapshot() {
+        Map<String, Object> values = snapshot;
+        if (values == null) {
+            synchronized (writeLock) {
+                values = snapshot;
+                if (values == null) {
+                    values = new HashMap<String, Object>(preferences.getAll());
+                    snapshot = values;
+                }
+            }
+        }
+        return values;
+    }
+
+    private void apply(Map<String, Object> changes) {
+        getSnapshot();
+        synchronized (writeLock) {
+            Map<String, Object> values = new HashMap<>(snapshot);
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                if (change.getValue() == REMOVED) {
+                    values.remove(change.getKey());
+                } else {
+                    values.put(change.getKey(), change.getValue());
+                }
+            }
+            snapshot = values;
+            pendingWrites.putAll(changes);
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            Dispatchers.worker().execute(flushTask);
+        }
     }
 
+    private static void put(SharedPreferences.Editor editor, String key, Object value) {
+        if (value == REMOVED) {
+            editor.remove(key);
+        } else if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Integer) {
+            editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            editor.putFloat(key, (Float) value);
+        } else {
+            requireShouldNeverReachHere();
+        }
+    }
+
+    /**
+     * Changes made together, they become visible to reads and are scheduled for writing at once on {@link #apply()}.
+     * A transaction is meant to be used from a single thread.
+     */
+    public final class Transaction {
+        private final Map<String, Object> changes = new HashMap<>();
+
+        private Transaction() {
+        }
+
+        /**
+         * @param value null removes the key, like {@link SharedPreferences.Editor#putString(String, String)}
+         */
+        public Transaction putString(String key, @Nullable String value) {
+            requireNonEmptyString(key);
+            changes.put(key, value != null ? value : REMOVED);
+            return this;
+        }
+
+        public Transaction putBoolean(String key, boolean value) {
+            requireNonEmptyString(key);
+            changes.put(key, value);
+            return this;
+        }
 
+        public Transaction putInt(String key, int value) {
+            requireNonEmptyString(key);
+            changes.put(key, value);
+            return this;
+        }
+
+        public Transaction putLong(String key, long value) {
+            requireNonEmptyString(key);
+            changes.put(key, value);
+            return this;
+        }
+
+        public Transaction putFloat(String key, float value) {
+            requireNonEmptyString(key);
+            changes.put(key, value);
+            return this;
+        }
+
+        public Transaction remove(String key) {
+            requireNonEmptyString(key);
+            changes.put(key, REMOVED);
+            return this;
+        }
+
+        /**
+         * Makes the changes visible to reads and schedules them for writing on a background thread, returns
+         * without touching the disk.
+         */
+        public void apply() {
+            if (!changes.isEmpty()) {
+                BasePreferences.this.apply(changes);
+            }
+        }
+    }
 }
@@ -2,69 +2,337 @@ package com.android.sdk.core.storage;
 
 import android.content.Context;
 import android.support.annotation.Nullable;
-import android.util.Log;
 
+import com.android.sdk.core.Core;
 import com.android.sdk.core.utils.Logger;
+import com.google.gson.JsonParseException;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import static com.android.sdk.core.utils.DesignByContract.requireNonEmptyString;
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
 
 /**
+ * Reads and writes files in the app's internal storage.
+ * <p/>
+ * Text is always encoded as UTF-8. Files are read and written in bulk through a {@link FileChannel}, large documents
+ * can be mapped or streamed instead of being copied into the heap. Writes go to a
+ * temporary file that is synced and then renamed over the target, a crash leaves either the old or the new content,
+ * never a half written file.
+ * <p/>
  * Created by deepu on 7/3/16.
  */
 
 public final class StorageUtil {
     private static final String TAG = "StorageUtil";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TEMP_SUFFIX = ".tmp";
+    // File.createTempFile needs a prefix of at least three characters
+    private static final String TEMP_PREFIX_SEPARATOR = ".write";
+    static final int BUFFER_SIZE = 8 * 1024;
+    static final int MAP_THRESHOLD_BYTES = 64 * 1024;
+
+    private StorageUtil() {
+    }
+
+    /**
+     * @return the file with the given name in the app's internal storage, the same location that
+     * {@link #writeToInternalStorage(Context, String, String)} writes to
+     */
+    public static File getInternalStorageFile(Context context, String fileName) {
+        requireNonNull(context, "context");
+        requireNonEmptyString(fileName, "fileName");
+        return new File(context.getFilesDir(), fileName);
+    }
 
-    public static void writeToInternalStorage(Context context, String fileName, String content) {
+    /**
+     * @return true if the content was written
+     */
+    public static boolean writeToInternalStorage(Context context, String fileName, String content) {
+        requireNonNull(content, "content");
+        return writeToInternalStorage(context, fileName, ByteBuffer.wrap(content.getBytes(UTF_8)));
+    }
+
+    /**
+     * @return true if the content was written
+     */
+    public static boolean writeToInternalStorage(Context context, String fileName, byte[] content) {
+        requireNonNull(content, "content");
+        return writeToInternalStorage(context, fileName, ByteBuffer.wrap(content));
+    }
 
+    /**
+     * Writes the remaining bytes of the buffer, the position of the buffer is advanced.
+     *
+     * @return true if the content was written
+     */
+    public static boolean writeToInternalStorage(Context context, String fileName, ByteBuffer content) {
+        requireNonNull(content, "content");
+        File target = getInternalStorageFile(context, fileName);
+        File temp = null;
         FileOutputStream fos = null;
         try {
-            fos = context.openFileOutput(fileName, Context.MODE_PRIVATE);
-            fos.write(content.getBytes());
-        } catch (FileNotFoundException e) {
+            temp = newTempFile(target);
+            fos = new FileOutputStream(temp);
+            FileChannel channel = fos.getChannel();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            return commit(fos, temp, target);
+        } catch (IOException e) {
+            Logger.e(TAG, "writeToInternalStorage: " + e.getMessage());
+            closeQuietly(fos);
+            deleteQuietly(temp);
+            return false;
+        }
+    }
 
+    /**
+     * Copies the stream to the file, the stream is closed.
+     *
+     * @return true if the content was written
+     */
+    public static boolean writeToInternalStorage(Context context, String fileName, InputStream content) {
+        requireNonNull(content, "content");
+        File target = getInternalStorageFile(context, fileName);
+        File temp = null;
+        FileOutputStream fos = null;
+        try {
+            temp = newTempFile(target);
+            fos = new FileOutputStream(temp);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                fos.write(buffer, 0, read);
+            }
+            return commit(fos, temp, target);
         } catch (IOException e) {
             Logger.e(TAG, "writeToInternalStorage: " + e.getMessage());
+            closeQuietly(fos);
+            deleteQuietly(temp);
+            return false;
         } finally {
-            if (fos != null) {
-                try {
-                    fos.close();
-                } catch (IOException e) {
-                    Logger.e(TAG, "writeToInternalStorage: " + e.getMessage());
-                }
-            }
+            closeQuietly(content);
         }
+    }
 
+    /**
+     * Every write gets its own temporary file, concurrent writes to the same target must not share one or the rename
+     * could publish a mix of both.
+     */
+    private static File newTempFile(File target) throws IOException {
+        return File.createTempFile(target.getName() + TEMP_PREFIX_SEPARATOR, TEMP_SUFFIX, target.getParentFile());
     }
 
+    /**
+     * Syncs and closes the temporary file, then renames it over the target.
+     */
+    private static boolean commit(FileOutputStream fos, File temp, File target) throws IOException {
+        fos.getFD().sync();
+        fos.close();
+        if (!temp.renameTo(target)) {
+            throw new IOException("could not rename " + temp + " to " + target);
+        }
+        return true;
+    }
+
+    /**
+     * @return the content decoded as UTF-8 or null if the file does not exist or could not be read
+     */
     @Nullable
     public static String readFileFromInternalStorage(Context context, String fileName) {
+        byte[] content = readBytesFromInternalStorage(context, fileName);
+        return content != null ? new String(content, UTF_8) : null;
+    }
 
+    /**
+     * Reads the whole file with one bulk read.
+     *
+     * @return the content or null if the file does not exist or could not be read
+     */
+    @Nullable
+    public static byte[] readBytesFromInternalStorage(Context context, String fileName) {
+        File file = getInternalStorageFile(context, fileName);
         FileInputStream fis = null;
         try {
-            fis = context.openFileInput(fileName);
-            int c;
-            StringBuilder outputStrBuilder = new StringBuilder();
-            while ((c = fis.read()) != -1) {
-                outputStrBuilder.append((char) c);
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                Logger.e(TAG, "readBytesFromInternalStorage: file too large: " + size);
+                return null;
             }
-            return outputStrBuilder.toString();
+            ByteBuffer content = ByteBuffer.allocate((int) size);
+            while (content.hasRemaining()) {
+                if (channel.read(content) == -1) {
+                    break;
+                }
+            }
+            if (content.hasRemaining()) {
+                Logger.wf(TAG, "readBytesFromInternalStorage: %s was truncated while reading", fileName);
+                byte[] truncated = new byte[content.position()];
+                System.arraycopy(content.array(), 0, truncated, 0, truncated.length);
+                return truncated;
+            }
+            return content.array();
         } catch (FileNotFoundException e) {
-            Logger.e(TAG, "readFileFromInternalStorage: " + e.getMessage());
+            Logger.e(TAG, "readBytesFromInternalStorage: " + e.getMessage());
         } catch (IOException e) {
-            e.printStackTrace();
+            Logger.e(TAG, "readBytesFromInternalStorage: " + e.getMessage());
         } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                    Logger.e(TAG, "readFileFromInternalStorage: " + e.getMessage());
-                }
+            closeQuietly(fis);
+        }
+        return null;
+    }
+
+    /**
+     * Maps the file into memory read-only, the pages are loaded by the kernel on access and are not part of the heap.
+     * The mapping stays valid until the buffer is garbage collected, also when the file is replaced meanwhile.
+     *
+     * @return the mapped file or null if the file does not exist, is empty or could not be mapped
+     */
+    @Nullable
+    public static MappedByteBuffer mapInternalStorageFile(Context context, String fileName) {
+        File file = getInternalStorageFile(context, fileName);
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                Logger.wf(TAG, "mapInternalStorageFile: can not map %d bytes", size);
+                return null;
             }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (FileNotFoundException e) {
+            Logger.e(TAG, "mapInternalStorageFile: " + e.getMessage());
+        } catch (IOException e) {
+            Logger.e(TAG, "mapInternalStorageFile: " + e.getMessage());
+        } finally {
+            closeQuietly(fis);
         }
         return null;
     }
+
+    /**
+     * Opens a UTF-8 reader over the file, files from {@value #MAP_THRESHOLD_BYTES} bytes on are read through a
+     * memory mapping. The caller closes the reader.
+     *
+     * @return the reader or null if the file does not exist
+     */
+    @Nullable
+    public static Reader openInternalStorageReader(Context context, String fileName) {
+        File file = getInternalStorageFile(context, fileName);
+        if (file.length() >= MAP_THRESHOLD_BYTES) {
+            MappedByteBuffer mapped = mapInternalStorageFile(context, fileName);
+            if (mapped != null) {
+                return new InputStreamReader(new ByteBufferInputStream(mapped), UTF_8);
+            }
+        }
+        InputStream in = openInternalStorageFile(context, fileName);
+        return in != null ? new InputStreamReader(in, UTF_8) : null;
+    }
+
+    /**
+     * Binds a json document in storage to a model with the adapter cached in the
+     * {@link com.android.sdk.core.models.TypeAdapterRegistry}, the document is streamed and never held as a String.
+     *
+     * @return the model or null if the file does not exist or is not valid json for the type
+     */
+    @Nullable
+    public static <T> T readJsonFromInternalStorage(Context context, String fileName, Class<T> type) {
+        requireNonNull(type, "type");
+        Reader reader = openInternalStorageReader(context, fileName);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            return Core.getInstance().getTypeAdapterRegistry().fromJson(reader, type);
+        } catch (JsonParseException e) {
+            Logger.e(TAG, "readJsonFromInternalStorage: " + e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Opens a buffered stream for reading large files piece by piece, the caller closes it.
+     *
+     * @return the stream or null if the file does not exist
+     */
+    @Nullable
+    public static InputStream openInternalStorageFile(Context context, String fileName) {
+        File file = getInternalStorageFile(context, fileName);
+        try {
+            return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        } catch (FileNotFoundException e) {
+            Logger.e(TAG, "openInternalStorageFile: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads a buffer without copying it, the buffer's position is advanced.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static void deleteQuietly(@Nullable File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            Logger.wf(TAG, "could not delete %s", file);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Logger.e(TAG, "close: " + e.getMessage());
+        }
+    }
 }
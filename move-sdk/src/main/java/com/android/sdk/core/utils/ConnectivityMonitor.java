@@ -0,0 +1,248 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.utils;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.PowerManager;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
+
+/**
+ * Tracks the active network through the {@link ConnectivityManager#CONNECTIVITY_ACTION} broadcast, and the battery
+ * saver and doze state of the device.
+ * <p/>
+ * The state is cached, {@link #isConnected()} is cheap enough to be checked before every request. Listeners are
+ * called on the main thread, when the connected, metered or power saving state changed and, from Lollipop on, when
+ * the radio of the default network became active.
+ * Requires the {@code ACCESS_NETWORK_STATE} permission, without it the network is always reported as connected.
+ */
+public final class ConnectivityMonitor {
+    private static final String TAG = ConnectivityMonitor.class.getSimpleName();
+    private static volatile ConnectivityMonitor sInstance;
+
+    /**
+     * Notified on the main thread when the network state changes.
+     */
+    public interface Listener {
+        /**
+         * Also called when battery saver or doze starts or ends, read {@link #isPowerSaving()} then.
+         */
+        void onConnectivityChanged(boolean connected, boolean metered);
+
+        /**
+         * The radio is up, data sent now does not pay for a radio wakeup. Only reported from Lollipop on.
+         */
+        void onNetworkActive();
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final PowerManager powerManager;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean connected = true;
+    private volatile boolean metered;
+    private volatile boolean powerSaving;
+
+    private ConnectivityMonitor(Context context) {
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        update();
+        updatePowerSaving();
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                boolean wasConnected = connected;
+                boolean wasMetered = metered;
+                update();
+                if (wasConnected != connected || wasMetered != metered) {
+                    Logger.df(TAG, "connectivity changed, connected: %s metered: %s", connected, metered);
+                    notifyConnectivityChanged.run();
+                }
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            registerPowerSavingReceiver(context);
+            connectivityManager.addDefaultNetworkActiveListener(new ConnectivityManager.OnNetworkActiveListener() {
+                @Override
+                public void onNetworkActive() {
+                    // called on a binder thread
+                    Dispatchers.main().execute(notifyNetworkActive);
+                }
+            });
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerPowerSavingReceiver(Context context) {
+        IntentFilter filter = new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        }
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                boolean wasPowerSaving = powerSaving;
+                updatePowerSaving();
+                if (wasPowerSaving != powerSaving) {
+                    Logger.df(TAG, "power saving: %s", powerSaving);
+                    notifyConnectivityChanged.run();
+                }
+            }
+        }, filter);
+    }
+
+    private final Runnable notifyNetworkActive = new Runnable() {
+        @Override
+        public void run() {
+            for (Listener listener : listeners) {
+                listener.onNetworkActive();
+            }
+        }
+    };
+
+    private final Runnable notifyConnectivityChanged = new Runnable() {
+        @Override
+        public void run() {
+            for (Listener listener : listeners) {
+                listener.onConnectivityChanged(connected, metered);
+            }
+        }
+    };
+
+    /**
+     * The monitor registers its receiver with the application context on first use and stays registered.
+     */
+    public static ConnectivityMonitor getInstance(@NonNull Context context) {
+        requireNonNull(context, "context");
+        ConnectivityMonitor monitor = sInstance;
+        if (monitor == null) {
+            synchronized (ConnectivityMonitor.class) {
+                monitor = sInstance;
+                if (monitor == null) {
+                    monitor = new ConnectivityMonitor(context.getApplicationContext());
+                    sInstance = monitor;
+                }
+            }
+        }
+        return monitor;
+    }
+
+    /**
+     * @return true if a network is connected or the state is unknown
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return true if the active network may cost the user money, eg: cellular
+     */
+    public boolean isMetered() {
+        return metered;
+    }
+
+    /**
+     * @return true if battery saver is on or the device is dozing, background traffic should wait then
+     */
+    public boolean isPowerSaving() {
+        return powerSaving;
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        requireNonNull(listener, "listener");
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        requireNonNull(listener, "listener");
+        listeners.remove(listener);
+    }
+
+    /**
+     * Replaces the observed state until the next broadcast or {@link #refresh()}, used by tests to simulate networks.
+     */
+    void setState(boolean connected, boolean metered, boolean powerSaving) {
+        boolean changed = this.connected != connected || this.metered != metered || this.powerSaving != powerSaving;
+        this.connected = connected;
+        this.metered = metered;
+        this.powerSaving = powerSaving;
+        if (changed) {
+            Dispatchers.main().execute(notifyConnectivityChanged);
+        }
+    }
+
+    /**
+     * Reads the state from the system again, the listeners are notified if it changed.
+     */
+    void refresh() {
+        boolean wasConnected = connected;
+        boolean wasMetered = metered;
+        boolean wasPowerSaving = powerSaving;
+        update();
+        updatePowerSaving();
+        if (wasConnected != connected || wasMetered != metered || wasPowerSaving != powerSaving) {
+            Dispatchers.main().execute(notifyConnectivityChanged);
+        }
+    }
+
+    private void update() {
+        NetworkInfo info;
+        try {
+            info = connectivityManager.getActiveNetworkInfo();
+        } catch (SecurityException e) {
+            Logger.w(TAG, "update: ACCESS_NETWORK_STATE not granted, assuming connected");
+            connected = true;
+            metered = false;
+            return;
+        }
+        connected = info != null && info.isConnected();
+        if (!connected) {
+            metered = false;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            metered = connectivityManager.isActiveNetworkMetered();
+        } else {
+            metered = info.getType() != ConnectivityManager.TYPE_WIFI && info.getType() != ConnectivityManager.TYPE_ETHERNET;
+        }
+    }
+
+    private void updatePowerSaving() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            powerSaving = powerManager.isPowerSaveMode() || powerManager.isDeviceIdleMode();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            powerSaving = powerManager.isPowerSaveMode();
+        }
+    }
+}
@@ -27,38 +27,101 @@ package com.android.sdk.core.utils;
 import android.text.TextUtils;
 
 import java.util.Collection;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * Read about DBC: https://www.eiffel.com/values/design-by-contract/introduction/
  * <p/>
+ * Checks run on every request, so the passing path does no work besides the check itself: messages are only built
+ * when a check fails, and the common arities have fixed overloads so that no varargs array is allocated.
+ * How much checking is done is set globally with {@link #setMode(Mode)}.
+ * <p/>
  * Created by deepu on 4/2/16.
  */
 public final class DesignByContract {
 
+    public enum Mode {
+        /**
+         * Checks run and failures carry a descriptive message, default.
+         */
+        FULL,
+        /**
+         * Checks run, failures throw without building a message.
+         */
+        FAST,
+        /**
+         * Checks are skipped, for release builds. {@link #requireShouldOverRide(String...)} and
+         * {@link #requireShouldNeverReachHere()} still throw.
+         */
+        OFF
+    }
+
+    private static final String REQUIRE_PREFIX = "Design By Contract Exception. !!!REQUIRE!!! ->>";
+    private static final String ENSURE_PREFIX = "Design By Contract Exception. !!!ENSURE!!! ->>";
+
+    private static volatile Mode mode = Mode.FULL;
+
+    public static void setMode(Mode mode) {
+        if (mode == null) {
+            throw new DesignByContractRequireException(REQUIRE_PREFIX + "non null object(mode)", null);
+        }
+        DesignByContract.mode = mode;
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
 
     //REQUIRE
     public static void requireNonEmptyCollection(Collection<Object> collection, String... paramName) {
-        requireNonNull(collection, paramName);
-        StringBuilder message = new StringBuilder("non empty collection").append("(").append(getOptionalMessage(paramName)).append(")");
-        require(collection.size() > 0, message.toString());
+        requireNonEmptyCollection(collection, optional(paramName));
+    }
+
+    public static void requireNonEmptyCollection(Collection<?> collection, String paramName) {
+        if (mode != Mode.OFF && (collection == null || collection.isEmpty())) {
+            failRequire(collection == null ? "non null object" : "non empty collection", paramName);
+        }
     }
 
     public static void requireNonEmptyMap(Map<Object, Object> map, String... paramName) {
-        requireNonNull(map, paramName);
-        StringBuilder message = new StringBuilder("non empty map.").append("(").append(getOptionalMessage(paramName)).append(")");
-        require(map.size() > 0, message.toString());
+        requireNonEmptyMap(map, optional(paramName));
+    }
+
+    public static void requireNonEmptyMap(Map<?, ?> map, String paramName) {
+        if (mode != Mode.OFF && (map == null || map.isEmpty())) {
+            failRequire(map == null ? "non null object" : "non empty map.", paramName);
+        }
+    }
+
+    public static void requireNonNull(Object obj) {
+        if (obj == null && mode != Mode.OFF) {
+            failRequire("non null object", null);
+        }
+    }
+
+    public static void requireNonNull(Object obj, String paramName) {
+        if (obj == null && mode != Mode.OFF) {
+            failRequire("non null object", paramName);
+        }
     }
 
     public static void requireNonNull(Object obj, String... paramName) {
-        StringBuilder message = new StringBuilder("non null object").append("(").append(getOptionalMessage(paramName)).append(")");
-        require((obj != null), message.toString());
+        requireNonNull(obj, optional(paramName));
+    }
+
+    public static void requireNonEmptyString(String str) {
+        requireNonEmptyString(str, (String) null);
+    }
+
+    public static void requireNonEmptyString(String str, String paramName) {
+        if (mode != Mode.OFF && (str == null || str.length() == 0)) {
+            failRequire(str == null ? "non null object" : "non empty string", paramName);
+        }
     }
 
     public static void requireNonEmptyString(String str, String... paramName) {
-        requireNonNull(str, paramName);
-        StringBuilder message = new StringBuilder("non empty string").append("(").append(getOptionalMessage(paramName)).append(")");
-        require(str.length() > 0, (TextUtils.isEmpty(getOptionalMessage()) ? getOptionalMessage() : "non empty string"));
+        requireNonEmptyString(str, optional(paramName));
     }
 
 
@@ -67,46 +130,88 @@ public final class DesignByContract {
     }
 
     public static void requireShouldOverRide(String... optionalMessage) {
-        StringBuilder message = new StringBuilder(" sub class should override:  ").append(getOptionalMessage());
-        require(false, message.toString());
+        throw new DesignByContractRequireException(REQUIRE_PREFIX + " sub class should override:  " + getOptionalMessage(optionalMessage), null);
     }
 
     public static void requireShouldNeverReachHere() {
-        StringBuilder message = new StringBuilder("should never reach here");
-        require(false, message.toString());
+        throw new DesignByContractRequireException(REQUIRE_PREFIX + "should never reach here", null);
     }
 
+    /**
+     * @param message pass a constant, a message built by the caller is built even when the check passes
+     */
     public static void require(boolean require, String message) {
-        if (!require) {
-            throw new DesignByContractRequireException("Design By Contract Exception. !!!REQUIRE!!! ->>" + message, null);
-        } else {
-            //Do nothing.
+        if (!require && mode != Mode.OFF) {
+            throw new DesignByContractRequireException(mode == Mode.FULL ? REQUIRE_PREFIX + message : null, null);
+        }
+    }
+
+
+    /**
+     * The message is formatted with {@link String#format(String, Object...)} only when the check fails.
+     */
+    public static void require(boolean require, String format, Object arg) {
+        if (!require && mode != Mode.OFF) {
+            throw new DesignByContractRequireException(mode == Mode.FULL ? REQUIRE_PREFIX + String.format(Locale.US, format, arg) : null, null);
+        }
+    }
+
+    public static void require(boolean require, String format, Object arg1, Object arg2) {
+        if (!require && mode != Mode.OFF) {
+            throw new DesignByContractRequireException(mode == Mode.FULL ? REQUIRE_PREFIX + String.format(Locale.US, format, arg1, arg2) : null, null);
         }
     }
 
 
     //ENSURE
     public static void ensureNonEmptyCollection(Collection<Object> collection, String... paramName) {
-        requireNonNull(collection);
-        StringBuilder message = new StringBuilder("non empty collection").append("(").append(getOptionalMessage(paramName)).append(")");
-        require(collection.size() > 0, message.toString());
+        ensureNonEmptyCollection(collection, optional(paramName));
+    }
+
+    public static void ensureNonEmptyCollection(Collection<?> collection, String paramName) {
+        if (mode != Mode.OFF && (collection == null || collection.isEmpty())) {
+            failEnsure(collection == null ? "non null object" : "non empty collection", paramName);
+        }
     }
 
     public static void ensureNonEmptyMap(Map<Object, Object> map, String... paramName) {
-        requireNonNull(map);
-        StringBuilder message = new StringBuilder("non empty map.").append("(").append(getOptionalMessage(paramName)).append(")");
-        require(map.size() > 0, message.toString());
+        ensureNonEmptyMap(map, optional(paramName));
+    }
+
+    public static void ensureNonEmptyMap(Map<?, ?> map, String paramName) {
+        if (mode != Mode.OFF && (map == null || map.isEmpty())) {
+            failEnsure(map == null ? "non null object" : "non empty map.", paramName);
+        }
+    }
+
+    public static void ensureNonNull(Object obj) {
+        if (obj == null && mode != Mode.OFF) {
+            failEnsure("non null object", null);
+        }
+    }
+
+    public static void ensureNonNull(Object obj, String paramName) {
+        if (obj == null && mode != Mode.OFF) {
+            failEnsure("non null object", paramName);
+        }
     }
 
     public static void ensureNonNull(Object obj, String... paramName) {
-        StringBuilder message = new StringBuilder("non null object").append("(").append(getOptionalMessage(paramName)).append(")");
-        require((obj != null), message.toString());
+        ensureNonNull(obj, optional(paramName));
+    }
+
+    public static void ensureNonEmptyString(String str) {
+        ensureNonEmptyString(str, (String) null);
+    }
+
+    public static void ensureNonEmptyString(String str, String paramName) {
+        if (mode != Mode.OFF && (str == null || str.length() == 0)) {
+            failEnsure(str == null ? "non null object" : "non empty string", paramName);
+        }
     }
 
     public static void ensureNonEmptyString(String str, String... paramName) {
-        requireNonNull(str);
-        StringBuilder message = new StringBuilder("non empty string").append("(").append(getOptionalMessage(paramName)).append(")");
-        require(str.length() > 0, message.toString());
+        ensureNonEmptyString(str, optional(paramName));
     }
 
 
@@ -114,14 +219,47 @@ public final class DesignByContract {
         //Indicates that user can pass a null object
     }
 
+    /**
+     * @param message pass a constant, a message built by the caller is built even when the check passes
+     */
     public static void ensure(boolean require, String message) {
-        if (!require) {
-            throw new DesignByContractEnsureException("Design By Contract Exception. !!!ENSURE!!! ->>" + message + " failed.", null);
-        } else {
-            //Do nothing.
+        if (!require && mode != Mode.OFF) {
+            throw new DesignByContractEnsureException(mode == Mode.FULL ? ENSURE_PREFIX + message + " failed." : null, null);
+        }
+    }
+
+    /**
+     * The message is formatted with {@link String#format(String, Object...)} only when the check fails.
+     */
+    public static void ensure(boolean require, String format, Object arg) {
+        if (!require && mode != Mode.OFF) {
+            throw new DesignByContractEnsureException(mode == Mode.FULL ? ENSURE_PREFIX + String.format(Locale.US, format, arg) + " failed." : null, null);
+        }
+    }
+
+    public static void ensure(boolean require, String format, Object arg1, Object arg2) {
+        if (!require && mode != Mode.OFF) {
+            throw new DesignByContractEnsureException(mode == Mode.FULL ? ENSURE_PREFIX + String.format(Locale.US, format, arg1, arg2) + " failed." : null, null);
         }
     }
 
+    private static void failRequire(String condition, String paramName) {
+        throw new DesignByContractRequireException(mode == Mode.FULL ? REQUIRE_PREFIX + describe(condition, paramName) : null, null);
+    }
+
+    private static void failEnsure(String condition, String paramName) {
+        throw new DesignByContractEnsureException(mode == Mode.FULL ? ENSURE_PREFIX + describe(condition, paramName) + " failed." : null, null);
+    }
+
+    private static String describe(String condition, String paramName) {
+        return condition + "(" + (paramName != null ? paramName : "") + ")";
+    }
+
+    private static String optional(String... params) {
+        String message = getOptionalMessage(params);
+        return message.length() > 0 ? message : null;
+    }
+
     private static String getOptionalMessage(String... params) {
         if (params != null
                 && params.length > 0
@@ -0,0 +1,203 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2016
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.android.sdk.core.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used to run work and deliver results.
+ * <ul>
+ * <li>{@link #main()} runs on the main looper</li>
+ * <li>{@link #worker()} runs on a bounded pool of background threads, used for parsing responses</li>
+ * <li>{@link #newSerialExecutor()} runs one task at a time on the worker pool</li>
+ * <li>{@link #immediate()} runs on the calling thread</li>
+ * </ul>
+ */
+public final class Dispatchers {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int WORKER_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static final Executor MAIN = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                command.run();
+            } else {
+                MAIN_HANDLER.post(command);
+            }
+        }
+    };
+
+    private static final Executor IMMEDIATE = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final class WorkerHolder {
+        private static final ThreadPoolExecutor WORKER = createWorkerPool();
+    }
+
+    private Dispatchers() {
+    }
+
+    /**
+     * @return executor that runs tasks on the main thread, immediately if already called from the main thread.
+     */
+    public static Executor main() {
+        return MAIN;
+    }
+
+    /**
+     * Runs the task on the main thread after the delay, used to schedule short timers without a dedicated thread.
+     */
+    public static void postDelayed(@NonNull Runnable command, long delayMs) {
+        MAIN_HANDLER.postDelayed(command, delayMs);
+    }
+
+    /**
+     * Bounded background pool, tasks wait in an unbounded queue when every thread is busy. Work is never run on the
+     * submitting thread, which is often the main thread.
+     *
+     * @return executor that runs tasks on a background thread.
+     */
+    public static Executor worker() {
+        return WorkerHolder.WORKER;
+    }
+
+    /**
+     * Runs the submitted tasks one at a time, in submission order, on the {@link #worker()} pool. Used to confine
+     * state to a single logical thread without owning one.
+     *
+     * @return a new serial executor
+     */
+    public static Executor newSerialExecutor() {
+        return new SerialExecutor(worker());
+    }
+
+    /**
+     * @return executor that runs tasks on the calling thread.
+     */
+    public static Executor immediate() {
+        return IMMEDIATE;
+    }
+
+    /**
+     * Drains its queue on one pool thread at a time. The pool is only called outside the lock, a pool that runs a task
+     * inline can not call back into the lock held by the submitter.
+     */
+    private static final class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Executor executor;
+        private boolean draining;
+
+        private final Runnable drainTask = new Runnable() {
+            @Override
+            public void run() {
+                boolean drained = false;
+                try {
+                    drain();
+                    drained = true;
+                } finally {
+                    if (!drained) {
+                        // a task threw, the remaining tasks continue on another pool thread
+                        executor.execute(drainTask);
+                    }
+                }
+            }
+        };
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            synchronized (this) {
+                tasks.offer(command);
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            executor.execute(drainTask);
+        }
+
+        private void drain() {
+            while (true) {
+                Runnable next;
+                synchronized (this) {
+                    next = tasks.poll();
+                    if (next == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                next.run();
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createWorkerPool() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKER_POOL_SIZE, WORKER_POOL_SIZE,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "move-sdk-worker-" + count.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
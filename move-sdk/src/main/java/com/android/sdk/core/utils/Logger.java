@@ -27,14 +27,22 @@ package com.android.sdk.core.utils;
 
 import android.util.Log;
 
+import java.nio.charset.Charset;
+import java.util.Locale;
+
 import static com.android.sdk.core.utils.DesignByContract.requireNonNull;
 
 /**
  * Wrapper class for android's {@link Log}
  * <p/>
- * By default the log level is set to {@link com.android.sdk.core.utils.Logger.LogLevel#DEBUG}, if you want to override the log level call {@link Logger#overrideLogLevel(LogLevel)}
+ * By default the log level is set to {@link com.android.sdk.core.utils.Logger.LogLevel#ERROR}, if you want to override the log level call {@link Logger#overrideLogLevel(LogLevel)}
  * To turnOff logging, call {@link Logger#overrideLogLevel(LogLevel)} with {@link com.android.sdk.core.utils.Logger.LogLevel#OFF}
  * <p/>
+ * Messages that need to be built should use the format methods, eg: {@code Logger.df(TAG, "path: %s", path)}, or be guarded with
+ * {@link #isLoggable(LogLevel)}, so that no string is built when the level is off. The format methods are named apart
+ * from {@code d} and {@code w}, a {@code Throwable} argument would otherwise bind to the {@code (tag, msg, tr)} overload.
+ * Response bodies are only logged through {@link #payload(String, String, byte[])}, when payload logging is enabled.
+ * <p/>
  * <p/>
  * Created by deepu on 4/10/16.
  */
@@ -46,7 +54,7 @@ public final class Logger {
         INFO(Log.INFO),
         WARN(Log.WARN),
         ERROR(Log.ERROR),
-        OFF(0);
+        OFF(Log.ASSERT + 1);
 
         private int level;
 
@@ -57,14 +65,78 @@ public final class Logger {
         }
     }
 
-    private static LogLevel currentLogLevel = LogLevel.ERROR;
+    /**
+     * Lazily built log message, for messages that can not be expressed with the format methods.
+     */
+    public interface MessageSupplier {
+        String get();
+    }
+
+    public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile int currentPriority = LogLevel.ERROR.level;
+    private static volatile boolean payloadLoggingEnabled;
+    private static volatile int maxPayloadLength = DEFAULT_MAX_PAYLOAD_LENGTH;
 
     private Logger() {
     }
 
     public static void overrideLogLevel(LogLevel level) {
         requireNonNull(level);
-        currentLogLevel = level;
+        currentPriority = level.level;
+    }
+
+    /**
+     * @return true if messages of the level are logged, guard any expensive message building with it
+     */
+    public static boolean isLoggable(LogLevel level) {
+        return level.level >= currentPriority;
+    }
+
+    /**
+     * Response and request bodies can be large and contain personal data, they are only logged, at
+     * {@link LogLevel#VERBOSE}, when enabled here.
+     *
+     * @param enabled          false by default
+     * @param maxPayloadLength bodies are truncated to this many characters, default {@link #DEFAULT_MAX_PAYLOAD_LENGTH}
+     */
+    public static void setPayloadLogging(boolean enabled, int maxPayloadLength) {
+        Logger.maxPayloadLength = Math.max(0, maxPayloadLength);
+        Logger.payloadLoggingEnabled = enabled;
+    }
+
+    /**
+     * @return true if a payload logged now would be written
+     */
+    public static boolean isPayloadLoggable() {
+        return payloadLoggingEnabled && isLoggable(LogLevel.VERBOSE);
+    }
+
+    /**
+     * Logs a body at {@link LogLevel#VERBOSE}, only the first bytes are decoded when the body is truncated.
+     */
+    public static int payload(String tag, String prefix, byte[] body) {
+        if (!isPayloadLoggable() || body == null) {
+            return -1;
+        }
+        int length = Math.min(body.length, maxPayloadLength);
+        String value = new String(body, 0, length, UTF_8);
+        return Log.v(tag, prefix + value + (length < body.length ? "... (" + body.length + " bytes)" : ""));
+    }
+
+    /**
+     * Logs a body at {@link LogLevel#VERBOSE}, {@code toString()} is only called when payload logging is enabled.
+     */
+    public static int payload(String tag, String prefix, Object body) {
+        if (!isPayloadLoggable()) {
+            return -1;
+        }
+        String value = String.valueOf(body);
+        if (value.length() > maxPayloadLength) {
+            value = value.substring(0, maxPayloadLength) + "... (" + value.length() + " chars)";
+        }
+        return Log.v(tag, prefix + value);
     }
 
     /**
@@ -125,6 +197,41 @@ public final class Logger {
         return -1;
     }
 
+    /**
+     * Send a {@link android.util.Log#DEBUG} log message, formatted with {@link String#format(String, Object...)} only if
+     * the level is on. There is one overload per argument count so that no array is allocated when the level is off.
+     */
+    public static int df(String tag, String format, Object arg) {
+        if (shouldLog(LogLevel.DEBUG)) {
+            return Log.d(tag, String.format(Locale.US, format, arg));
+        }
+        return -1;
+    }
+
+    public static int df(String tag, String format, Object arg1, Object arg2) {
+        if (shouldLog(LogLevel.DEBUG)) {
+            return Log.d(tag, String.format(Locale.US, format, arg1, arg2));
+        }
+        return -1;
+    }
+
+    public static int df(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (shouldLog(LogLevel.DEBUG)) {
+            return Log.d(tag, String.format(Locale.US, format, arg1, arg2, arg3));
+        }
+        return -1;
+    }
+
+    /**
+     * Send a {@link android.util.Log#DEBUG} log message, the supplier is only called if the level is on.
+     */
+    public static int d(String tag, MessageSupplier supplier) {
+        if (shouldLog(LogLevel.DEBUG)) {
+            return Log.d(tag, supplier.get());
+        }
+        return -1;
+    }
+
     /**
      * Send an {@link android.util.Log#INFO} log message.
      *
@@ -197,6 +304,23 @@ public final class Logger {
         return -1;
     }
 
+    /**
+     * Send a {@link android.util.Log#WARN} log message, formatted only if the level is on.
+     */
+    public static int wf(String tag, String format, Object arg) {
+        if (shouldLog(LogLevel.WARN)) {
+            return Log.w(tag, String.format(Locale.US, format, arg));
+        }
+        return -1;
+    }
+
+    public static int wf(String tag, String format, Object arg1, Object arg2) {
+        if (shouldLog(LogLevel.WARN)) {
+            return Log.w(tag, String.format(Locale.US, format, arg1, arg2));
+        }
+        return -1;
+    }
+
     /**
      * Send an {@link android.util.Log#ERROR} log message.
      *
@@ -227,7 +351,7 @@ public final class Logger {
     }
 
     private static boolean shouldLog(LogLevel level) {
-        return (level.ordinal() >= currentLogLevel.ordinal());
+        return level.level >= currentPriority;
     }
 
 